@@ -0,0 +1,212 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the number of output buffers of the camera texture converter from what the graph
+ * actually holds.
+ *
+ * <p>The converter can only hand out a new frame while one of its buffers is free; when all of them
+ * are held by the graph (in flight or queued), the camera keeps overwriting its texture and frames
+ * are lost. This class counts the buffers held, and detects lost camera frames as gaps in the frame
+ * timestamps. At the end of every window of {@code windowFrames} frames it decides:
+ *
+ * <ul>
+ *   <li>grow by one if frames were lost while every buffer was held;
+ *   <li>shrink by one after {@link #SHRINK_AFTER_WINDOWS} windows in a row without losses in which
+ *       at least two buffers stayed free.
+ * </ul>
+ *
+ * The count stays within {@code [minBuffers, maxBuffers]}. The usual frame interval is learned
+ * again from scratch after {@link #onCameraStarted} or {@link #onConverterCreated}, and from the
+ * gaps themselves after {@link #RESEED_AFTER_GAPS} gaps in a row of about the same length while
+ * buffers were free, e.g. when the camera drops from 30 to 15 fps in low light. {@link
+ * #onFrameAcquired} and {@link #onCameraFrame} must be called from the converter thread, {@link
+ * #onFrameReleased} and the getters may be called from any thread.
+ */
+public class BufferPoolSizer {
+    public static final int SHRINK_AFTER_WINDOWS = 3;
+    public static final int RESEED_AFTER_GAPS = 3;
+    // A gap this many times the usual frame interval means camera frames were lost.
+    private static final float GAP_FACTOR = 1.7f;
+    private static final float INTERVAL_SMOOTHING = 0.1f;
+    // Gaps within this fraction of the first gap of a run count as the same spacing.
+    private static final float GAP_TOLERANCE = 0.15f;
+
+    private final int minBuffers;
+    private final int maxBuffers;
+    private final int windowFrames;
+
+    private final AtomicInteger heldBuffers = new AtomicInteger();
+    private volatile int bufferCount;
+    // Set by onCameraStarted, cleared by the converter thread.
+    private volatile boolean cameraRestarted;
+
+    // Only touched by the converter thread.
+    private long lastTimestampUs = Long.MIN_VALUE;
+    private float frameIntervalUs;
+    private int gapRun;
+    private long gapRunIntervalUs;
+    private boolean gapRunWhileExhausted;
+    private int windowFrameCount;
+    private int windowPeakHeld;
+    private int windowLostFrames;
+    private boolean windowLostWhileExhausted;
+    private int quietWindows;
+    // Only written by the converter thread.
+    private volatile long lostFrames;
+    private volatile int peakHeld;
+
+    public BufferPoolSizer(int minBuffers, int maxBuffers, int initialBuffers, int windowFrames) {
+        this.minBuffers = minBuffers;
+        this.maxBuffers = Math.max(minBuffers, maxBuffers);
+        this.windowFrames = windowFrames;
+        this.bufferCount = Math.min(this.maxBuffers, Math.max(minBuffers, initialBuffers));
+    }
+
+    public int getMaxBufferCount() {
+        return maxBuffers;
+    }
+
+    /** Buffer count the converter should have. */
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * Tells the sizer the converter was (re)created with {@code bufferCount} buffers. Must be called
+     * before the new converter starts producing frames. Frames of a previous converter still count
+     * as held until they are released.
+     */
+    public void onConverterCreated(int bufferCount) {
+        this.bufferCount = bufferCount;
+        cameraRestarted = false;
+        resetFrameInterval();
+        windowFrameCount = 0;
+        windowPeakHeld = heldBuffers.get();
+        windowLostFrames = 0;
+        windowLostWhileExhausted = false;
+    }
+
+    /**
+     * Tells the sizer the camera was (re)started, e.g. at another resolution or frame rate, so the
+     * frame interval is learned again. May be called from any thread.
+     */
+    public void onCameraStarted() {
+        cameraRestarted = true;
+    }
+
+    private void resetFrameInterval() {
+        lastTimestampUs = Long.MIN_VALUE;
+        frameIntervalUs = 0;
+        gapRun = 0;
+    }
+
+    /**
+     * Called for every frame the converter produces, before it is used or released. Returns the
+     * new buffer count when this frame completes a window that calls for a change, or 0.
+     */
+    public int onCameraFrame(long timestampUs) {
+        if (cameraRestarted) {
+            cameraRestarted = false;
+            resetFrameInterval();
+        }
+        if (lastTimestampUs != Long.MIN_VALUE) {
+            long interval = timestampUs - lastTimestampUs;
+            if (frameIntervalUs > 0 && interval > GAP_FACTOR * frameIntervalUs) {
+                int lost = Math.round(interval / frameIntervalUs) - 1;
+                windowLostFrames += lost;
+                lostFrames += lost;
+                boolean exhausted = heldBuffers.get() + 1 >= bufferCount;
+                if (exhausted) {
+                    windowLostWhileExhausted = true;
+                }
+                onGap(interval, exhausted);
+            } else if (interval > 0) {
+                gapRun = 0;
+                frameIntervalUs =
+                        frameIntervalUs > 0
+                                ? frameIntervalUs + INTERVAL_SMOOTHING * (interval - frameIntervalUs)
+                                : interval;
+            }
+        }
+        lastTimestampUs = timestampUs;
+        if (++windowFrameCount < windowFrames) {
+            return 0;
+        }
+        return endWindow();
+    }
+
+    // A run of evenly spaced gaps while buffers were free means the camera slowed down rather than
+    // frames being lost, so the gap becomes the new frame interval.
+    private void onGap(long interval, boolean exhausted) {
+        if (gapRun > 0
+                && Math.abs(interval - gapRunIntervalUs) <= GAP_TOLERANCE * gapRunIntervalUs) {
+            ++gapRun;
+            gapRunWhileExhausted |= exhausted;
+        } else {
+            gapRun = 1;
+            gapRunIntervalUs = interval;
+            gapRunWhileExhausted = exhausted;
+        }
+        if (gapRun >= RESEED_AFTER_GAPS && !gapRunWhileExhausted) {
+            frameIntervalUs = interval;
+            gapRun = 0;
+        }
+    }
+
+    /** Called when a frame is passed on to the graph. */
+    public void onFrameAcquired() {
+        int held = heldBuffers.incrementAndGet();
+        if (held > windowPeakHeld) {
+            windowPeakHeld = held;
+        }
+        if (held > peakHeld) {
+            peakHeld = held;
+        }
+    }
+
+    /** Called when the graph releases a frame passed on with {@link #onFrameAcquired}. */
+    public void onFrameReleased() {
+        heldBuffers.decrementAndGet();
+    }
+
+    private int endWindow() {
+        int current = bufferCount;
+        int next = current;
+        if (windowLostWhileExhausted && current < maxBuffers) {
+            next = current + 1;
+            quietWindows = 0;
+        } else if (windowLostFrames == 0 && windowPeakHeld + 2 <= current) {
+            if (++quietWindows >= SHRINK_AFTER_WINDOWS && current > minBuffers) {
+                next = current - 1;
+                quietWindows = 0;
+            }
+        } else {
+            quietWindows = 0;
+        }
+        windowFrameCount = 0;
+        windowPeakHeld = heldBuffers.get();
+        windowLostFrames = 0;
+        windowLostWhileExhausted = false;
+        if (next == current) {
+            return 0;
+        }
+        bufferCount = next;
+        return next;
+    }
+
+    public int getHeldBufferCount() {
+        return heldBuffers.get();
+    }
+
+    /** Most buffers held at once so far. */
+    public int getPeakHeldBufferCount() {
+        return peakHeld;
+    }
+
+    /** Camera frames lost to gaps so far. */
+    public long getLostFrameCount() {
+        return lostFrames;
+    }
+}
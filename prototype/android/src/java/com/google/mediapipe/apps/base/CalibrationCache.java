@@ -0,0 +1,153 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Small binary file of per-camera calibration and per-user settings, so depth can be computed
+ * before (or without) the camera reporting its characteristics.
+ *
+ * <pre>
+ *   int32  magic, int32 version
+ *   int32  focal length count, then per entry: UTF camera key, float32 focal length in pixels
+ *   int32  resolution count, then per entry: UTF camera key, int32 width, int32 height
+ *   float32 iris diameter in mm, NaN if unknown
+ * </pre>
+ *
+ * Version 1 files hold the focal lengths only. A missing, truncated or foreign file reads as
+ * empty. Writes go to a temporary file that replaces the cache, so a crash never leaves it
+ * half-written. All methods are synchronized.
+ */
+public class CalibrationCache {
+    private static final int MAGIC = 0x49524953; // "IRIS"
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final Map<String, Float> focalLengths = new HashMap<>();
+    private final Map<String, int[]> resolutions = new HashMap<>();
+    private float irisDiameterMm = Float.NaN;
+
+    /** Creates the cache and reads {@code file} if it exists. */
+    public CalibrationCache(File file) {
+        this.file = file;
+        load();
+    }
+
+    /** Returns the cached focal length of the camera, or {@code NaN} if there is none. */
+    public synchronized float getFocalLengthPixels(String cameraKey) {
+        Float value = focalLengths.get(cameraKey);
+        return value != null ? value : Float.NaN;
+    }
+
+    /** Caches the focal length of the camera; the file is only rewritten when it changes. */
+    public synchronized void putFocalLengthPixels(String cameraKey, float focalLengthPixels)
+            throws IOException {
+        Float previous = focalLengths.put(cameraKey, focalLengthPixels);
+        if (previous == null || previous != focalLengthPixels) {
+            save();
+        }
+    }
+
+    /**
+     * Returns the frame size the camera ran at last time as {@code {width, height}}, or
+     * {@code null}. Focal lengths are per frame size, so starting at this one lets the cached focal
+     * length be used right away.
+     */
+    public synchronized int[] getPreferredResolution(String cameraKey) {
+        int[] resolution = resolutions.get(cameraKey);
+        return resolution != null ? resolution.clone() : null;
+    }
+
+    public synchronized void putPreferredResolution(String cameraKey, int width, int height)
+            throws IOException {
+        int[] previous = resolutions.put(cameraKey, new int[] {width, height});
+        if (previous == null || previous[0] != width || previous[1] != height) {
+            save();
+        }
+    }
+
+    /** Returns the user's iris diameter, or {@code NaN} if there is none. */
+    public synchronized float getIrisDiameterMm() {
+        return irisDiameterMm;
+    }
+
+    public synchronized void putIrisDiameterMm(float irisDiameterMm) throws IOException {
+        if (Float.compare(this.irisDiameterMm, irisDiameterMm) != 0) {
+            this.irisDiameterMm = irisDiameterMm;
+            save();
+        }
+    }
+
+    private synchronized void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                return;
+            }
+            // Read everything before keeping anything, so a truncated file reads as empty.
+            Map<String, Float> focalEntries = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                focalEntries.put(in.readUTF(), in.readFloat());
+            }
+            Map<String, int[]> resolutionEntries = new HashMap<>();
+            float diameter = Float.NaN;
+            if (version >= 2) {
+                count = in.readInt();
+                for (int i = 0; i < count; ++i) {
+                    resolutionEntries.put(in.readUTF(), new int[] {in.readInt(), in.readInt()});
+                }
+                diameter = in.readFloat();
+            }
+            focalLengths.putAll(focalEntries);
+            resolutions.putAll(resolutionEntries);
+            irisDiameterMm = diameter;
+        } catch (IOException e) {
+            // A damaged cache only costs a recalibration.
+        }
+    }
+
+    private void save() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(focalLengths.size());
+            for (Map.Entry<String, Float> entry : focalLengths.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeFloat(entry.getValue());
+            }
+            out.writeInt(resolutions.size());
+            for (Map.Entry<String, int[]> entry : resolutions.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue()[0]);
+                out.writeInt(entry.getValue()[1]);
+            }
+            out.writeFloat(irisDiameterMm);
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
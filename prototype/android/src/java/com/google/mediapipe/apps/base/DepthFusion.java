@@ -0,0 +1,202 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Joins the left and right iris depth streams by packet timestamp and emits one fused sample per
+ * frame.
+ *
+ * <p>Samples are matched in a fixed-size ring of slots without locks. Each slot packs the frame
+ * timestamp and a two-bit mask of the eyes received so far into a single {@code long}, so a slot
+ * is claimed and completed with plain compare-and-set. Frames take consecutive slots in timestamp
+ * order as their first eye arrives, so a frame is only evicted once as many newer frames as there
+ * are slots have arrived. Each input stream must be fed from one thread at a time, in timestamp
+ * order, which is what MediaPipe guarantees for the callbacks of one output stream.
+ *
+ * <p>An eye that arrives after a newer frame can no longer be paired, and its frame is counted as
+ * missing the other eye. Such late frames are marked in a second table of slots, hashed by
+ * timestamp, so that a frame whose two eyes both arrive late is only counted once.
+ */
+public class DepthFusion {
+    /** Receives fused samples; called on the thread that delivered the second eye of a frame. */
+    public interface Listener {
+        void onFusedDepth(long timestamp, float leftDepthMm, float rightDepthMm);
+    }
+
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int BOTH = LEFT | RIGHT;
+    private static final long EMPTY = -1L;
+
+    private static final int DEFAULT_SLOTS = 16;
+    // Fibonacci hashing constant, spreading the timestamps of late frames over their slots.
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final int slotMask;
+    // (timestamp << 2) | eye mask, or EMPTY.
+    private final AtomicLongArray states;
+    private final AtomicIntegerArray leftBits;
+    private final AtomicIntegerArray rightBits;
+    // Late frames, by (timestamp << 2) | eye mask, or EMPTY. A frame evicted by another late
+    // frame with the same hash before its second eye arrives is counted again.
+    private final AtomicLongArray lateStates;
+    // Frames claimed so far; frame n lives in slot n & slotMask.
+    private final AtomicLong claimedFrames = new AtomicLong();
+
+    private volatile Listener[] listeners = new Listener[0];
+
+    private final AtomicLong fusedFrames = new AtomicLong();
+    private final AtomicLong leftMissingFrames = new AtomicLong();
+    private final AtomicLong rightMissingFrames = new AtomicLong();
+
+    public DepthFusion() {
+        this(DEFAULT_SLOTS);
+    }
+
+    /** {@code slots} is rounded up to a power of two and bounds the number of frames in flight. */
+    public DepthFusion(int slots) {
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        slotMask = size - 1;
+        states = new AtomicLongArray(size);
+        leftBits = new AtomicIntegerArray(size);
+        rightBits = new AtomicIntegerArray(size);
+        lateStates = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            states.set(i, EMPTY);
+            lateStates.set(i, EMPTY);
+        }
+    }
+
+    public synchronized void addListener(Listener listener) {
+        Listener[] grown = new Listener[listeners.length + 1];
+        System.arraycopy(listeners, 0, grown, 0, listeners.length);
+        grown[listeners.length] = listener;
+        listeners = grown;
+    }
+
+    public void onLeftDepth(long timestamp, float depthMm) {
+        offer(timestamp, LEFT, depthMm);
+    }
+
+    public void onRightDepth(long timestamp, float depthMm) {
+        offer(timestamp, RIGHT, depthMm);
+    }
+
+    private void offer(long timestamp, int eye, float depthMm) {
+        AtomicIntegerArray values = eye == LEFT ? leftBits : rightBits;
+        AtomicIntegerArray otherValues = eye == LEFT ? rightBits : leftBits;
+        search:
+        while (true) {
+            long frames = claimedFrames.get();
+            long oldest = Math.max(0, frames - (slotMask + 1));
+            long newestTimestamp = Long.MIN_VALUE;
+            // Frames are claimed in timestamp order, so the search goes from the newest frame back
+            // to the first one older than the sample.
+            for (long n = frames - 1; n >= oldest; --n) {
+                int slot = (int) n & slotMask;
+                long state = states.get(slot);
+                long stateTimestamp = state >> 2;
+                if (n == frames - 1) {
+                    newestTimestamp = stateTimestamp;
+                }
+                if (state == EMPTY || stateTimestamp < timestamp) {
+                    break;
+                }
+                if (stateTimestamp != timestamp) {
+                    continue;
+                }
+                int mask = (int) (state & BOTH);
+                if ((mask & eye) != 0) {
+                    // Duplicate sample for this eye; the frame is already (being) paired.
+                    return;
+                }
+                values.set(slot, Float.floatToRawIntBits(depthMm));
+                // The other eye's value was published before its bit was set, and stays put as long
+                // as the slot state does not change.
+                float other = Float.intBitsToFloat(otherValues.get(slot));
+                if (states.compareAndSet(slot, state, state | eye)) {
+                    if ((mask | eye) == BOTH) {
+                        emit(
+                                timestamp,
+                                eye == LEFT ? depthMm : other,
+                                eye == LEFT ? other : depthMm);
+                    }
+                    return;
+                }
+                // The slot changed under us; search again.
+                continue search;
+            }
+            if (claimedFrames.get() != frames) {
+                continue;
+            }
+            if (frames > 0 && timestamp < newestTimestamp) {
+                // A newer frame is already in, so this eye can no longer be paired.
+                if (markLate(timestamp, eye)) {
+                    (eye == LEFT ? rightMissingFrames : leftMissingFrames).incrementAndGet();
+                }
+                return;
+            }
+
+            // Claims the next slot for this frame. Another thread may have claimed it without
+            // advancing the count yet; a slot holds an older frame than the newest one until then.
+            int slot = (int) frames & slotMask;
+            long state = states.get(slot);
+            boolean claimed = state != EMPTY && (frames == 0 || (state >> 2) > newestTimestamp);
+            if (!claimed && states.compareAndSet(slot, state, timestamp << 2)) {
+                countIncomplete(state);
+            }
+            claimedFrames.compareAndSet(frames, frames + 1);
+        }
+    }
+
+    // Marks a late eye; returns whether it is the frame's first, which counts the frame as missing.
+    private boolean markLate(long timestamp, int eye) {
+        int slot = (int) ((timestamp * GOLDEN_RATIO) >>> 32) & slotMask;
+        while (true) {
+            long state = lateStates.get(slot);
+            if (state != EMPTY && state >> 2 == timestamp) {
+                if ((state & eye) != 0 || lateStates.compareAndSet(slot, state, state | eye)) {
+                    // A duplicate, or the other eye already counted the frame.
+                    return false;
+                }
+            } else if (lateStates.compareAndSet(slot, state, (timestamp << 2) | eye)) {
+                return true;
+            }
+        }
+    }
+
+    private void countIncomplete(long evictedState) {
+        if (evictedState == EMPTY) {
+            return;
+        }
+        int mask = (int) (evictedState & BOTH);
+        if (mask == LEFT) {
+            rightMissingFrames.incrementAndGet();
+        } else if (mask == RIGHT) {
+            leftMissingFrames.incrementAndGet();
+        }
+    }
+
+    private void emit(long timestamp, float leftDepthMm, float rightDepthMm) {
+        fusedFrames.incrementAndGet();
+        for (Listener listener : listeners) {
+            listener.onFusedDepth(timestamp, leftDepthMm, rightDepthMm);
+        }
+    }
+
+    public long getFusedFrameCount() {
+        return fusedFrames.get();
+    }
+
+    /** Frames for which a right depth arrived but the left one never did. */
+    public long getLeftMissingFrameCount() {
+        return leftMissingFrames.get();
+    }
+
+    /** Frames for which a left depth arrived but the right one never did. */
+    public long getRightMissingFrameCount() {
+        return rightMissingFrames.get();
+    }
+}
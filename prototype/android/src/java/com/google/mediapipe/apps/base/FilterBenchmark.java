@@ -0,0 +1,196 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link OneEuroFilterBank} against one scalar One-Euro filter object per channel on the
+ * desktop JVM, and checks that both produce the same output.
+ *
+ * <pre>
+ *   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:filter_benchmark -- \
+ *       [--channels 500] [--frames 10000] [--passes 5]
+ * </pre>
+ *
+ * The default of 500 channels is about the size of a face landmark frame. Frames arrive at 30 fps
+ * with some jitter, and each channel is a slow sine with noise and occasional jumps. Every pass
+ * but the last warms up the JIT. The run fails if any output differs from the scalar filters.
+ */
+public class FilterBenchmark {
+    private static final int DEFAULT_CHANNELS = 500;
+    private static final int DEFAULT_FRAMES = 10_000;
+    private static final int DEFAULT_PASSES = 5;
+
+    private static final float MIN_CUTOFF = 1.0f;
+    private static final float BETA = 0.1f;
+    private static final float DERIVATIVE_CUTOFF = 1.0f;
+
+    // Keeps the JIT from dropping the work.
+    private static double sink;
+
+    /** The textbook filter, one object per channel. */
+    private static final class ScalarFilter {
+        private static final float TWO_PI = (float) (2 * Math.PI);
+
+        private float previous;
+        private float previousDerivative;
+        private long lastTimestampNs;
+        private boolean initialized;
+
+        float filter(long timestampNs, float x) {
+            if (!initialized) {
+                previous = x;
+                previousDerivative = 0f;
+                lastTimestampNs = timestampNs;
+                initialized = true;
+                return x;
+            }
+            float dt = (timestampNs - lastTimestampNs) * 1e-9f;
+            if (dt <= 0) {
+                return previous;
+            }
+            lastTimestampNs = timestampNs;
+            float speed = (x - previous) * (1f / dt);
+            float derivative =
+                    previousDerivative + alpha(dt, DERIVATIVE_CUTOFF) * (speed - previousDerivative);
+            float r = TWO_PI * dt * (MIN_CUTOFF + BETA * Math.abs(derivative));
+            previous = previous + r / (r + 1f) * (x - previous);
+            previousDerivative = derivative;
+            return previous;
+        }
+
+        private static float alpha(float dt, float cutoff) {
+            float r = TWO_PI * cutoff * dt;
+            return r / (r + 1f);
+        }
+    }
+
+    public static void main(String[] args) {
+        int channels = DEFAULT_CHANNELS;
+        int frameCount = DEFAULT_FRAMES;
+        int passes = DEFAULT_PASSES;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--channels") && i + 1 < args.length) {
+                channels = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--frames") && i + 1 < args.length) {
+                frameCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--passes") && i + 1 < args.length) {
+                passes = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println(
+                        "usage: filter_benchmark [--channels <n>] [--frames <n>] [--passes <n>]");
+                System.exit(2);
+            }
+        }
+
+        Random random = new Random(1);
+        long[] timestampsNs = new long[frameCount];
+        float[][] frames = new float[frameCount][channels];
+        fill(timestampsNs, frames, random);
+        int mismatches = verify(timestampsNs, frames);
+        System.out.println(
+                frameCount + " frames of " + channels + " channels, " + mismatches
+                        + " mismatches against the scalar filters");
+
+        float[] output = new float[channels];
+        for (int pass = 1; pass <= passes; ++pass) {
+            long scalarNs = timeScalar(timestampsNs, frames, output);
+            long bankNs = timeBank(timestampsNs, frames, output);
+            if (pass == passes) {
+                print("ScalarFilter[]", scalarNs, frameCount);
+                print("OneEuroFilterBank", bankNs, frameCount);
+            }
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void fill(long[] timestampsNs, float[][] frames, Random random) {
+        int channels = frames[0].length;
+        float[] phases = new float[channels];
+        for (int c = 0; c < channels; ++c) {
+            phases[c] = random.nextFloat() * 6.28f;
+        }
+        long timestampNs = 0;
+        for (int i = 0; i < frames.length; ++i) {
+            timestampNs += 33_333_333L + (long) (random.nextGaussian() * 2_000_000);
+            timestampsNs[i] = timestampNs;
+            float t = timestampNs * 1e-9f;
+            float jump = random.nextInt(100) == 0 ? random.nextFloat() - 0.5f : 0f;
+            for (int c = 0; c < channels; ++c) {
+                frames[i][c] =
+                        0.5f + 0.2f * (float) Math.sin(0.5f * t + phases[c])
+                                + 0.002f * (float) random.nextGaussian()
+                                + jump;
+            }
+        }
+    }
+
+    private static int verify(long[] timestampsNs, float[][] frames) {
+        int channels = frames[0].length;
+        OneEuroFilterBank bank =
+                new OneEuroFilterBank(channels, MIN_CUTOFF, BETA, DERIVATIVE_CUTOFF);
+        ScalarFilter[] filters = newScalarFilters(channels);
+        float[] output = new float[channels];
+        int mismatches = 0;
+        for (int i = 0; i < frames.length; ++i) {
+            bank.filter(timestampsNs[i], frames[i], output);
+            for (int c = 0; c < channels; ++c) {
+                float expected = filters[c].filter(timestampsNs[i], frames[i][c]);
+                if (Math.abs(output[c] - expected) > 1e-6f * Math.max(1f, Math.abs(expected))) {
+                    if (mismatches < 10) {
+                        System.err.println(
+                                "Frame " + i + " channel " + c + ": " + output[c] + " instead of "
+                                        + expected);
+                    }
+                    ++mismatches;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private static ScalarFilter[] newScalarFilters(int channels) {
+        ScalarFilter[] filters = new ScalarFilter[channels];
+        for (int c = 0; c < channels; ++c) {
+            filters[c] = new ScalarFilter();
+        }
+        return filters;
+    }
+
+    private static long timeScalar(long[] timestampsNs, float[][] frames, float[] output) {
+        ScalarFilter[] filters = newScalarFilters(output.length);
+        long start = System.nanoTime();
+        for (int i = 0; i < frames.length; ++i) {
+            for (int c = 0; c < output.length; ++c) {
+                output[c] = filters[c].filter(timestampsNs[i], frames[i][c]);
+            }
+        }
+        long elapsedNs = System.nanoTime() - start;
+        sink += output[output.length - 1];
+        return elapsedNs;
+    }
+
+    private static long timeBank(long[] timestampsNs, float[][] frames, float[] output) {
+        OneEuroFilterBank bank =
+                new OneEuroFilterBank(output.length, MIN_CUTOFF, BETA, DERIVATIVE_CUTOFF);
+        long start = System.nanoTime();
+        for (int i = 0; i < frames.length; ++i) {
+            bank.filter(timestampsNs[i], frames[i], output);
+        }
+        long elapsedNs = System.nanoTime() - start;
+        sink += output[output.length - 1];
+        return elapsedNs;
+    }
+
+    private static void print(String name, long elapsedNs, int count) {
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%-17s %8.2f us/frame %10.0f frames/s",
+                        name,
+                        elapsedNs / 1e3 / count,
+                        count * 1e9 / elapsedNs));
+    }
+}
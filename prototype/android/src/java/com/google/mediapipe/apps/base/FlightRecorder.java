@@ -0,0 +1,203 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary trace of recent events, kept in a preallocated ring buffer per recording thread.
+ *
+ * <p>An event is a registered id, a {@link System#nanoTime} timestamp, one {@code long} argument
+ * and up to three {@code float} values. Recording stores those primitives into the calling
+ * thread's ring and never allocates or locks after the thread's first event; names and formatting
+ * only come into play when the trace is dumped, e.g. on request or after a crash.
+ *
+ * <pre>
+ *   int EVENT_DEPTH = recorder.registerEvent("depth", "ts", "left", "right");
+ *   recorder.record(EVENT_DEPTH, timestampUs, left, right);
+ * </pre>
+ *
+ * Each ring keeps the last {@code capacity} events of its thread. A dump that races with
+ * recording may show a few torn entries at the head of a ring, which is acceptable for a trace.
+ */
+public class FlightRecorder {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_EVENTS = 256;
+    private static final int VALUE_COUNT = 3;
+
+    private final int capacity;
+    private final int mask;
+
+    // Event metadata, indexed by event id; only touched when registering and dumping.
+    private final String[] eventNames = new String[MAX_EVENTS];
+    private final String[][] eventFields = new String[MAX_EVENTS][];
+    private int eventCount;
+
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Ring> threadRing =
+            new ThreadLocal<Ring>() {
+                @Override
+                protected Ring initialValue() {
+                    Ring ring = new Ring(Thread.currentThread().getName(), capacity);
+                    rings.add(ring);
+                    return ring;
+                }
+            };
+
+    private volatile boolean enabled = true;
+
+    private static final class Ring {
+        final String threadName;
+        final long[] timestamps;
+        final int[] events;
+        final long[] args;
+        final float[] values;
+        // Number of events ever recorded; published with an ordered store after each entry, which
+        // is cheaper than a volatile write on the recording path.
+        final AtomicLong written = new AtomicLong();
+
+        Ring(String threadName, int capacity) {
+            this.threadName = threadName;
+            timestamps = new long[capacity];
+            events = new int[capacity];
+            args = new long[capacity];
+            values = new float[capacity * VALUE_COUNT];
+        }
+    }
+
+    public FlightRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity events kept per thread, rounded up to a power of two */
+    public FlightRecorder(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+    }
+
+    /**
+     * Registers an event type and returns its id.
+     *
+     * @param fields names of the argument and of the values in recording order, e.g. {@code "ts",
+     *     "left", "right"}; use {@code null} for an unused argument
+     */
+    public synchronized int registerEvent(String name, String... fields) {
+        if (eventCount == MAX_EVENTS) {
+            throw new IllegalStateException("Too many trace events");
+        }
+        if (fields.length > VALUE_COUNT + 1) {
+            throw new IllegalArgumentException("Events hold one argument and " + VALUE_COUNT + " values");
+        }
+        eventNames[eventCount] = name;
+        eventFields[eventCount] = fields.clone();
+        return eventCount++;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(int event, long arg) {
+        record(event, arg, 0f, 0f, 0f);
+    }
+
+    public void record(int event, long arg, float v0) {
+        record(event, arg, v0, 0f, 0f);
+    }
+
+    public void record(int event, long arg, float v0, float v1) {
+        record(event, arg, v0, v1, 0f);
+    }
+
+    public void record(int event, long arg, float v0, float v1, float v2) {
+        if (!enabled) {
+            return;
+        }
+        Ring ring = threadRing.get();
+        long n = ring.written.get();
+        int i = (int) n & mask;
+        ring.timestamps[i] = System.nanoTime();
+        ring.events[i] = event;
+        ring.args[i] = arg;
+        ring.values[i * VALUE_COUNT] = v0;
+        ring.values[i * VALUE_COUNT + 1] = v1;
+        ring.values[i * VALUE_COUNT + 2] = v2;
+        ring.written.lazySet(n + 1);
+    }
+
+    /** Drops all recorded events. Only safe while nothing is recording. */
+    public void clear() {
+        for (Ring ring : rings) {
+            ring.written.set(0);
+        }
+    }
+
+    /**
+     * Writes the retained events of all threads, oldest first, one per line:
+     * {@code <ms since first event> <thread> <event> <field>=<value> ...}.
+     */
+    public void dump(PrintWriter out) {
+        List<Ring> snapshot = new ArrayList<>(rings);
+        int total = 0;
+        long[] written = new long[snapshot.size()];
+        for (int r = 0; r < snapshot.size(); ++r) {
+            written[r] = snapshot.get(r).written.get();
+            total += (int) Math.min(written[r], capacity);
+        }
+        // Sort (timestamp, ring, slot) triples by timestamp to interleave the threads.
+        long[][] order = new long[total][];
+        int k = 0;
+        for (int r = 0; r < snapshot.size(); ++r) {
+            Ring ring = snapshot.get(r);
+            for (long n = Math.max(0, written[r] - capacity); n < written[r]; ++n) {
+                int i = (int) n & mask;
+                order[k++] = new long[] {ring.timestamps[i], r, i};
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(a[0], b[0]));
+        String[] names;
+        String[][] fields;
+        synchronized (this) {
+            names = eventNames.clone();
+            fields = eventFields.clone();
+        }
+        long start = total > 0 ? order[0][0] : 0;
+        StringBuilder line = new StringBuilder();
+        for (long[] entry : order) {
+            Ring ring = snapshot.get((int) entry[1]);
+            int i = (int) entry[2];
+            int event = ring.events[i];
+            line.setLength(0);
+            line.append(String.format(Locale.US, "%10.3f ", (entry[0] - start) / 1e6))
+                    .append(ring.threadName)
+                    .append(' ');
+            if (event < 0 || event >= names.length || names[event] == null) {
+                line.append("event#").append(event);
+            } else {
+                line.append(names[event]);
+                String[] eventField = fields[event];
+                for (int f = 0; f < eventField.length; ++f) {
+                    if (eventField[f] == null) {
+                        continue;
+                    }
+                    line.append(' ').append(eventField[f]).append('=');
+                    if (f == 0) {
+                        line.append(ring.args[i]);
+                    } else {
+                        line.append(ring.values[i * VALUE_COUNT + f - 1]);
+                    }
+                }
+            }
+            out.println(line);
+        }
+        out.flush();
+    }
+}
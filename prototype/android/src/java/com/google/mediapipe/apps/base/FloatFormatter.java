@@ -0,0 +1,96 @@
+package com.google.mediapipe.apps.base;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Formats floats with a fixed number of decimals into a caller's {@code char[]} without
+ * allocating, for readouts that update many times per second.
+ *
+ * <p>The result is the same as {@code new BigDecimal(Float.toString(value)).setScale(decimals,
+ * RoundingMode.HALF_UP).toPlainString()}: ties are judged on the shortest decimal that maps
+ * to the float, so 1.005f gives "1.01" although the float itself is slightly below 1.005. NaN and
+ * the infinities are written as {@link Float#toString} does. Values whose precision does not reach
+ * one more decimal than requested, i.e. from 1024 with three decimals or 16384 with two, take a
+ * slower path through {@link BigDecimal} that allocates; readouts never get there.
+ */
+public final class FloatFormatter {
+    /** Decimals of the readouts. */
+    public static final int DEFAULT_DECIMALS = 2;
+    public static final int MAX_DECIMALS = 6;
+    /** Chars {@link #format} may write: sign, 39 integer digits, point and decimals. */
+    public static final int MAX_LENGTH = 1 + 39 + 1 + MAX_DECIMALS;
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L
+    };
+
+    private FloatFormatter() {}
+
+    /**
+     * Writes {@code value} rounded half up to {@code decimals} places into {@code out} starting at
+     * {@code offset} and returns the number of chars written. {@code out} must have room for
+     * {@link #MAX_LENGTH} chars from {@code offset}.
+     */
+    public static int format(float value, int decimals, char[] out, int offset) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals out of range: " + decimals);
+        }
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return copy(Float.toString(value), out, offset);
+        }
+        float magnitude = Math.abs(value);
+        long scale = POWERS_OF_TEN[decimals];
+        // Half an ulp of the float, in units of the last decimal.
+        double tolerance = Math.ulp(magnitude) * 0.5 * scale;
+        if (tolerance >= 0.05) {
+            return copy(
+                    new BigDecimal(Float.toString(value))
+                            .setScale(decimals, RoundingMode.HALF_UP)
+                            .toPlainString(),
+                    out,
+                    offset);
+        }
+
+        // The scaled value is below 2^20 and exact as a double. No other decimal with as few digits
+        // as a tie fits within half an ulp of the float, so a tie that does is what Float.toString
+        // prints, and it rounds up.
+        double scaled = (double) magnitude * scale;
+        long rounded = (long) scaled;
+        if (scaled - rounded >= 0.5 - tolerance) {
+            ++rounded;
+        }
+
+        int position = offset;
+        // BigDecimal has no negative zero: -0.001 to two places is "0.00".
+        if (value < 0 && rounded != 0) {
+            out[position++] = '-';
+        }
+        long integerPart = rounded / scale;
+        int digits = 1;
+        for (long rest = integerPart / 10; rest != 0; rest /= 10) {
+            ++digits;
+        }
+        position += digits;
+        long rest = integerPart;
+        for (int i = position - 1; i >= position - digits; --i) {
+            out[i] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }
+        if (decimals > 0) {
+            out[position++] = '.';
+            long fraction = rounded % scale;
+            for (int i = position + decimals - 1; i >= position; --i) {
+                out[i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            position += decimals;
+        }
+        return position - offset;
+    }
+
+    private static int copy(String text, char[] out, int offset) {
+        text.getChars(0, text.length(), out, offset);
+        return text.length();
+    }
+}
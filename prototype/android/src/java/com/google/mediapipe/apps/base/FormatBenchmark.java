@@ -0,0 +1,150 @@
+package com.google.mediapipe.apps.base;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link FloatFormatter} with the string-based ways of formatting a readout on the
+ * desktop JVM, and checks that it rounds like {@link BigDecimal}.
+ *
+ * <pre>
+ *   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:format_benchmark -- \
+ *       [--values 1000000] [--decimals 2] [--passes 5]
+ * </pre>
+ *
+ * The values look like live readouts: depths of 20 to 80 cm and angles of -180 to 180 degrees,
+ * plus exact ties such as 12.345. Every pass but the last warms up the JIT. The run fails if any
+ * value formats differently from {@code BigDecimal}'s half-up rounding of {@link Float#toString}.
+ */
+public class FormatBenchmark {
+    private static final int DEFAULT_VALUES = 1_000_000;
+    private static final int DEFAULT_PASSES = 5;
+
+    // Keeps the JIT from dropping the work.
+    private static long sink;
+
+    public static void main(String[] args) {
+        int count = DEFAULT_VALUES;
+        int decimals = FloatFormatter.DEFAULT_DECIMALS;
+        int passes = DEFAULT_PASSES;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--values") && i + 1 < args.length) {
+                count = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--decimals") && i + 1 < args.length) {
+                decimals = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--passes") && i + 1 < args.length) {
+                passes = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println(
+                        "usage: format_benchmark [--values <n>] [--decimals <n>] [--passes <n>]");
+                System.exit(2);
+            }
+        }
+
+        float[] values = readoutValues(count, decimals);
+        int mismatches = verify(values, decimals);
+        System.out.println(count + " values, " + mismatches + " mismatches against BigDecimal");
+
+        for (int pass = 1; pass <= passes; ++pass) {
+            long valueOfNs = timeValueOf(values);
+            long bigDecimalNs = timeBigDecimal(values, decimals);
+            long formatterNs = timeFormatter(values, decimals);
+            if (pass == passes) {
+                print("String.valueOf", valueOfNs, count);
+                print("BigDecimal", bigDecimalNs, count);
+                print("FloatFormatter", formatterNs, count);
+            }
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static float[] readoutValues(int count, int decimals) {
+        Random random = new Random(1);
+        float[] values = new float[count];
+        double tieScale = Math.pow(10, decimals + 1);
+        for (int i = 0; i < count; ++i) {
+            switch (i % 3) {
+                case 0:
+                    values[i] = 20f + 60f * random.nextFloat();
+                    break;
+                case 1:
+                    values[i] = -180f + 360f * random.nextFloat();
+                    break;
+                default:
+                    // A decimal ending in 5 right after the last displayed place.
+                    long digits = random.nextInt(2_000_000) * 10L + 5;
+                    values[i] = (float) ((digits % (long) (360 * tieScale)) / tieScale - 180);
+                    break;
+            }
+        }
+        return values;
+    }
+
+    private static int verify(float[] values, int decimals) {
+        char[] text = new char[FloatFormatter.MAX_LENGTH];
+        int mismatches = 0;
+        for (float value : values) {
+            String expected = bigDecimal(value, decimals);
+            int length = FloatFormatter.format(value, decimals, text, 0);
+            String actual = new String(text, 0, length);
+            if (!actual.equals(expected)) {
+                if (mismatches < 10) {
+                    System.err.println(value + ": " + actual + " instead of " + expected);
+                }
+                ++mismatches;
+            }
+        }
+        return mismatches;
+    }
+
+    private static String bigDecimal(float value, int decimals) {
+        return new BigDecimal(Float.toString(value))
+                .setScale(decimals, RoundingMode.HALF_UP)
+                .toPlainString();
+    }
+
+    private static long timeValueOf(float[] values) {
+        long start = System.nanoTime();
+        long total = 0;
+        for (float value : values) {
+            total += String.valueOf(value).length();
+        }
+        sink += total;
+        return System.nanoTime() - start;
+    }
+
+    private static long timeBigDecimal(float[] values, int decimals) {
+        long start = System.nanoTime();
+        long total = 0;
+        for (float value : values) {
+            total += bigDecimal(value, decimals).length();
+        }
+        sink += total;
+        return System.nanoTime() - start;
+    }
+
+    private static long timeFormatter(float[] values, int decimals) {
+        char[] text = new char[FloatFormatter.MAX_LENGTH];
+        long start = System.nanoTime();
+        long total = 0;
+        for (float value : values) {
+            total += FloatFormatter.format(value, decimals, text, 0);
+        }
+        sink += total;
+        return System.nanoTime() - start;
+    }
+
+    private static void print(String name, long elapsedNs, int count) {
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%-15s %8.1f ns/value %10.0f values/s",
+                        name,
+                        (double) elapsedNs / count,
+                        count * 1e9 / elapsedNs));
+    }
+}
@@ -0,0 +1,185 @@
+package com.google.mediapipe.apps.base;
+
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.mediapipe.components.ExternalTextureConverter;
+import com.google.mediapipe.components.TextureFrameConsumer;
+import com.google.mediapipe.framework.TextureFrame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Converts camera-preview frames and hands them to the graph through the
+ * {@link FrameRateGovernor}, while a {@link BufferPoolSizer} sizes the converter's buffer pool.
+ *
+ * <p>Frames are released right away until {@link #setProcessor} is called and while the governor
+ * skips them. The converter is recreated whenever the sizer picks another buffer count, and is
+ * closed while the device is locked. The owner of the camera is expected to stop it on lock and
+ * start it again on unlock; the graph and the GL context stay up, and the new converter is attached
+ * to the restarted camera's texture by {@link #attach}. Except for the frame callbacks, everything
+ * runs on the main thread.
+ */
+public class FrameFeed implements LockStateMonitor.Listener {
+    private static final String TAG = "FrameFeed";
+
+    /** Creates a converter with the given number of output buffers. */
+    public interface ConverterFactory {
+        ExternalTextureConverter create(int numBuffers);
+    }
+
+    /** Told about frames sent to the graph and converter changes. */
+    public interface Listener {
+        /** Called on the converter thread right before the frame goes to the processor. */
+        void onFrameSubmitted(long timestampUs);
+
+        /** Called on the main thread when the converter is recreated with another buffer count. */
+        void onConverterResized(int numBuffers);
+    }
+
+    private final ConverterFactory converterFactory;
+    private final TrackingPipeline pipeline;
+    private final FrameRateGovernor governor;
+    private final BufferPoolSizer bufferPoolSizer;
+    private final LockStateMonitor lockStateMonitor;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable resizeConverter = this::resizeConverter;
+    // Follow each frame through the graph; room for the frames of a converter being replaced.
+    private final ArrayBlockingQueue<TrackedTextureFrame> trackedFrames;
+
+    private ExternalTextureConverter converter;
+    private volatile TextureFrameConsumer processor;
+    // Set on the converter thread once the frames' clock offset to the sensors is known.
+    private volatile boolean frameClockKnown;
+    private boolean closed;
+    // Kept to reattach the converter after a suspension or resize.
+    private SurfaceTexture previewFrameTexture;
+    private int frameWidth;
+    private int frameHeight;
+
+    public FrameFeed(
+            ConverterFactory converterFactory,
+            TrackingPipeline pipeline,
+            FrameRateGovernor governor,
+            BufferPoolSizer bufferPoolSizer,
+            LockStateMonitor lockStateMonitor,
+            Listener listener) {
+        this.converterFactory = converterFactory;
+        this.pipeline = pipeline;
+        this.governor = governor;
+        this.bufferPoolSizer = bufferPoolSizer;
+        this.lockStateMonitor = lockStateMonitor;
+        this.listener = listener;
+        int trackers = 2 * bufferPoolSizer.getMaxBufferCount();
+        trackedFrames = new ArrayBlockingQueue<>(trackers);
+        for (int i = 0; i < trackers; ++i) {
+            trackedFrames.add(new TrackedTextureFrame(bufferPoolSizer, trackedFrames));
+        }
+        lockStateMonitor.addListener(this);
+    }
+
+    /** Creates the converter ahead of the camera, unless the device is locked. */
+    public void start() {
+        if (converter == null && !closed && !lockStateMonitor.isLocked()) {
+            createConverter();
+        }
+    }
+
+    /** Starts sending converted frames to {@code processor}, typically a {@code FrameProcessor}. */
+    public void setProcessor(TextureFrameConsumer processor) {
+        this.processor = processor;
+    }
+
+    /** Converts the frames of a (re)started camera at the given size. */
+    public void attach(SurfaceTexture previewFrameTexture, int frameWidth, int frameHeight) {
+        this.previewFrameTexture = previewFrameTexture;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        bufferPoolSizer.onCameraStarted();
+        if (converter != null) {
+            attachConverter();
+        }
+    }
+
+    @Override
+    public void onLockStateChanged(boolean locked) {
+        if (locked) {
+            if (converter != null) {
+                converter.close();
+                converter = null;
+            }
+            // The camera is stopped along with its texture.
+            previewFrameTexture = null;
+        } else {
+            if (converter == null && !closed) {
+                createConverter();
+                attachConverter();
+            }
+            governor.wake();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        lockStateMonitor.removeListener(this);
+        mainHandler.removeCallbacks(resizeConverter);
+        if (converter != null) {
+            converter.close();
+            converter = null;
+        }
+    }
+
+    private void createConverter() {
+        int numBuffers = bufferPoolSizer.getBufferCount();
+        bufferPoolSizer.onConverterCreated(numBuffers);
+        converter = converterFactory.create(numBuffers);
+        converter.setConsumer(this::onFrame);
+    }
+
+    // Recreates the converter with the buffer count chosen by the sizer; a suspended converter
+    // picks it up when it is recreated.
+    private void resizeConverter() {
+        int numBuffers = bufferPoolSizer.getBufferCount();
+        Log.i(TAG, "Resizing converter to " + numBuffers + " buffers");
+        listener.onConverterResized(numBuffers);
+        if (converter != null) {
+            converter.close();
+            createConverter();
+            attachConverter();
+        }
+    }
+
+    private void attachConverter() {
+        if (previewFrameTexture != null && frameWidth > 0) {
+            converter.setSurfaceTextureAndAttachToGLContext(
+                    previewFrameTexture, frameWidth, frameHeight);
+        }
+    }
+
+    // Called on the converter thread.
+    private void onFrame(TextureFrame frame) {
+        if (bufferPoolSizer.onCameraFrame(frame.getTimestamp()) != 0) {
+            mainHandler.post(resizeConverter);
+        }
+        if (!frameClockKnown) {
+            // The frame is fresh, so its timestamp tells which clock the camera uses.
+            pipeline.setFrameClockOffsetNs(
+                    TrackingPipeline.getFrameClockOffsetNs(
+                            frame.getTimestamp() * 1000,
+                            System.nanoTime(),
+                            SystemClock.elapsedRealtimeNanos()));
+            frameClockKnown = true;
+        }
+        TextureFrameConsumer processor = this.processor;
+        if (processor != null && governor.shouldProcessFrame()) {
+            listener.onFrameSubmitted(frame.getTimestamp());
+            processor.onNewFrame(TrackedTextureFrame.track(frame, trackedFrames));
+        } else {
+            // Hand the buffer straight back to the converter.
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Decides which camera frames are worth sending through the graph.
+ *
+ * <p>While the tracked depths and the device orientation stay within their thresholds for
+ * {@code idleAfterNs}, frames are let through at {@code idleFrameRate} only. Any depth or
+ * orientation change beyond a threshold switches back to {@code activeFrameRate} for the very next
+ * frame. Motion is measured against the value at the last detected motion, so slow drift still
+ * wakes the pipeline once it adds up.
+ *
+ * <p>{@link #onDepth}, {@link #onOrientation} and {@link #shouldProcessFrame} may each be called
+ * from their own thread; time comes from the injected {@link Clock}.
+ */
+public class FrameRateGovernor {
+    /** Monotonic time source, in nanoseconds. */
+    public interface Clock {
+        long nanoTime();
+    }
+
+    public static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Accept a frame slightly early so camera jitter does not halve the effective rate.
+    private static final float INTERVAL_TOLERANCE = 0.9f;
+
+    private final Clock clock;
+    private final long activeIntervalNs;
+    private final long idleIntervalNs;
+    private final long idleAfterNs;
+    private final float depthThreshold;
+    private final float angleThresholdDegrees;
+
+    private volatile long lastMotionNs;
+
+    // Only touched by the depth thread.
+    private float referenceLeftDepth = Float.NaN;
+    private float referenceRightDepth = Float.NaN;
+    // Only touched by the orientation thread.
+    private float referencePitch = Float.NaN;
+    private float referenceRoll;
+    private float referenceHeading;
+    // Only touched by the frame thread.
+    private long lastAcceptedNs;
+    private boolean acceptedAny;
+    // Only written by the frame thread.
+    private volatile long processedFrames;
+    private volatile long skippedFrames;
+
+    /**
+     * @param activeFrameRate frame rate while moving, or 0 to let every frame through
+     * @param idleFrameRate frame rate once stable
+     * @param idleAfterNs how long depth and orientation must be stable before throttling
+     * @param depthThreshold depth change that counts as motion, in the unit of {@link #onDepth}
+     * @param angleThresholdDegrees orientation change that counts as motion
+     */
+    public FrameRateGovernor(
+            Clock clock,
+            float activeFrameRate,
+            float idleFrameRate,
+            long idleAfterNs,
+            float depthThreshold,
+            float angleThresholdDegrees) {
+        this.clock = clock;
+        this.activeIntervalNs = intervalNs(activeFrameRate);
+        this.idleIntervalNs = intervalNs(idleFrameRate);
+        this.idleAfterNs = idleAfterNs;
+        this.depthThreshold = depthThreshold;
+        this.angleThresholdDegrees = angleThresholdDegrees;
+        this.lastMotionNs = clock.nanoTime();
+    }
+
+    private static long intervalNs(float frameRate) {
+        return frameRate > 0 ? (long) (NANOS_PER_SECOND / frameRate * INTERVAL_TOLERANCE) : 0;
+    }
+
+    /** Reports the latest fused depths. */
+    public void onDepth(float leftDepth, float rightDepth) {
+        if (Float.isNaN(referenceLeftDepth)
+                || Math.abs(leftDepth - referenceLeftDepth) > depthThreshold
+                || Math.abs(rightDepth - referenceRightDepth) > depthThreshold) {
+            referenceLeftDepth = leftDepth;
+            referenceRightDepth = rightDepth;
+            lastMotionNs = clock.nanoTime();
+        }
+    }
+
+    /** Reports the latest device orientation, in degrees. */
+    public void onOrientation(float pitch, float roll, float heading) {
+        if (Float.isNaN(referencePitch)
+                || Math.abs(angleDifference(pitch, referencePitch)) > angleThresholdDegrees
+                || Math.abs(angleDifference(roll, referenceRoll)) > angleThresholdDegrees
+                || Math.abs(angleDifference(heading, referenceHeading)) > angleThresholdDegrees) {
+            referencePitch = pitch;
+            referenceRoll = roll;
+            referenceHeading = heading;
+            lastMotionNs = clock.nanoTime();
+        }
+    }
+
+    /** Forces the active frame rate, e.g. after the pipeline was resumed. */
+    public void wake() {
+        lastMotionNs = clock.nanoTime();
+    }
+
+    /** Called once per camera frame; returns whether the frame should be processed. */
+    public boolean shouldProcessFrame() {
+        long now = clock.nanoTime();
+        long interval = isIdle(now) ? idleIntervalNs : activeIntervalNs;
+        if (!acceptedAny || now - lastAcceptedNs >= interval) {
+            acceptedAny = true;
+            lastAcceptedNs = now;
+            ++processedFrames;
+            return true;
+        }
+        ++skippedFrames;
+        return false;
+    }
+
+    public boolean isIdle() {
+        return isIdle(clock.nanoTime());
+    }
+
+    private boolean isIdle(long now) {
+        return now - lastMotionNs >= idleAfterNs;
+    }
+
+    /** Frames let through; may be called from any thread. */
+    public long getProcessedFrameCount() {
+        return processedFrames;
+    }
+
+    /** Frames dropped; may be called from any thread. */
+    public long getSkippedFrameCount() {
+        return skippedFrames;
+    }
+
+    private static float angleDifference(float a, float b) {
+        float d = a - b;
+        return d - 360f * (float) Math.floor((d + 180f) / 360f);
+    }
+}
@@ -0,0 +1,110 @@
+package com.google.mediapipe.apps.base;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import com.google.mediapipe.components.FrameProcessor;
+import com.google.mediapipe.framework.AndroidAssetUtil;
+import com.google.mediapipe.glutil.EglManager;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the MediaPipe and OpenCV native libraries in parallel as soon as it is created, then a
+ * graph into a {@link FrameProcessor}, all off the main thread.
+ *
+ * <p>The loaded graph is handed to a {@link Callback} on the main thread, unless the loader was
+ * closed in the meantime, in which case the graph is closed. Must be created, loaded from and
+ * closed on the main thread.
+ */
+public class GraphLoader {
+    /** Told about the progress of {@link #load}. */
+    public interface Callback {
+        /** Called on a loader thread once the native libraries are loaded. */
+        void onNativeLoaded();
+
+        /**
+         * Called on the main thread with the loaded graph and the EGL context it runs on, which the
+         * callback now owns along with the graph if the loader created it.
+         */
+        void onGraphLoaded(EglManager eglManager, FrameProcessor processor);
+    }
+
+    // One thread per native library, so they load in parallel; the graph waits for both.
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Future<?> mediapipeLibrary;
+    private final Future<?> opencvLibrary;
+    private boolean closed = false;
+
+    public GraphLoader() {
+        mediapipeLibrary = executor.submit(() -> System.loadLibrary("mediapipe_jni"));
+        opencvLibrary = executor.submit(GraphLoader::loadOpenCvLibrary);
+    }
+
+    private static void loadOpenCvLibrary() {
+        try {
+            System.loadLibrary("opencv_java3");
+        } catch (java.lang.UnsatisfiedLinkError e) {
+            // Some example apps (e.g. template matching) require OpenCV 4.
+            System.loadLibrary("opencv_java4");
+        }
+    }
+
+    /**
+     * Loads the binary graph {@code graphName} from the assets once the native libraries are in.
+     *
+     * @param eglManager EGL context to run the graph on, or null to create one off the main thread
+     * @param outputStreamName the graph's output video stream, or null if it has none
+     */
+    public void load(
+            Context context,
+            EglManager eglManager,
+            String graphName,
+            String inputStreamName,
+            String outputStreamName,
+            Callback callback) {
+        executor.execute(
+                () -> {
+                    try {
+                        mediapipeLibrary.get();
+                        opencvLibrary.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new IllegalStateException("Cannot load native libraries", e);
+                    }
+                    callback.onNativeLoaded();
+                    // Initialize asset manager so that MediaPipe native libraries can access the
+                    // app assets, e.g., binary graphs.
+                    AndroidAssetUtil.initializeNativeAssetManager(context);
+                    EglManager graphEglManager =
+                            eglManager != null ? eglManager : new EglManager(null);
+                    FrameProcessor processor =
+                            new FrameProcessor(
+                                    context,
+                                    graphEglManager.getNativeContext(),
+                                    graphName,
+                                    inputStreamName,
+                                    outputStreamName);
+                    mainHandler.post(
+                            () -> {
+                                if (!closed) {
+                                    callback.onGraphLoaded(graphEglManager, processor);
+                                    return;
+                                }
+                                processor.close();
+                                if (eglManager == null) {
+                                    graphEglManager.release();
+                                }
+                            });
+                });
+    }
+
+    /** Drops a graph still being loaded and stops the loader threads once they are done. */
+    public void close() {
+        closed = true;
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,118 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Streaming Hampel filter over a fixed number of independent channels, rejecting spikes such as
+ * the depth jumps of a blink or a landmark dropout.
+ *
+ * <p>Each channel keeps a {@link SlidingMedian} of its last {@code window} samples. A sample
+ * further than {@code threshold} scaled median absolute deviations from the window's median is
+ * rejected and replaced by that median. The deviation of each sample is taken from the median at
+ * the time it arrived and kept in a second sliding median, so the scale also costs O(log window)
+ * instead of a pass over the window. Every sample enters the window whether rejected or not: a
+ * lasting change of level is accepted once it fills half the window. NaN and infinite samples do
+ * not enter it and are replaced by its median, or left as they are while it is empty. Until the
+ * window is half full, finite samples are accepted as they are.
+ *
+ * <p>{@link #filter} must be called from one thread at a time; the validity flags and counters
+ * may be read from any thread.
+ */
+public class HampelFilter {
+    public static final int DEFAULT_WINDOW = 31;
+    public static final float DEFAULT_THRESHOLD = 3f;
+    // Turns a median absolute deviation into a standard deviation for normal noise.
+    private static final float MAD_TO_SIGMA = 1.4826f;
+
+    private final int channels;
+    private final float threshold;
+    // Smallest deviation that counts as an outlier, so a window of equal values does not reject
+    // every sample that differs slightly.
+    private final float minDeviation;
+    private final SlidingMedian[] samples;
+    private final SlidingMedian[] deviations;
+
+    private final AtomicIntegerArray valid;
+    private final AtomicLongArray rejected;
+    private final AtomicLongArray filtered;
+
+    /**
+     * @param threshold rejection threshold in standard deviations
+     * @param minDeviation rejection threshold floor, in the unit of the samples
+     */
+    public HampelFilter(int channels, int window, float threshold, float minDeviation) {
+        this.channels = channels;
+        this.threshold = threshold;
+        this.minDeviation = minDeviation;
+        samples = new SlidingMedian[channels];
+        deviations = new SlidingMedian[channels];
+        for (int i = 0; i < channels; ++i) {
+            samples[i] = new SlidingMedian(window);
+            deviations[i] = new SlidingMedian(window);
+        }
+        valid = new AtomicIntegerArray(channels);
+        rejected = new AtomicLongArray(channels);
+        filtered = new AtomicLongArray(channels);
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /** Forgets all samples; the counters are kept. */
+    public void reset() {
+        for (int i = 0; i < channels; ++i) {
+            samples[i].clear();
+            deviations[i].clear();
+            valid.set(i, 0);
+        }
+    }
+
+    /**
+     * Filters {@code values[0..channels)} in place; rejected and non-finite samples become the
+     * median.
+     */
+    public void filter(float[] values) {
+        for (int i = 0; i < channels; ++i) {
+            float value = values[i];
+            SlidingMedian window = samples[i];
+            float median = window.getMedian();
+            if (!Float.isFinite(value)) {
+                if (!Float.isNaN(median)) {
+                    values[i] = median;
+                }
+                valid.set(i, 0);
+                continue;
+            }
+            float deviation = Float.isNaN(median) ? 0f : Math.abs(value - median);
+            boolean reject = false;
+            if (2 * window.size() >= window.getWindow()) {
+                float sigma = MAD_TO_SIGMA * deviations[i].getMedian();
+                reject = deviation > Math.max(minDeviation, threshold * sigma);
+            }
+            window.add(value);
+            deviations[i].add(deviation);
+            filtered.incrementAndGet(i);
+            if (reject) {
+                values[i] = median;
+                rejected.incrementAndGet(i);
+            }
+            valid.set(i, reject ? 0 : 1);
+        }
+    }
+
+    /** Whether the latest sample of {@code channel} was finite and was not rejected. */
+    public boolean isValid(int channel) {
+        return valid.get(channel) != 0;
+    }
+
+    public long getRejectedCount(int channel) {
+        return rejected.get(channel);
+    }
+
+    /** Samples of {@code channel} filtered so far, not counting NaN or infinite ones. */
+    public long getFilteredCount(int channel) {
+        return filtered.get(channel);
+    }
+}
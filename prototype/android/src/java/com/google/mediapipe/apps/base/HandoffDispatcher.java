@@ -0,0 +1,123 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the Java side of packet processing on its own thread, so MediaPipe callbacks only copy
+ * primitives into a {@link HandoffRing} and return to the graph.
+ *
+ * <pre>
+ *   HandoffRing depth = dispatcher.addRing("depth", 16, OverflowPolicy.DROP_OLDEST,
+ *           (timestamp, value, payload, length) -> pipeline.onLeftDepth(timestamp, value));
+ *   processor.addPacketCallback(stream, packet -> depth.offer(packet.getTimestamp(), ...));
+ * </pre>
+ *
+ * The dispatcher thread drains the rings in turn and parks while all of them are empty; all
+ * consumers run on it, one entry at a time.
+ */
+public class HandoffDispatcher {
+    // Entries taken from one ring before moving on to the next, so a busy ring cannot starve the
+    // others.
+    private static final int DRAIN_BATCH = 8;
+
+    private final String threadName;
+    private final List<HandoffRing> rings = new CopyOnWriteArrayList<>();
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile boolean parked;
+
+    public HandoffDispatcher(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * Adds a ring whose entries go to {@code consumer} on the dispatcher thread.
+     *
+     * @param capacity entries the ring holds, rounded up to a power of two
+     */
+    public HandoffRing addRing(
+            String name, int capacity, HandoffRing.OverflowPolicy policy, HandoffRing.Consumer consumer) {
+        HandoffRing ring = new HandoffRing(name, capacity, policy, consumer, this);
+        rings.add(ring);
+        return ring;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops the thread after the entry being consumed; queued entries are left in the rings. */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        // Producers waiting for room give up once they see the dispatcher stopped.
+        for (HandoffRing ring : rings) {
+            ring.wakeProducer();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Called by the producers after publishing an entry.
+    void signal() {
+        if (parked) {
+            Thread thread = this.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            int delivered = 0;
+            for (HandoffRing ring : rings) {
+                delivered += ring.drain(DRAIN_BATCH);
+            }
+            if (delivered > 0) {
+                continue;
+            }
+            // Announce the park before the last look at the rings; a producer publishing in
+            // between sees the flag and unparks us.
+            parked = true;
+            if (running && allEmpty()) {
+                LockSupport.park(this);
+            }
+            parked = false;
+        }
+    }
+
+    private boolean allEmpty() {
+        for (HandoffRing ring : rings) {
+            if (!ring.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Appends one line per ring, see {@link HandoffRing#appendSummary}. */
+    public StringBuilder appendSummary(StringBuilder out) {
+        for (int i = 0; i < rings.size(); ++i) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            rings.get(i).appendSummary(out);
+        }
+        return out;
+    }
+}
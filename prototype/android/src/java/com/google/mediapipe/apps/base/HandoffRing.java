@@ -0,0 +1,239 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer queue that hands packet contents from a MediaPipe
+ * callback to the {@link HandoffDispatcher} thread.
+ *
+ * <p>An entry is a timestamp plus either one {@code float} or a byte payload, copied into
+ * preallocated slots; payload slots only grow when a larger payload arrives, so a steady stream
+ * does not allocate. What happens when the consumer falls behind is set by the
+ * {@link OverflowPolicy}. {@link #offer} must be called from one thread at a time, the entries are
+ * consumed on the dispatcher thread, and the counters may be read from any thread.
+ */
+public class HandoffRing {
+    /** What {@link #offer} does when the ring is full. */
+    public enum OverflowPolicy {
+        /** Replace the oldest queued entry; keeps the freshest data, e.g. for live readouts. */
+        DROP_OLDEST,
+        /** Discard the new entry. */
+        DROP_NEWEST,
+        /** Wait for the consumer, back-pressuring the graph; nothing is lost. */
+        BLOCK,
+    }
+
+    /** Receives the entries on the dispatcher thread. */
+    public interface Consumer {
+        /**
+         * @param payload valid up to {@code payloadLength}; only valid during the call
+         * @param payloadLength 0 for entries offered with {@link #offer(long, float)}
+         */
+        void onEntry(long timestamp, float value, byte[] payload, int payloadLength);
+    }
+
+    // Upper bound for one wait of a blocked producer, in case a wake-up is missed.
+    private static final long BLOCK_PARK_NANOS = 1_000_000L;
+
+    private final String name;
+    private final OverflowPolicy policy;
+    private final Consumer consumer;
+    private final HandoffDispatcher dispatcher;
+    private final int capacity;
+    private final int mask;
+
+    private final long[] timestamps;
+    private final float[] values;
+    private final byte[][] payloads;
+    private final int[] payloadLengths;
+
+    // Next entry to consume. The producer advances it too when dropping the oldest entry, so the
+    // consumer claims each entry with a CAS after copying it out.
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to fill; only written by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    private volatile Thread blockedProducer;
+
+    // Only written by the producer.
+    private volatile long droppedEntries;
+    private volatile long blockedOffers;
+    private volatile int peakDepth;
+
+    // Only touched by the consumer.
+    private byte[] consumerPayload = new byte[0];
+
+    HandoffRing(
+            String name,
+            int capacity,
+            OverflowPolicy policy,
+            Consumer consumer,
+            HandoffDispatcher dispatcher) {
+        this.name = name;
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.policy = policy;
+        this.consumer = consumer;
+        this.dispatcher = dispatcher;
+        timestamps = new long[this.capacity];
+        values = new float[this.capacity];
+        payloads = new byte[this.capacity][];
+        payloadLengths = new int[this.capacity];
+        for (int i = 0; i < this.capacity; ++i) {
+            payloads[i] = new byte[0];
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Queues one value; returns false if it was dropped. */
+    public boolean offer(long timestamp, float value) {
+        return offer(timestamp, value, null, 0);
+    }
+
+    /** Queues a copy of {@code payload[0..length)}; returns false if it was dropped. */
+    public boolean offer(long timestamp, byte[] payload, int length) {
+        return offer(timestamp, 0f, payload, length);
+    }
+
+    private boolean offer(long timestamp, float value, byte[] payload, int length) {
+        long t = tail.get();
+        if (!reserve(t)) {
+            ++droppedEntries;
+            return false;
+        }
+        int i = (int) t & mask;
+        timestamps[i] = timestamp;
+        values[i] = value;
+        if (length > 0) {
+            if (payloads[i].length < length) {
+                payloads[i] = new byte[length];
+            }
+            System.arraycopy(payload, 0, payloads[i], 0, length);
+        }
+        payloadLengths[i] = length;
+        // A volatile store, so the dispatcher either sees the entry or has announced that it parks.
+        tail.set(t + 1);
+        int depth = (int) (t + 1 - head.get());
+        if (depth > peakDepth) {
+            peakDepth = depth;
+        }
+        dispatcher.signal();
+        return true;
+    }
+
+    // Makes room for the entry at t; returns false if it must be dropped instead.
+    private boolean reserve(long t) {
+        boolean blocked = false;
+        while (true) {
+            long h = head.get();
+            if (t - h < capacity) {
+                return true;
+            }
+            switch (policy) {
+                case DROP_OLDEST:
+                    if (head.compareAndSet(h, h + 1)) {
+                        ++droppedEntries;
+                        return true;
+                    }
+                    break;
+                case BLOCK:
+                    if (!dispatcher.isRunning()) {
+                        return false;
+                    }
+                    if (!blocked) {
+                        blocked = true;
+                        ++blockedOffers;
+                    }
+                    blockedProducer = Thread.currentThread();
+                    if (t - head.get() >= capacity) {
+                        LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    }
+                    blockedProducer = null;
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /** Delivers up to {@code max} entries to the consumer; returns how many were delivered. */
+    int drain(int max) {
+        int delivered = 0;
+        while (delivered < max) {
+            long h = head.get();
+            if (h == tail.get()) {
+                break;
+            }
+            int i = (int) h & mask;
+            long timestamp = timestamps[i];
+            float value = values[i];
+            byte[] source = payloads[i];
+            // The slot may be overwritten while copying; the CAS below tells, and a torn length
+            // must not overrun either array.
+            int length = Math.min(payloadLengths[i], source.length);
+            if (length > consumerPayload.length) {
+                consumerPayload = new byte[length];
+            }
+            System.arraycopy(source, 0, consumerPayload, 0, length);
+            if (!head.compareAndSet(h, h + 1)) {
+                // The producer dropped this entry in the meantime.
+                continue;
+            }
+            wakeProducer();
+            consumer.onEntry(timestamp, value, consumerPayload, length);
+            ++delivered;
+        }
+        return delivered;
+    }
+
+    void wakeProducer() {
+        Thread producer = blockedProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /** Entries waiting for the consumer. */
+    public int getDepth() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int getPeakDepth() {
+        return peakDepth;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Entries lost to the overflow policy. */
+    public long getDroppedCount() {
+        return droppedEntries;
+    }
+
+    /** Offers that had to wait for the consumer under {@link OverflowPolicy#BLOCK}. */
+    public long getBlockedCount() {
+        return blockedOffers;
+    }
+
+    public StringBuilder appendSummary(StringBuilder out) {
+        return out.append(name)
+                .append(" depth=")
+                .append(getDepth())
+                .append('/')
+                .append(capacity)
+                .append(" peak=")
+                .append(peakDepth)
+                .append(" dropped=")
+                .append(droppedEntries)
+                .append(" blocked=")
+                .append(blockedOffers);
+    }
+}
@@ -0,0 +1,115 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Solves the triangle formed by the camera and both irises for head yaw and distance.
+ *
+ * <p>Given the camera-to-iris distances of the left and right eye and the inter-pupillary
+ * distance, the head distance is the median of the triangle from the camera to the midpoint
+ * between the eyes. The yaw is the angle between the eye baseline and the plane perpendicular to
+ * that median; it is 0 when the face looks straight at the camera and positive when the left eye
+ * is farther away than the right one. All lengths share the unit of the inputs.
+ *
+ * <p>Inputs that do not form a triangle (non-positive or non-finite sides, or sides violating the
+ * triangle inequality) are reported as invalid rather than producing {@code NaN} angles. Instances
+ * are not thread-safe but never allocate, so one solver can be kept per consumer thread.
+ */
+public class HeadPoseSolver {
+    // solvePacked() returns (yaw, distance) as two float bit patterns so the batch loop needs no
+    // scratch state; a NaN yaw pattern marks a degenerate triangle.
+    private static final long INVALID = -1L;
+
+    private final float interPupillaryDistance;
+    private final float interPupillaryDistanceSquared;
+
+    private float yawDegrees = Float.NaN;
+    private float distance = Float.NaN;
+
+    public HeadPoseSolver(float interPupillaryDistance) {
+        if (!(interPupillaryDistance > 0) || Float.isInfinite(interPupillaryDistance)) {
+            throw new IllegalArgumentException(
+                    "Inter-pupillary distance must be positive: " + interPupillaryDistance);
+        }
+        this.interPupillaryDistance = interPupillaryDistance;
+        this.interPupillaryDistanceSquared = interPupillaryDistance * interPupillaryDistance;
+    }
+
+    /**
+     * Solves one sample. Returns {@code false} for a degenerate triangle, in which case
+     * {@link #getYawDegrees} and {@link #getDistance} return {@code NaN}.
+     */
+    public boolean solve(float leftDepth, float rightDepth) {
+        long packed = solvePacked(leftDepth, rightDepth);
+        if (packed == INVALID) {
+            yawDegrees = Float.NaN;
+            distance = Float.NaN;
+            return false;
+        }
+        yawDegrees = Float.intBitsToFloat((int) (packed >>> 32));
+        distance = Float.intBitsToFloat((int) packed);
+        return true;
+    }
+
+    /**
+     * Solves {@code count} samples starting at {@code offset} of the input arrays and writes the
+     * results at the same indices of the output arrays. Degenerate samples produce {@code NaN} in
+     * both outputs. Returns the number of valid samples.
+     */
+    public int solve(
+            float[] leftDepths,
+            float[] rightDepths,
+            int offset,
+            int count,
+            float[] yawDegreesOut,
+            float[] distancesOut) {
+        int valid = 0;
+        for (int i = offset, end = offset + count; i < end; ++i) {
+            long packed = solvePacked(leftDepths[i], rightDepths[i]);
+            if (packed == INVALID) {
+                yawDegreesOut[i] = Float.NaN;
+                distancesOut[i] = Float.NaN;
+            } else {
+                yawDegreesOut[i] = Float.intBitsToFloat((int) (packed >>> 32));
+                distancesOut[i] = Float.intBitsToFloat((int) packed);
+                ++valid;
+            }
+        }
+        return valid;
+    }
+
+    private long solvePacked(float leftDepth, float rightDepth) {
+        if (!(leftDepth > 0) || !(rightDepth > 0)
+                || Float.isInfinite(leftDepth) || Float.isInfinite(rightDepth)
+                || Math.abs(leftDepth - rightDepth) > interPupillaryDistance
+                || leftDepth + rightDepth < interPupillaryDistance) {
+            return INVALID;
+        }
+        float leftSquared = leftDepth * leftDepth;
+        float rightSquared = rightDepth * rightDepth;
+        // Apollonius' theorem for the median from the camera to the midpoint between the eyes.
+        float medianSquared = 0.5f * (leftSquared + rightSquared) - 0.25f * interPupillaryDistanceSquared;
+        if (!(medianSquared > 0)) {
+            return INVALID;
+        }
+        float median = (float) Math.sqrt(medianSquared);
+        float sinYaw = (leftSquared - rightSquared) / (2 * median * interPupillaryDistance);
+        // Rounding can push a near-degenerate triangle just outside [-1, 1].
+        sinYaw = Math.max(-1f, Math.min(1f, sinYaw));
+        float yaw = (float) Math.toDegrees(Math.asin(sinYaw));
+        return ((long) Float.floatToRawIntBits(yaw) << 32)
+                | (Float.floatToRawIntBits(median) & 0xffffffffL);
+    }
+
+    public float getInterPupillaryDistance() {
+        return interPupillaryDistance;
+    }
+
+    /** Yaw of the last {@link #solve(float, float)} call, in degrees. */
+    public float getYawDegrees() {
+        return yawDegrees;
+    }
+
+    /** Camera-to-head distance of the last {@link #solve(float, float)} call. */
+    public float getDistance() {
+        return distance;
+    }
+}
@@ -0,0 +1,196 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Estimates the per-eye depth from iris landmarks, the camera focal length and the physical iris
+ * diameter, the same way MediaPipe's IrisToDepthCalculator does.
+ *
+ * <p>For each eye the iris diameter in pixels is the mean of the horizontal and vertical contour
+ * spans, and
+ *
+ * <pre>
+ *   depth = irisDiameterMm * sqrt(focalLength^2 + r^2) / irisDiameterPixels
+ * </pre>
+ *
+ * where {@code r} is the distance of the iris center from the image center in pixels. Two
+ * landmark layouts are accepted: the 10 {@code iris_landmarks} (left iris, then right iris) and the
+ * 478 face landmarks with the irises appended at 468. Each iris is its center followed by four
+ * contour points.
+ *
+ * <p>The focal length and image size may be set from any thread; {@link #estimate} must be called
+ * from one thread at a time.
+ */
+public class IrisDepthEstimator {
+    /** Average human iris diameter, as used by MediaPipe Iris. */
+    public static final float DEFAULT_IRIS_DIAMETER_MM = 11.8f;
+
+    private static final int IRIS_LANDMARKS = 5;
+    private static final int FACE_LANDMARKS = 468;
+
+    private volatile float irisDiameterMm;
+    private volatile float focalLengthPixels = Float.NaN;
+    private volatile int imageWidth;
+    private volatile int imageHeight;
+
+    private float leftDepthMm = Float.NaN;
+    private float rightDepthMm = Float.NaN;
+    private float leftDiameterPixels = Float.NaN;
+    private float rightDiameterPixels = Float.NaN;
+
+    public IrisDepthEstimator() {
+        this(DEFAULT_IRIS_DIAMETER_MM);
+    }
+
+    public IrisDepthEstimator(float irisDiameterMm) {
+        this.irisDiameterMm = irisDiameterMm;
+    }
+
+    public void setIrisDiameterMm(float irisDiameterMm) {
+        this.irisDiameterMm = irisDiameterMm;
+    }
+
+    public float getIrisDiameterMm() {
+        return irisDiameterMm;
+    }
+
+    public void setFocalLengthPixels(float focalLengthPixels) {
+        this.focalLengthPixels = focalLengthPixels;
+    }
+
+    public float getFocalLengthPixels() {
+        return focalLengthPixels;
+    }
+
+    /** Sets the size of the image the normalized landmarks refer to, i.e. the graph input. */
+    public void setImageSize(int width, int height) {
+        imageWidth = width;
+        imageHeight = height;
+    }
+
+    /** Short side of the image set with {@link #setImageSize}, 0 if unknown. */
+    public int getImageShortSide() {
+        return Math.min(imageWidth, imageHeight);
+    }
+
+    /** Whether the focal length and image size needed by {@link #estimate} are known. */
+    public boolean isCalibrated() {
+        return focalLengthPixels > 0 && imageWidth > 0 && imageHeight > 0;
+    }
+
+    /**
+     * Estimates both depths from {@code count} x/y/z triples, e.g. the backing array of a
+     * {@link LandmarkDecoder}. Returns whether both depths are valid; see {@link #getLeftDepthMm}
+     * and {@link #getRightDepthMm}. The iris diameters are measured as long as the image size is
+     * known, even without a focal length.
+     */
+    public boolean estimate(float[] coordinates, int count) {
+        return estimate(coordinates, 0, count);
+    }
+
+    private boolean estimate(float[] coordinates, int offset, int count) {
+        leftDepthMm = Float.NaN;
+        rightDepthMm = Float.NaN;
+        leftDiameterPixels = Float.NaN;
+        rightDiameterPixels = Float.NaN;
+        int left = leftIrisIndex(count);
+        int width = imageWidth;
+        int height = imageHeight;
+        if (left < 0 || width <= 0 || height <= 0) {
+            return false;
+        }
+        int leftBase = offset + left * LandmarkDecoder.STRIDE;
+        int rightBase = offset + (left + IRIS_LANDMARKS) * LandmarkDecoder.STRIDE;
+        leftDiameterPixels = diameterPixels(coordinates, leftBase, width, height);
+        rightDiameterPixels = diameterPixels(coordinates, rightBase, width, height);
+        float focalLength = focalLengthPixels;
+        if (!(focalLength > 0)) {
+            return false;
+        }
+        float diameterMm = irisDiameterMm;
+        leftDepthMm =
+                depthMm(coordinates, leftBase, leftDiameterPixels, focalLength, width, height, diameterMm);
+        rightDepthMm =
+                depthMm(coordinates, rightBase, rightDiameterPixels, focalLength, width, height, diameterMm);
+        return !Float.isNaN(leftDepthMm) && !Float.isNaN(rightDepthMm);
+    }
+
+    /**
+     * Estimates the depths of {@code frames} landmark frames of {@code count} landmarks each,
+     * stored back to back in {@code coordinates}. Depths go to {@code leftOut} and
+     * {@code rightOut} from {@code outOffset} on, {@code NaN} where they cannot be estimated.
+     * Returns the number of frames with both depths valid.
+     */
+    public int estimate(
+            float[] coordinates, int count, int frames, float[] leftOut, float[] rightOut, int outOffset) {
+        int valid = 0;
+        int frameSize = count * LandmarkDecoder.STRIDE;
+        for (int i = 0; i < frames; ++i) {
+            if (estimate(coordinates, i * frameSize, count)) {
+                ++valid;
+            }
+            leftOut[outOffset + i] = leftDepthMm;
+            rightOut[outOffset + i] = rightDepthMm;
+        }
+        return valid;
+    }
+
+    public float getLeftDepthMm() {
+        return leftDepthMm;
+    }
+
+    public float getRightDepthMm() {
+        return rightDepthMm;
+    }
+
+    /** Iris diameter in image pixels from the last {@link #estimate}, {@code NaN} if unknown. */
+    public float getLeftIrisDiameterPixels() {
+        return leftDiameterPixels;
+    }
+
+    public float getRightIrisDiameterPixels() {
+        return rightDiameterPixels;
+    }
+
+    // Index of the left iris center in a frame of count landmarks, or -1 for an unknown layout.
+    private static int leftIrisIndex(int count) {
+        if (count == 2 * IRIS_LANDMARKS) {
+            return 0;
+        }
+        if (count == FACE_LANDMARKS + 2 * IRIS_LANDMARKS) {
+            return FACE_LANDMARKS;
+        }
+        return -1;
+    }
+
+    // base is the array offset of the iris center; the contour follows it.
+    private static float diameterPixels(float[] c, int base, int width, int height) {
+        int s = LandmarkDecoder.STRIDE;
+        // Contour points 1 and 3 span the iris horizontally, 2 and 4 vertically.
+        float horizontal = distance(c, base + s, base + 3 * s, width, height);
+        float vertical = distance(c, base + 2 * s, base + 4 * s, width, height);
+        return (horizontal + vertical) / 2;
+    }
+
+    private static float depthMm(
+            float[] c,
+            int base,
+            float diameterPixels,
+            float focalLength,
+            int width,
+            int height,
+            float diameterMm) {
+        if (!(diameterPixels > 0)) {
+            return Float.NaN;
+        }
+        float dx = (c[base] - 0.5f) * width;
+        float dy = (c[base + 1] - 0.5f) * height;
+        return diameterMm
+                * (float) Math.sqrt(focalLength * focalLength + dx * dx + dy * dy)
+                / diameterPixels;
+    }
+
+    private static float distance(float[] c, int a, int b, int width, int height) {
+        float dx = (c[a] - c[b]) * width;
+        float dy = (c[a + 1] - c[b + 1]) * height;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
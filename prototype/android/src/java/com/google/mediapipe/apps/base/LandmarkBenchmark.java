@@ -0,0 +1,177 @@
+package com.google.mediapipe.apps.base;
+
+import com.google.mediapipe.formats.proto.LandmarkProto.NormalizedLandmark;
+import com.google.mediapipe.formats.proto.LandmarkProto.NormalizedLandmarkList;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares decoding serialized landmark lists with {@link LandmarkDecoder} against
+ * {@code NormalizedLandmarkList.parseFrom} on the desktop JVM, and checks that both read the same
+ * coordinates.
+ *
+ * <pre>
+ *   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:landmark_benchmark -- \
+ *       [--frames 10000] [--landmarks 478] [--passes 5]
+ * </pre>
+ *
+ * Frames are serialized by the generated proto code, some landmarks with the visibility and
+ * presence fields the decoder skips. The run fails if any frame decodes differently from
+ * {@code parseFrom}, or if a malformed frame, e.g. one whose length prefix overflows, is not
+ * rejected with an {@link IllegalArgumentException}. Every pass but the last warms up the JIT.
+ */
+public class LandmarkBenchmark {
+    private static final int DEFAULT_FRAMES = 10_000;
+    private static final int DEFAULT_LANDMARKS = 478;
+    private static final int DEFAULT_PASSES = 5;
+
+    // Keeps the JIT from dropping the work.
+    private static double sink;
+
+    public static void main(String[] args) throws InvalidProtocolBufferException {
+        int frameCount = DEFAULT_FRAMES;
+        int landmarks = DEFAULT_LANDMARKS;
+        int passes = DEFAULT_PASSES;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--frames") && i + 1 < args.length) {
+                frameCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--landmarks") && i + 1 < args.length) {
+                landmarks = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--passes") && i + 1 < args.length) {
+                passes = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println(
+                        "usage: landmark_benchmark [--frames <n>] [--landmarks <n>] [--passes <n>]");
+                System.exit(2);
+            }
+        }
+
+        byte[][] frames = serializedFrames(frameCount, landmarks, new Random(1));
+        int mismatches = verify(frames) + verifyMalformed();
+        System.out.println(
+                frameCount + " frames of " + landmarks + " landmarks, " + mismatches
+                        + " mismatches against parseFrom");
+
+        for (int pass = 1; pass <= passes; ++pass) {
+            long parseFromNs = timeParseFrom(frames);
+            long decoderNs = timeDecoder(frames);
+            if (pass == passes) {
+                print("parseFrom", parseFromNs, frameCount);
+                print("LandmarkDecoder", decoderNs, frameCount);
+            }
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static byte[][] serializedFrames(int count, int landmarks, Random random) {
+        byte[][] frames = new byte[count][];
+        for (int i = 0; i < count; ++i) {
+            NormalizedLandmarkList.Builder list = NormalizedLandmarkList.newBuilder();
+            for (int j = 0; j < landmarks; ++j) {
+                NormalizedLandmark.Builder landmark =
+                        NormalizedLandmark.newBuilder()
+                                .setX(random.nextFloat())
+                                .setY(random.nextFloat())
+                                .setZ(random.nextFloat() - 0.5f);
+                if (j % 4 == 0) {
+                    landmark.setVisibility(random.nextFloat()).setPresence(random.nextFloat());
+                }
+                list.addLandmark(landmark.build());
+            }
+            frames[i] = list.build().toByteArray();
+        }
+        return frames;
+    }
+
+    private static int verify(byte[][] frames) throws InvalidProtocolBufferException {
+        LandmarkDecoder decoder = new LandmarkDecoder();
+        int mismatches = 0;
+        for (int i = 0; i < frames.length; ++i) {
+            NormalizedLandmarkList expected = NormalizedLandmarkList.parseFrom(frames[i]);
+            int count = decoder.decode(frames[i]);
+            boolean same = count == expected.getLandmarkCount();
+            for (int j = 0; same && j < count; ++j) {
+                NormalizedLandmark landmark = expected.getLandmark(j);
+                same =
+                        Float.floatToIntBits(decoder.getX(j)) == Float.floatToIntBits(landmark.getX())
+                                && Float.floatToIntBits(decoder.getY(j))
+                                        == Float.floatToIntBits(landmark.getY())
+                                && Float.floatToIntBits(decoder.getZ(j))
+                                        == Float.floatToIntBits(landmark.getZ());
+            }
+            if (!same) {
+                if (mismatches < 10) {
+                    System.err.println("Frame " + i + " decodes differently from parseFrom");
+                }
+                ++mismatches;
+            }
+        }
+        return mismatches;
+    }
+
+    // Each must throw IllegalArgumentException, not read past the buffer.
+    private static int verifyMalformed() {
+        byte[][] malformed = {
+            // Landmark whose length prefix is Integer.MAX_VALUE.
+            {0x0a, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 0x0d, 0, 0, 0, 0},
+            // Unknown length-delimited field whose length overflows the position.
+            {0x12, (byte) 0xfe, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 0x00},
+            // Landmark cut off in the middle of x.
+            {0x0a, 0x05, 0x0d, 0x00, 0x00},
+            // Varint that never ends.
+            {0x0a, (byte) 0x80, (byte) 0x80},
+        };
+        LandmarkDecoder decoder = new LandmarkDecoder();
+        int mismatches = 0;
+        for (int i = 0; i < malformed.length; ++i) {
+            try {
+                decoder.decode(malformed[i]);
+                System.err.println("Malformed frame " + i + " was accepted");
+                ++mismatches;
+            } catch (IllegalArgumentException expected) {
+                // Rejected as it should be.
+            } catch (RuntimeException e) {
+                System.err.println("Malformed frame " + i + " threw " + e);
+                ++mismatches;
+            }
+        }
+        return mismatches;
+    }
+
+    private static long timeParseFrom(byte[][] frames) throws InvalidProtocolBufferException {
+        long start = System.nanoTime();
+        double total = 0;
+        for (byte[] frame : frames) {
+            NormalizedLandmarkList landmarks = NormalizedLandmarkList.parseFrom(frame);
+            total += landmarks.getLandmark(landmarks.getLandmarkCount() - 1).getX();
+        }
+        sink += total;
+        return System.nanoTime() - start;
+    }
+
+    private static long timeDecoder(byte[][] frames) {
+        LandmarkDecoder decoder = new LandmarkDecoder();
+        long start = System.nanoTime();
+        double total = 0;
+        for (byte[] frame : frames) {
+            int count = decoder.decode(frame);
+            total += decoder.getX(count - 1);
+        }
+        sink += total;
+        return System.nanoTime() - start;
+    }
+
+    private static void print(String name, long elapsedNs, int count) {
+        System.out.println(
+                String.format(
+                        Locale.US,
+                        "%-15s %8.2f us/frame %10.0f frames/s",
+                        name,
+                        elapsedNs / 1e3 / count,
+                        count * 1e9 / elapsedNs));
+    }
+}
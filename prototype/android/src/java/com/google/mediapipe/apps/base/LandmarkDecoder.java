@@ -0,0 +1,191 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Decodes a serialized {@code NormalizedLandmarkList} straight from the protobuf wire format into
+ * a reusable {@code float[]} holding x/y/z for each landmark.
+ *
+ * <p>Unlike {@code NormalizedLandmarkList.parseFrom} no message objects are created; once the
+ * backing array has grown to the landmark count of the graph, decoding does not allocate. Not
+ * thread-safe: use one decoder per packet callback.
+ */
+public class LandmarkDecoder {
+    // Number of floats stored per landmark (x, y, z).
+    public static final int STRIDE = 3;
+
+    // Field numbers of NormalizedLandmarkList and NormalizedLandmark (landmark.proto).
+    private static final int FIELD_LANDMARK = 1;
+    private static final int FIELD_X = 1;
+    private static final int FIELD_Y = 2;
+    private static final int FIELD_Z = 3;
+
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_FIXED64 = 1;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRETYPE_FIXED32 = 5;
+
+    private float[] coordinates;
+    private int count;
+
+    // Read position inside the buffer currently being decoded.
+    private int pos;
+
+    public LandmarkDecoder() {
+        this(0);
+    }
+
+    public LandmarkDecoder(int expectedLandmarks) {
+        coordinates = new float[expectedLandmarks * STRIDE];
+    }
+
+    /**
+     * Decodes {@code data} and returns the number of landmarks read. Throws
+     * {@link IllegalArgumentException} if the buffer is not a valid landmark list; the previous
+     * contents are lost in that case.
+     */
+    public int decode(byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    public int decode(byte[] data, int offset, int length) {
+        count = 0;
+        pos = offset;
+        int end = offset + length;
+        while (pos < end) {
+            int tag = readVarint32(data, end);
+            if ((tag >>> 3) == FIELD_LANDMARK && (tag & 7) == WIRETYPE_LENGTH_DELIMITED) {
+                int size = readVarint32(data, end);
+                // Compared with the bytes left, since pos + size may overflow.
+                if (size < 0 || size > end - pos) {
+                    throw new IllegalArgumentException("Truncated landmark at offset " + pos);
+                }
+                decodeLandmark(data, pos + size);
+            } else {
+                skipField(data, tag & 7, end);
+            }
+        }
+        return count;
+    }
+
+    private void decodeLandmark(byte[] data, int end) {
+        ensureCapacity(count + 1);
+        int base = count * STRIDE;
+        // Missing fields default to 0 as in the generated proto code.
+        coordinates[base] = 0f;
+        coordinates[base + 1] = 0f;
+        coordinates[base + 2] = 0f;
+        while (pos < end) {
+            int tag = readVarint32(data, end);
+            int field = tag >>> 3;
+            if ((tag & 7) == WIRETYPE_FIXED32 && field >= FIELD_X && field <= FIELD_Z) {
+                coordinates[base + field - FIELD_X] = Float.intBitsToFloat(readFixed32(data, end));
+            } else {
+                skipField(data, tag & 7, end);
+            }
+        }
+        ++count;
+    }
+
+    private void skipField(byte[] data, int wireType, int end) {
+        switch (wireType) {
+            case WIRETYPE_VARINT:
+                readVarint32(data, end);
+                break;
+            case WIRETYPE_FIXED64:
+                pos += 8;
+                break;
+            case WIRETYPE_LENGTH_DELIMITED:
+                int size = readVarint32(data, end);
+                if (size < 0 || size > end - pos) {
+                    throw new IllegalArgumentException("Truncated field at offset " + pos);
+                }
+                pos += size;
+                break;
+            case WIRETYPE_FIXED32:
+                pos += 4;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported wire type " + wireType);
+        }
+        if (pos > end) {
+            throw new IllegalArgumentException("Truncated field at offset " + pos);
+        }
+    }
+
+    private int readVarint32(byte[] data, int end) {
+        int result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= end) {
+                throw new IllegalArgumentException("Truncated varint at offset " + pos);
+            }
+            byte b = data[pos++];
+            if (shift < 32) {
+                result |= (b & 0x7f) << shift;
+            }
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at offset " + pos);
+    }
+
+    private int readFixed32(byte[] data, int end) {
+        if (pos + 4 > end) {
+            throw new IllegalArgumentException("Truncated fixed32 at offset " + pos);
+        }
+        int value = (data[pos] & 0xff)
+                | (data[pos + 1] & 0xff) << 8
+                | (data[pos + 2] & 0xff) << 16
+                | (data[pos + 3] & 0xff) << 24;
+        pos += 4;
+        return value;
+    }
+
+    private void ensureCapacity(int landmarks) {
+        if (landmarks * STRIDE > coordinates.length) {
+            float[] grown = new float[Math.max(landmarks, coordinates.length / STRIDE * 2) * STRIDE];
+            System.arraycopy(coordinates, 0, grown, 0, count * STRIDE);
+            coordinates = grown;
+        }
+    }
+
+    /** Number of landmarks decoded by the last call to {@link #decode}. */
+    public int size() {
+        return count;
+    }
+
+    public float getX(int index) {
+        return coordinates[index * STRIDE];
+    }
+
+    public float getY(int index) {
+        return coordinates[index * STRIDE + 1];
+    }
+
+    public float getZ(int index) {
+        return coordinates[index * STRIDE + 2];
+    }
+
+    /**
+     * Backing array laid out as {@code x0, y0, z0, x1, ...}. Only the first {@code size() * STRIDE}
+     * entries are valid, and the array is reused by the next {@link #decode} call.
+     */
+    public float[] getCoordinates() {
+        return coordinates;
+    }
+
+    /** Appends a human readable dump of the decoded landmarks to {@code out}. */
+    public StringBuilder appendDebugString(StringBuilder out) {
+        for (int i = 0; i < count; ++i) {
+            out.append("\t\tLandmark[")
+                    .append(i)
+                    .append("]: (")
+                    .append(getX(i))
+                    .append(", ")
+                    .append(getY(i))
+                    .append(", ")
+                    .append(getZ(i))
+                    .append(")\n");
+        }
+        return out;
+    }
+}
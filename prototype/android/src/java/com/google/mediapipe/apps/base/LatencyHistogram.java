@@ -0,0 +1,107 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of durations in nanoseconds with logarithmic buckets.
+ *
+ * <p>Every power of two is split into {@link #SUB_BUCKETS} linear buckets, so a reported
+ * percentile is within 12.5% of the true value, from 1 ns up to about 4.5 minutes; longer ones land
+ * in the last bucket. Recording is one atomic increment and never allocates, so any number of
+ * threads may record while another one reads. Reads are not a consistent snapshot, which is fine
+ * for monitoring.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below 2^(MAX_EXPONENT + 1) ns get their own bucket.
+    private static final int MAX_EXPONENT = 37;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Records one duration; negative durations count as 0. */
+    public void record(long durationNs) {
+        buckets.incrementAndGet(bucketIndex(durationNs));
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Smallest value that lands in the bucket after index.
+    static long bucketUpperBound(int index) {
+        int exponentGroup = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (exponentGroup == 0) {
+            return subBucket + 1;
+        }
+        int shift = exponentGroup - 1;
+        return ((long) (SUB_BUCKETS + subBucket + 1)) << shift;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given fraction (0..1] of the recorded
+     * durations, or 0 if nothing was recorded.
+     */
+    public long getPercentileNs(double fraction) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /** Appends "name n=... p50=... p95=... p99=..." with times in milliseconds. */
+    public StringBuilder appendSummary(StringBuilder out) {
+        out.append(name).append(" n=").append(getCount());
+        appendMillis(out.append(" p50="), getPercentileNs(0.50));
+        appendMillis(out.append(" p95="), getPercentileNs(0.95));
+        appendMillis(out.append(" p99="), getPercentileNs(0.99));
+        return out;
+    }
+
+    private static void appendMillis(StringBuilder out, long ns) {
+        out.append(String.format(Locale.US, "%.1fms", ns / 1e6));
+    }
+}
@@ -0,0 +1,156 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Follows camera frames from the converter to the screen and records per-stage latencies.
+ *
+ * <pre>
+ *   capture   camera timestamp          --> frame handed to the FrameProcessor
+ *   graph     frame handed to the graph --> first output packet of that frame
+ *   pipeline  first output packet       --> depth of that frame leaves the TrackingPipeline
+ *   display   readout published         --> readout set on its view
+ *   total     frame handed to the graph --> depth of that frame set on its view
+ * </pre>
+ *
+ * Frames are matched by their timestamp in microseconds, which MediaPipe carries over to the output
+ * packets. The last {@link #RING_SIZE} submitted frames are remembered; a frame that drops out of
+ * that window without any output was dropped by the graph, e.g. by a flow limiter or for lack of a
+ * face. Submission must happen on one thread; the other calls may come from any thread.
+ */
+public class LatencyTracker {
+    public static final int RING_SIZE = 64;
+    private static final int MASK = RING_SIZE - 1;
+    // Camera timestamps further off than this are not on the nanoTime clock.
+    private static final long MAX_CAPTURE_LATENCY_NS = 1_000_000_000L;
+
+    private final FrameRateGovernor.Clock clock;
+
+    private final LatencyHistogram capture = new LatencyHistogram("capture");
+    private final LatencyHistogram graph = new LatencyHistogram("graph");
+    private final LatencyHistogram pipeline = new LatencyHistogram("pipeline");
+    private final LatencyHistogram display = new LatencyHistogram("display");
+    private final LatencyHistogram total = new LatencyHistogram("total");
+    private final LatencyHistogram[] histograms = {capture, graph, pipeline, display, total};
+
+    // Frame timestamps are written last and cleared first, so a matching timestamp means the other
+    // two slots belong to that frame.
+    private final AtomicLongArray frameTimestamps = new AtomicLongArray(RING_SIZE);
+    private final AtomicLongArray submitTimes = new AtomicLongArray(RING_SIZE);
+    private final AtomicLongArray outputTimes = new AtomicLongArray(RING_SIZE);
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    public LatencyTracker() {
+        this(FrameRateGovernor.SYSTEM_CLOCK);
+    }
+
+    public LatencyTracker(FrameRateGovernor.Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < RING_SIZE; ++i) {
+            frameTimestamps.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    /** Called when the frame with {@code timestampUs} is handed to the graph. */
+    public void onFrameSubmitted(long timestampUs) {
+        long now = clock.nanoTime();
+        long captureNs = now - timestampUs * 1000;
+        if (captureNs >= 0 && captureNs < MAX_CAPTURE_LATENCY_NS) {
+            capture.record(captureNs);
+        }
+        int slot = (int) (submittedFrames.get() & MASK);
+        if (frameTimestamps.getAndSet(slot, Long.MIN_VALUE) != Long.MIN_VALUE
+                && outputTimes.get(slot) == 0) {
+            droppedFrames.incrementAndGet();
+        }
+        outputTimes.set(slot, 0);
+        submitTimes.set(slot, now);
+        frameTimestamps.set(slot, timestampUs);
+        submittedFrames.incrementAndGet();
+    }
+
+    /** Called for every graph output packet; only the first one of a frame is recorded. */
+    public void onGraphOutput(long timestampUs) {
+        int slot = find(timestampUs);
+        if (slot < 0) {
+            return;
+        }
+        long now = clock.nanoTime();
+        if (outputTimes.compareAndSet(slot, 0, now)) {
+            graph.record(now - submitTimes.get(slot));
+        }
+    }
+
+    /**
+     * Called when the depth of the frame leaves the pipeline. Returns the time the frame was
+     * submitted, to be passed on as the origin of the readouts showing it, or 0 if unknown.
+     */
+    public long onDepthReady(long timestampUs) {
+        int slot = find(timestampUs);
+        if (slot < 0) {
+            return 0;
+        }
+        long output = outputTimes.get(slot);
+        long submit = submitTimes.get(slot);
+        if (frameTimestamps.get(slot) != timestampUs) {
+            return 0;
+        }
+        if (output != 0) {
+            pipeline.record(clock.nanoTime() - output);
+        }
+        return submit;
+    }
+
+    /** Called when a readout published at {@code publishNs} was set on its view. */
+    public void onDisplayed(long originNs, long publishNs, long displayNs) {
+        display.record(displayNs - publishNs);
+        if (originNs != 0) {
+            total.record(displayNs - originNs);
+        }
+    }
+
+    // Ring slot of the frame, searching from the newest submission; -1 if it is gone.
+    private int find(long timestampUs) {
+        long newest = submittedFrames.get() - 1;
+        for (int i = 0; i < RING_SIZE && newest - i >= 0; ++i) {
+            int slot = (int) ((newest - i) & MASK);
+            if (frameTimestamps.get(slot) == timestampUs) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public LatencyHistogram[] getHistograms() {
+        return histograms;
+    }
+
+    public long getSubmittedFrameCount() {
+        return submittedFrames.get();
+    }
+
+    /** Submitted frames that left the tracking window without any graph output. */
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    /** Appends one line per stage and one with the frame counts. */
+    public StringBuilder appendSummary(StringBuilder out) {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.appendSummary(out).append('\n');
+        }
+        return out.append("frames submitted=")
+                .append(getSubmittedFrameCount())
+                .append(" dropped by graph=")
+                .append(getDroppedFrameCount());
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        droppedFrames.set(0);
+    }
+}
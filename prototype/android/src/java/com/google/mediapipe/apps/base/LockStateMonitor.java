@@ -0,0 +1,73 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks whether the device is locked from screen and keyguard events, so the hot paths read a
+ * volatile flag instead of asking the KeyguardManager for every sample.
+ *
+ * <p>The device counts as locked from the screen turning off until the user unlocks it; a screen
+ * that turns on without a keyguard (no lock screen set up) unlocks it right away. The listeners are
+ * told about every change so processing can be suspended and resumed. Events must be reported from
+ * one thread, typically the main thread running the broadcast receiver; {@link #isLocked} may be
+ * called from any thread.
+ */
+public class LockStateMonitor {
+    /** Called on the reporting thread whenever the lock state changes. */
+    public interface Listener {
+        void onLockStateChanged(boolean locked);
+    }
+
+    private volatile boolean locked;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private long lockCount;
+
+    /** @param locked the lock state at creation, e.g. from {@code isKeyguardLocked()} */
+    public LockStateMonitor(boolean locked) {
+        this.locked = locked;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /** Number of transitions to the locked state. */
+    public long getLockCount() {
+        return lockCount;
+    }
+
+    public void onScreenOff() {
+        setLocked(true);
+    }
+
+    /** @param keyguardLocked whether the keyguard is showing now that the screen is on */
+    public void onScreenOn(boolean keyguardLocked) {
+        setLocked(keyguardLocked);
+    }
+
+    /** The user dismissed the keyguard. */
+    public void onUserPresent() {
+        setLocked(false);
+    }
+
+    private void setLocked(boolean locked) {
+        if (this.locked == locked) {
+            return;
+        }
+        this.locked = locked;
+        if (locked) {
+            ++lockCount;
+        }
+        for (Listener listener : listeners) {
+            listener.onLockStateChanged(locked);
+        }
+    }
+}
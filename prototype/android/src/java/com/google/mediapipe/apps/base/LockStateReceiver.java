@@ -0,0 +1,42 @@
+package com.google.mediapipe.apps.base;
+
+import android.app.KeyguardManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/** Reports the screen and keyguard broadcasts to a {@link LockStateMonitor}. */
+public class LockStateReceiver extends BroadcastReceiver {
+    private final LockStateMonitor monitor;
+    private final KeyguardManager keyguardManager;
+
+    public LockStateReceiver(LockStateMonitor monitor, KeyguardManager keyguardManager) {
+        this.monitor = monitor;
+        this.keyguardManager = keyguardManager;
+    }
+
+    /** Starts receiving the broadcasts on the main thread of {@code context}. */
+    public void register(Context context) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        context.registerReceiver(this, filter);
+    }
+
+    public void unregister(Context context) {
+        context.unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+            monitor.onScreenOff();
+        } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+            monitor.onScreenOn(keyguardManager.isKeyguardLocked());
+        } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+            monitor.onUserPresent();
+        }
+    }
+}
@@ -15,23 +15,27 @@
 package com.google.mediapipe.apps.base;
 
 import android.app.KeyguardManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.graphics.PixelFormat;
 import android.graphics.SurfaceTexture;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.provider.Settings;
 import android.util.Log;
 import android.util.Size;
 import android.view.Gravity;
+import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
@@ -40,21 +44,28 @@ import android.view.WindowManager;
 import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mediapipe.components.CameraHelper;
 import com.google.mediapipe.components.CameraXPreviewHelper;
 import com.google.mediapipe.components.ExternalTextureConverter;
 import com.google.mediapipe.components.FrameProcessor;
 import com.google.mediapipe.components.PermissionHelper;
-import com.google.mediapipe.framework.AndroidAssetUtil;
 import com.google.mediapipe.glutil.EglManager;
 
-import java.math.BigDecimal;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Main activity of MediaPipe basic app.
  */
-public class MainActivity extends AppCompatActivity implements SensorEventListener {
+public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
 
     // Flips the camera-preview frames vertically by default, before sending them into FrameProcessor
@@ -72,21 +83,44 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     // FlowLimiterCalculator options). That's because we need buffers for all the frames that are in
     // flight/queue plus one for the next frame from the camera.
     private static final int NUM_BUFFERS = 2;
-
-    static {
-        // Load all native libraries needed by the app.
-        System.loadLibrary("mediapipe_jni");
-        try {
-            System.loadLibrary("opencv_java3");
-        } catch (java.lang.UnsatisfiedLinkError e) {
-            // Some example apps (e.g. template matching) require OpenCV 4.
-            System.loadLibrary("opencv_java4");
-        }
-    }
+    // Bounds within which the converter's buffer count adapts to the frames the graph holds, and
+    // how many frames each sizing decision looks at.
+    // NOTE: use "converterMaxBuffers" in manifest metadata to override the upper bound.
+    private static final int MIN_BUFFERS = 2;
+    private static final int MAX_BUFFERS = 5;
+    private static final int BUFFER_SIZING_WINDOW_FRAMES = 90;
+
+    // Frame rate the graph is throttled to once depth and orientation have been stable for
+    // IDLE_AFTER_MILLIS. NOTE: use "idleFrameRate" in manifest metadata to override the rate.
+    private static final float IDLE_FRAME_RATE = 5f;
+    private static final long IDLE_AFTER_MILLIS = 3000;
+    // Changes that count as motion for the frame-rate governor.
+    private static final float MOTION_DEPTH_CM = 1.0f;
+    private static final float MOTION_ANGLE_DEGREES = 3.0f;
+
+    // Camera resolutions (in camera orientation) to choose from when "adaptiveResolution" is set in
+    // the manifest metadata, lowest first. NOTE: use "minIrisPixels" in manifest metadata to
+    // override the iris size the lowest usable resolution must still reach.
+    private static final int[][] CAMERA_RESOLUTIONS = {{640, 480}, {1280, 720}, {1920, 1080}};
+
+    static final String CALIBRATION_FILE_NAME = "calibration.bin";
+
+    // Refresh period of the latency overlay shown when "showLatency" is set in the manifest
+    // metadata.
+    private static final long LATENCY_OVERLAY_PERIOD_MILLIS = 1000;
+
+    // Number of readouts the presenter can hold (orientation plus whatever subclasses add).
+    private static final int MAX_READOUTS = 8;
 
     // Sends camera-preview frames into a MediaPipe graph for processing, and displays the processed
-    // frames onto a {@link Surface}.
+    // frames onto a {@link Surface}. Created off the main thread; null until onGraphReady.
     protected FrameProcessor processor;
+    // Loads the native libraries in parallel, then the graph, while onCreate sets up the views, EGL
+    // and the camera on the main thread.
+    private GraphLoader graphLoader;
+    // Time from activity creation to the first depth value and the steps on the way.
+    protected final StartupMetrics startupMetrics =
+            new StartupMetrics(FrameRateGovernor.SYSTEM_CLOCK);
     // Handles camera access via the {@link CameraX} Jetpack support library.
     protected CameraXPreviewHelper cameraHelper;
 
@@ -94,30 +128,97 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private SurfaceTexture previewFrameTexture;
     // {@link SurfaceView} that displays the camera-preview frames processed by a MediaPipe graph.
     private SurfaceView previewDisplayView;
+    // Surface of previewDisplayView, kept for a processor that is created after it.
+    private Surface previewDisplaySurface;
 
     // Creates and manages an {@link EGLContext}.
     private EglManager eglManager;
     // Converts the GL_TEXTURE_EXTERNAL_OES texture from Android camera into a regular texture to be
-    // consumed by {@link FrameProcessor} and the underlying MediaPipe graph.
-    private ExternalTextureConverter converter;
+    // consumed by {@link FrameProcessor} and the underlying MediaPipe graph; null in headless mode.
+    private FrameFeed frameFeed;
+    // Resizes the converter's buffer pool.
+    private BufferPoolSizer bufferPoolSizer;
+    // Size of the converted frames.
+    private int frameWidth;
+    private int frameHeight;
+    // Size of the preview display view, kept to recompute the frame size when the camera restarts.
+    private Size viewSize;
+
+    // Lowers the camera resolution while the iris is large enough, e.g. when the user is close;
+    // null unless "adaptiveResolution" is set in the manifest metadata and the app supports it.
+    protected ResolutionController resolutionController;
+    private final Runnable restartCamera = this::restartCamera;
+
+    // Depth, landmark and orientation processing, shared with the headless replay harness.
+    protected final TrackingPipeline pipeline = new TrackingPipeline();
+
+    // Runs the Java side of graph outputs off the graph threads; packet callbacks only copy into
+    // its rings. NOTE: use "handoffPolicy" in manifest metadata (DROP_OLDEST, DROP_NEWEST or
+    // BLOCK) to choose what happens when the consumer falls behind.
+    protected final HandoffDispatcher dispatcher = new HandoffDispatcher("handoff");
+    protected HandoffRing.OverflowPolicy handoffPolicy = HandoffRing.OverflowPolicy.DROP_OLDEST;
+
+    // Binary trace of recent events, dumped with `adb shell dumpsys activity <package> --trace`
+    // and written to files/trace-<millis>.txt when the app crashes.
+    protected final FlightRecorder flightRecorder = new FlightRecorder();
+    private final int traceOrientation =
+            flightRecorder.registerEvent("orientation", "ts", "pitch", "roll", "heading");
+
+    // Per-stage latency from camera frame to readout; dumped with
+    // `adb shell dumpsys activity <package>` and optionally shown on screen.
+    protected final LatencyTracker latencyTracker = new LatencyTracker();
+    private TextView latencyView;
+    private final StringBuilder latencyText = new StringBuilder();
+    private final Runnable updateLatencyOverlay = this::updateLatencyOverlay;
+
+    // Throttles the frames handed from the converter to the processor while nothing moves.
+    protected FrameRateGovernor governor;
+
+    // Records depth, landmark and orientation samples when "recordSession" is set in the manifest
+    // metadata; null otherwise.
+    protected SessionRecorder recorder;
+
+    // Streams fused samples to other processes on the device when "telemetryPort" is set in the
+    // manifest metadata; null otherwise, and in headless mode, where the service's session does it.
+    protected TelemetryExporter telemetryExporter;
+
+    // Per-camera calibration that outlives the process, e.g. the focal length.
+    protected CalibrationCache calibrationCache;
 
     // ApplicationInfo for retrieving metadata defined in the manifest.
-    private ApplicationInfo applicationInfo;
-
-    private TextView textViewX;
-    private TextView textViewY;
-    private TextView textViewZ;
-
-    private SensorManager sensorManager;
-
-    private LowPassFilter filterYaw = new LowPassFilter(0.8f);
-    private LowPassFilter filterPitch = new LowPassFilter(0.8f);
-    private LowPassFilter filterRoll = new LowPassFilter(0.8f);
-
-    private float[] m_lastMagFields = new float[3];
-    private float[] m_lastAccels = new float[3];
-    private float[] m_rotationMatrix = new float[16];
-    private float[] m_orientation = new float[4];
+    protected ApplicationInfo applicationInfo;
+
+    // Coalesces readout updates from the sensor and graph threads to one per display frame.
+    protected ReadoutPresenter presenter;
+    private int readoutX;
+    private int readoutY;
+    private int readoutZ;
+
+    // Feeds the orientation sensors to the pipeline off the main thread while the activity is
+    // resumed and the device unlocked.
+    private SensorFeed sensorFeed;
+
+    // Suspends the camera feed and the sensors while the device is locked.
+    private LockStateMonitor lockStateMonitor;
+    private LockStateReceiver lockStateReceiver;
+    private final int traceLockState = flightRecorder.registerEvent("lockState", "locked");
+    private final int traceConverterBuffers = flightRecorder.registerEvent("converterBuffers", "count");
+    private final FrameFeed.Listener frameFeedListener =
+            new FrameFeed.Listener() {
+                @Override
+                public void onFrameSubmitted(long timestampUs) {
+                    markStartup(StartupMetrics.FIRST_FRAME);
+                    latencyTracker.onFrameSubmitted(timestampUs);
+                }
+
+                @Override
+                public void onConverterResized(int numBuffers) {
+                    flightRecorder.record(traceConverterBuffers, numBuffers);
+                }
+            };
+    private final int traceCameraResolution =
+            flightRecorder.registerEvent("cameraResolution", "ts", "width", "height");
+    private final int traceStartup = flightRecorder.registerEvent("startup", "milestone", "millis");
 
     private float Pitch = 0.2f;
     private float Heading = 0.2f;
@@ -125,22 +226,51 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
     private Intent intent;
 
+    // Set when "headlessTracking" is in the manifest metadata: YourService runs the camera and a
+    // render-free graph, and this activity only shows what it measures.
+    private boolean headlessTracking;
+    private YourService.LocalBinder trackingService;
+    private final ServiceConnection trackingConnection =
+            new ServiceConnection() {
+                @Override
+                public void onServiceConnected(ComponentName name, IBinder binder) {
+                    trackingService = (YourService.LocalBinder) binder;
+                    trackingService.setViewer(pipeline.getDepthListener());
+                }
+
+                @Override
+                public void onServiceDisconnected(ComponentName name) {
+                    trackingService = null;
+                }
+            };
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     private boolean appRunning = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         if (!appRunning) {
+            graphLoader = new GraphLoader();
 
             setContentView(getContentViewLayoutResId());
+            installCrashTraceDump();
 
-            textViewX = findViewById(R.id.rotationX);
-            textViewY = findViewById(R.id.rotationY);
-            textViewZ = findViewById(R.id.rotationZ);
+            presenter = new ReadoutPresenter(MAX_READOUTS);
+            readoutX = presenter.addReadout(findViewById(R.id.rotationX));
+            readoutY = presenter.addReadout(findViewById(R.id.rotationY));
+            readoutZ = presenter.addReadout(findViewById(R.id.rotationZ));
+            presenter.setDisplayListener(
+                    (readout, originNs, publishNs, displayNs) ->
+                            latencyTracker.onDisplayed(originNs, publishNs, displayNs));
 
-            sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-            sensorManager.registerListener(this, sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), SensorManager.SENSOR_DELAY_NORMAL);
-            sensorManager.registerListener(this, sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD), SensorManager.SENSOR_DELAY_NORMAL);
+            pipeline.setOrientationListener(this::onOrientation);
+
+            KeyguardManager keyguardManager =
+                    (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
+            lockStateMonitor = new LockStateMonitor(keyguardManager.isKeyguardLocked());
+            lockStateReceiver = new LockStateReceiver(lockStateMonitor, keyguardManager);
 
             try {
                 applicationInfo =
@@ -149,24 +279,62 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 Log.e(TAG, "Cannot find application info: " + e);
             }
 
+            calibrationCache = new CalibrationCache(new File(getFilesDir(), CALIBRATION_FILE_NAME));
+            sensorFeed =
+                    new SensorFeed(
+                            (SensorManager) getSystemService(Context.SENSOR_SERVICE),
+                            pipeline,
+                            lockStateMonitor,
+                            applicationInfo.metaData.getInt(
+                                    "sensorReportLatencyMs", SensorFeed.DEFAULT_REPORT_LATENCY_MS));
+            headlessTracking = applicationInfo.metaData.getBoolean("headlessTracking", false);
+
+            String policy = applicationInfo.metaData.getString("handoffPolicy");
+            if (policy != null) {
+                try {
+                    handoffPolicy = HandoffRing.OverflowPolicy.valueOf(policy);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Unknown handoff policy " + policy);
+                }
+            }
+            dispatcher.start();
+
+            int telemetryPort = applicationInfo.metaData.getInt("telemetryPort", 0);
+            if (telemetryPort > 0 && !headlessTracking) {
+                telemetryExporter = startTelemetry(telemetryPort);
+                pipeline.setTelemetryExporter(telemetryExporter);
+            }
+
+            if (applicationInfo.metaData.getBoolean("recordSession", false)) {
+                startRecording();
+                pipeline.setRecorder(recorder);
+            }
+
             previewDisplayView = new SurfaceView(this);
             setupPreviewDisplayView();
 
-            // Initialize asset manager so that MediaPipe native libraries can access the app assets, e.g.,
-            // binary graphs.
-            AndroidAssetUtil.initializeNativeAssetManager(this);
-            eglManager = new EglManager(null);
-            processor =
-                    new FrameProcessor(
-                            this,
-                            eglManager.getNativeContext(),
-                            applicationInfo.metaData.getString("binaryGraphName"),
-                            applicationInfo.metaData.getString("inputVideoStreamName"),
-                            applicationInfo.metaData.getString("outputVideoStreamName"));
-            processor
-                    .getVideoSurfaceOutput()
-                    .setFlipY(
-                            applicationInfo.metaData.getBoolean("flipFramesVertically", FLIP_FRAMES_VERTICALLY));
+            if (!headlessTracking) {
+                eglManager = new EglManager(null);
+                graphLoader.load(
+                        this,
+                        eglManager,
+                        applicationInfo.metaData.getString("binaryGraphName"),
+                        applicationInfo.metaData.getString("inputVideoStreamName"),
+                        applicationInfo.metaData.getString("outputVideoStreamName"),
+                        new GraphLoader.Callback() {
+                            @Override
+                            public void onNativeLoaded() {
+                                markStartup(StartupMetrics.NATIVE_LOADED);
+                            }
+
+                            @Override
+                            public void onGraphLoaded(
+                                    EglManager unusedEglManager, FrameProcessor loaded) {
+                                // The graph runs on the activity's own EGL context.
+                                onProcessorLoaded(loaded);
+                            }
+                        });
+            }
 
             PermissionHelper.checkAndRequestCameraPermissions(this);
 
@@ -177,21 +345,61 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 startActivityForResult(myIntent, REQUEST_CODE);
             }
 
-            converter =
-                    new ExternalTextureConverter(
-                            eglManager.getContext(),
-                            applicationInfo.metaData.getInt("converterNumBuffers", NUM_BUFFERS));
-            converter.setFlipY(
-                    applicationInfo.metaData.getBoolean("flipFramesVertically", FLIP_FRAMES_VERTICALLY));
-            converter.setConsumer(processor);
+            governor = createGovernor(applicationInfo.metaData);
+            pipeline.setGovernor(governor);
+            bufferPoolSizer = createBufferPoolSizer(applicationInfo.metaData);
+            if (!headlessTracking) {
+                frameFeed =
+                        new FrameFeed(
+                                this::createConverter,
+                                pipeline,
+                                governor,
+                                bufferPoolSizer,
+                                lockStateMonitor,
+                                frameFeedListener);
+                frameFeed.start();
+            }
+
+            lockStateMonitor.addListener(this::onLockStateChanged);
+            lockStateReceiver.register(this);
 
-            if (PermissionHelper.cameraPermissionsGranted(this)) {
+            if (applicationInfo.metaData.getBoolean("showLatency", false)) {
+                latencyView = findViewById(R.id.latency);
+                latencyView.setVisibility(View.VISIBLE);
+                mainHandler.postDelayed(updateLatencyOverlay, LATENCY_OVERLAY_PERIOD_MILLIS);
+            }
+
+            if (applicationInfo.metaData.getBoolean("adaptiveResolution", false)
+                    && !headlessTracking) {
+                if (supportsAdaptiveResolution()) {
+                    resolutionController =
+                            new ResolutionController(
+                                    CAMERA_RESOLUTIONS,
+                                    applicationInfo.metaData.getFloat(
+                                            "minIrisPixels", ResolutionController.DEFAULT_MIN_IRIS_PIXELS));
+                    int[] preferred = calibrationCache.getPreferredResolution(cameraKey());
+                    if (preferred != null) {
+                        resolutionController.select(preferred[0], preferred[1]);
+                    }
+                    resolutionController.setListener(this::onResolutionChanged);
+                    pipeline.setResolutionController(resolutionController);
+                } else {
+                    Log.w(TAG, "Adaptive resolution is not supported by this configuration.");
+                }
+            }
+
+            if (PermissionHelper.cameraPermissionsGranted(this)
+                    && !headlessTracking
+                    && !lockStateMonitor.isLocked()) {
                 startCamera();
             }
 
             if (intent == null) {
                 intent = new Intent(this, YourService.class);
                 startService(intent);
+                if (headlessTracking) {
+                    bindService(intent, trackingConnection, Context.BIND_AUTO_CREATE);
+                }
             }
 
             appRunning = true;
@@ -199,11 +407,42 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     @Override
-    protected void onResume() { super.onResume(); }
+    protected void onResume() {
+        super.onResume();
+        // The orientation only matters while it is shown; the sensor hub stays asleep otherwise.
+        sensorFeed.setActive(true);
+    }
 
     @Override
     protected void onPause() {
         super.onPause();
+        sensorFeed.setActive(false);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mainHandler.removeCallbacks(updateLatencyOverlay);
+        lockStateReceiver.unregister(this);
+        if (frameFeed != null) {
+            frameFeed.close();
+        }
+        sensorFeed.close();
+        dispatcher.stop();
+        graphLoader.close();
+        if (headlessTracking) {
+            // The service keeps tracking without a viewer.
+            if (trackingService != null) {
+                trackingService.setViewer(null);
+            }
+            unbindService(trackingConnection);
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+        if (telemetryExporter != null) {
+            telemetryExporter.close();
+        }
     }
 
     @Override
@@ -211,50 +450,248 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             int requestCode, String[] permissions, int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         PermissionHelper.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (headlessTracking && PermissionHelper.cameraPermissionsGranted(this)) {
+            // The service could not open the camera when it was first started.
+            startService(intent);
+        }
     }
 
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (checkPhoneScreenLocked()) {
-            switch (event.sensor.getType()) {
-                case Sensor.TYPE_ACCELEROMETER:
-                    System.arraycopy(event.values, 0, m_lastAccels, 0, 3);
-                    break;
-                case Sensor.TYPE_MAGNETIC_FIELD:
-                    System.arraycopy(event.values, 0, m_lastMagFields, 0, 3);
-                    break;
-                default:
-                    return;
-            }
-            computeOrientation();
+    private ExternalTextureConverter createConverter(int numBuffers) {
+        ExternalTextureConverter converter =
+                new ExternalTextureConverter(eglManager.getContext(), numBuffers);
+        converter.setFlipY(
+                applicationInfo.metaData.getBoolean("flipFramesVertically", FLIP_FRAMES_VERTICALLY));
+        return converter;
+    }
+
+    /** The frame-rate governor configured by the manifest metadata, as the session uses too. */
+    static FrameRateGovernor createGovernor(Bundle metaData) {
+        return new FrameRateGovernor(
+                FrameRateGovernor.SYSTEM_CLOCK,
+                /*activeFrameRate=*/ 0,
+                metaData.getFloat("idleFrameRate", IDLE_FRAME_RATE),
+                IDLE_AFTER_MILLIS * 1_000_000L,
+                MOTION_DEPTH_CM,
+                MOTION_ANGLE_DEGREES);
+    }
+
+    /** The converter's buffer pool sizer configured by the manifest metadata. */
+    static BufferPoolSizer createBufferPoolSizer(Bundle metaData) {
+        return new BufferPoolSizer(
+                MIN_BUFFERS,
+                metaData.getInt("converterMaxBuffers", MAX_BUFFERS),
+                metaData.getInt("converterNumBuffers", NUM_BUFFERS),
+                BUFFER_SIZING_WINDOW_FRAMES);
+    }
+
+    // Called on the main thread; the loader drops the graph if the activity was destroyed first.
+    private void onProcessorLoaded(FrameProcessor loaded) {
+        processor = loaded;
+        processor
+                .getVideoSurfaceOutput()
+                .setFlipY(
+                        applicationInfo.metaData.getBoolean("flipFramesVertically", FLIP_FRAMES_VERTICALLY));
+        if (previewDisplaySurface != null) {
+            processor.getVideoSurfaceOutput().setSurface(previewDisplaySurface);
+        }
+        onGraphReady();
+        markStartup(StartupMetrics.GRAPH_READY);
+        frameFeed.setProcessor(processor);
+    }
+
+    /**
+     * Called on the main thread once {@link #processor} exists, before it is sent any frame. Packet
+     * callbacks and input side packets must be added here or later, but before the first frame.
+     */
+    protected void onGraphReady() {}
+
+    /** Records a startup milestone; the first time, it is also logged and traced. */
+    protected void markStartup(int milestone) {
+        if (startupMetrics.mark(milestone)) {
+            float millis = startupMetrics.getMillis(milestone);
+            Log.i(TAG, "Startup " + StartupMetrics.getName(milestone) + " after " + millis + " ms");
+            flightRecorder.record(traceStartup, milestone, millis);
+        }
+    }
+
+    // The frame feed and the sensor feed suspend themselves while locked; the camera stops
+    // streaming until the device is unlocked, and onCameraStarted then feeds the new texture to
+    // the frame feed.
+    private void onLockStateChanged(boolean locked) {
+        flightRecorder.record(traceLockState, locked ? 1 : 0);
+        if (headlessTracking || !PermissionHelper.cameraPermissionsGranted(this)) {
+            return;
+        }
+        if (locked) {
+            unbindCamera(this);
+        } else {
+            startCamera();
+        }
+    }
+
+    // Called on the handoff thread.
+    private void onResolutionChanged(long timestampUs, int width, int height) {
+        flightRecorder.record(traceCameraResolution, timestampUs, width, height);
+        mainHandler.post(restartCamera);
+    }
+
+    // Rebinds the camera at the controller's resolution; onCameraStarted then reattaches the
+    // converter to the new preview texture.
+    private void restartCamera() {
+        Log.i(TAG, "Restarting camera at " + cameraTargetResolution());
+        unbindCamera(this);
+        startCamera();
+    }
+
+    // Called on the sensors thread.
+    private void onOrientation(long timestampNs, float pitch, float roll, float heading) {
+        Pitch = pitch;
+        presenter.publish(readoutX, Pitch);
+
+        Roll = roll;
+        presenter.publish(readoutY, Roll);
+
+        Heading = heading;
+        presenter.publish(readoutZ, Heading);
+
+        flightRecorder.record(traceOrientation, timestampNs, Pitch, Roll, Heading);
+    }
+
+    private void updateLatencyOverlay() {
+        latencyText.setLength(0);
+        appendLatencySummary(latencyText);
+        latencyView.setText(latencyText);
+        mainHandler.postDelayed(updateLatencyOverlay, LATENCY_OVERLAY_PERIOD_MILLIS);
+    }
+
+    private void appendLatencySummary(StringBuilder out) {
+        HampelFilter outliers = pipeline.getDepthOutlierFilter();
+        DepthFusion fusion = pipeline.getDepthFusion();
+        latencyTracker.appendSummary(out)
+                .append("\nframes skipped while idle=")
+                .append(governor.getSkippedFrameCount())
+                .append(" readouts coalesced=")
+                .append(presenter.getCoalescedUpdateCount())
+                .append("\nconverter buffers=")
+                .append(bufferPoolSizer.getBufferCount())
+                .append(" held=")
+                .append(bufferPoolSizer.getHeldBufferCount())
+                .append(" peak held=")
+                .append(bufferPoolSizer.getPeakHeldBufferCount())
+                .append(" camera frames lost=")
+                .append(bufferPoolSizer.getLostFrameCount())
+                .append("\ndepth outliers left=")
+                .append(outliers.getRejectedCount(0))
+                .append('/')
+                .append(outliers.getFilteredCount(0))
+                .append(" right=")
+                .append(outliers.getRejectedCount(1))
+                .append('/')
+                .append(outliers.getFilteredCount(1))
+                .append("\ndepth frames missing left=")
+                .append(fusion.getLeftMissingFrameCount())
+                .append(" right=")
+                .append(fusion.getRightMissingFrameCount())
+                .append('\n');
+        dispatcher.appendSummary(out);
+        if (telemetryExporter != null) {
+            telemetryExporter.appendSummary(out.append('\n'));
+        }
+        startupMetrics.appendSummary(out.append('\n'));
+        if (resolutionController != null) {
+            out.append("\ncamera resolution=")
+                    .append(resolutionController.getWidth())
+                    .append('x')
+                    .append(resolutionController.getHeight());
         }
     }
 
     @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (governor != null) {
+            StringBuilder summary = new StringBuilder();
+            appendLatencySummary(summary);
+            writer.print(prefix);
+            writer.println(summary.toString().replace("\n", "\n" + prefix));
+        }
+        if (args != null && Arrays.asList(args).contains("--trace")) {
+            flightRecorder.dump(writer);
+        }
+    }
 
+    // Writes the trace before the default handler kills the process.
+    private void installCrashTraceDump() {
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(
+                (thread, throwable) -> {
+                    File file = new File(getFilesDir(), "trace-" + System.currentTimeMillis() + ".txt");
+                    try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+                        flightRecorder.dump(writer);
+                    } catch (IOException | RuntimeException e) {
+                        Log.e(TAG, "Cannot write trace: " + e);
+                    }
+                    if (defaultHandler != null) {
+                        defaultHandler.uncaughtException(thread, throwable);
+                    }
+                });
     }
 
-    private void computeOrientation() {
-        if (SensorManager.getRotationMatrix(m_rotationMatrix, null, m_lastAccels, m_lastMagFields)) {
-            SensorManager.getOrientation(m_rotationMatrix, m_orientation);
+    // Returns null if the port cannot be opened; shared with TrackingSession.
+    static TelemetryExporter startTelemetry(int port) {
+        TelemetryExporter exporter = new TelemetryExporter(port);
+        try {
+            exporter.start();
+            Log.i(TAG, "Exporting telemetry on port " + exporter.getPort());
+            return exporter;
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot export telemetry: " + e);
+            return null;
+        }
+    }
 
-            float yaw = (float) (Math.toDegrees(m_orientation[0]));
-            float pitch = (float) Math.toDegrees(m_orientation[1]);
-            float roll = (float) Math.toDegrees(m_orientation[2]);
+    private void startRecording() {
+        File root = getExternalFilesDir(null);
+        if (root == null) {
+            root = getFilesDir();
+        }
+        File directory = new File(new File(root, "sessions"), String.valueOf(System.currentTimeMillis()));
+        try {
+            recorder = new SessionRecorder(directory);
+            Log.i(TAG, "Recording session to " + directory);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot record session: " + e);
+        }
+    }
 
-            Pitch = filterPitch.lowPass(pitch);
-            textViewX.setText(String.valueOf(Pitch));
-            Log.v("BACKGROUND X", String.valueOf(Pitch));
+    // Key of the active camera in the calibration cache; calibration differs per model and facing.
+    protected String cameraKey() {
+        return cameraKey(applicationInfo.metaData);
+    }
 
-            Roll = filterRoll.lowPass(roll);
-            textViewY.setText(String.valueOf(Roll));
-            Log.v("BACKGROUND Y", String.valueOf(Roll));
+    // Key of the active camera at a frame size; focal lengths are in pixels, so differ per size.
+    protected String cameraCalibrationKey(Size frameSize) {
+        return cameraCalibrationKey(applicationInfo.metaData, frameSize);
+    }
 
-            Heading = filterYaw.lowPass(yaw);
-            textViewZ.setText(String.valueOf(Heading));
-            Log.v("BACKGROUND Z", String.valueOf(Heading));
+    // Shared with TrackingSession, which has the metadata but no activity.
+    static String cameraKey(Bundle metaData) {
+        boolean front = metaData.getBoolean("cameraFacingFront", false);
+        return Build.MANUFACTURER + "/" + Build.MODEL + (front ? "/front" : "/back");
+    }
+
+    static String cameraCalibrationKey(Bundle metaData, Size frameSize) {
+        return cameraKey(metaData) + "/" + frameSize.getWidth() + "x" + frameSize.getHeight();
+    }
+
+    // Frame size the camera is expected to run at: the one it ran at last time, unless adaptive
+    // resolution picks another. Null if unknown.
+    protected Size expectedFrameSize() {
+        if (resolutionController != null) {
+            return cameraTargetResolution();
         }
+        int[] preferred = calibrationCache.getPreferredResolution(cameraKey());
+        return preferred != null ? new Size(preferred[0], preferred[1]) : null;
     }
 
     protected int getContentViewLayoutResId() {
@@ -262,7 +699,17 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     protected Size cameraTargetResolution() {
-        return null;
+        if (resolutionController != null) {
+            return new Size(resolutionController.getWidth(), resolutionController.getHeight());
+        }
+        // Asking for last time's size makes its cached focal length valid right away.
+        return expectedFrameSize();
+    }
+
+    // Whether a subclass measures the iris in landmarks fed to the pipeline and copes with the
+    // camera resolution changing while the graph runs.
+    protected boolean supportsAdaptiveResolution() {
+        return false;
     }
 
     protected Size computeViewSize(int width, int height) {
@@ -270,10 +717,44 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     protected void onCameraStarted(SurfaceTexture surfaceTexture) {
+        markStartup(StartupMetrics.CAMERA_STARTED);
+        Size frameSize = cameraHelper.getFrameSize();
+        if (frameSize != null) {
+            try {
+                calibrationCache.putPreferredResolution(
+                        cameraKey(), frameSize.getWidth(), frameSize.getHeight());
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot cache camera resolution: " + e);
+            }
+        }
         previewFrameTexture = surfaceTexture;
         // Make the display view visible to start showing the preview. This triggers the
         // SurfaceHolder.Callback added to (the holder of) previewDisplayView.
         previewDisplayView.setVisibility(View.VISIBLE);
+        // A restarted camera comes with a new texture and possibly a new frame size, but the
+        // display surface does not change, so nothing else would reattach the converter.
+        if (viewSize != null) {
+            updateFrameSize();
+        }
+    }
+
+    /**
+     * Unbinds the camera use cases bound by a {@link CameraXPreviewHelper}, which has no stop call
+     * of its own, so the preview stops streaming. The camera provider is told on the main thread,
+     * ahead of a helper started right after this.
+     */
+    static void unbindCamera(Context context) {
+        ListenableFuture<ProcessCameraProvider> cameraProvider =
+                ProcessCameraProvider.getInstance(context);
+        cameraProvider.addListener(
+                () -> {
+                    try {
+                        cameraProvider.get().unbindAll();
+                    } catch (InterruptedException | ExecutionException e) {
+                        Log.e(TAG, "Cannot unbind camera: " + e);
+                    }
+                },
+                ContextCompat.getMainExecutor(context));
     }
 
     public void startCamera() {
@@ -292,20 +773,39 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
     protected void onPreviewDisplaySurfaceChanged(
             SurfaceHolder holder, int format, int width, int height) {
+        viewSize = computeViewSize(width, height);
+        updateFrameSize();
+    }
+
+    private void updateFrameSize() {
         // (Re-)Compute the ideal size of the camera-preview display (the area that the
         // camera-preview frames get rendered onto, potentially with scaling and rotation)
         // based on the size of the SurfaceView that contains the display.
-        Size viewSize = computeViewSize(width, height);
         Size displaySize = cameraHelper.computeDisplaySizeFromViewSize(viewSize);
         boolean isCameraRotated = cameraHelper.isCameraRotated();
 
         // Connect the converter to the camera-preview frames as its input (via
         // previewFrameTexture), and configure the output width and height as the computed
         // display size.
-        converter.setSurfaceTextureAndAttachToGLContext(
-                previewFrameTexture,
-                isCameraRotated ? displaySize.getHeight() : displaySize.getWidth(),
-                isCameraRotated ? displaySize.getWidth() : displaySize.getHeight());
+        frameWidth = isCameraRotated ? displaySize.getHeight() : displaySize.getWidth();
+        frameHeight = isCameraRotated ? displaySize.getWidth() : displaySize.getHeight();
+        // Upscaling the camera frames only adds pixels for the graph to process, so the converted
+        // frames are never larger than what the camera delivers.
+        Size cameraFrameSize = cameraHelper.getFrameSize();
+        if (cameraFrameSize != null) {
+            float scale =
+                    Math.min(
+                            1f,
+                            (float) Math.max(cameraFrameSize.getWidth(), cameraFrameSize.getHeight())
+                                    / Math.max(frameWidth, frameHeight));
+            frameWidth = Math.round(frameWidth * scale);
+            frameHeight = Math.round(frameHeight * scale);
+        }
+        if (frameFeed != null) {
+            frameFeed.attach(previewFrameTexture, frameWidth, frameHeight);
+        }
+        // Normalized landmarks refer to the converted frames the graph sees.
+        pipeline.getIrisDepthEstimator().setImageSize(frameWidth, frameHeight);
     }
 
     private void setupPreviewDisplayView() {
@@ -319,7 +819,10 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                         new SurfaceHolder.Callback() {
                             @Override
                             public void surfaceCreated(SurfaceHolder holder) {
-                                processor.getVideoSurfaceOutput().setSurface(holder.getSurface());
+                                previewDisplaySurface = holder.getSurface();
+                                if (processor != null) {
+                                    processor.getVideoSurfaceOutput().setSurface(previewDisplaySurface);
+                                }
                             }
 
                             @Override
@@ -334,19 +837,9 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                         });
     }
 
-    public static BigDecimal round(float d, int decimalPlace) {
-        BigDecimal bd = new BigDecimal(Float.toString(d));
-        bd = bd.setScale(decimalPlace, BigDecimal.ROUND_HALF_UP);
-        return bd;
-    }
-
+    // Returns true while the device is unlocked; reads the state cached from lock broadcasts.
     public boolean checkPhoneScreenLocked() {
-        KeyguardManager myKM = (KeyguardManager) getApplicationContext().getSystemService(Context.KEYGUARD_SERVICE);
-        if (myKM.isKeyguardLocked()) {
-            return false; // locked
-        } else {
-            return true; // not locked
-        }
+        return !lockStateMonitor.isLocked();
     }
 
     /*private void createOverly(Context context) {
@@ -362,27 +855,4 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         mWindowManager.addView(window, mLayoutParams);
     }*/
-
-    public class LowPassFilter {
-        /*
-         * time smoothing constant for low-pass filter 0 ≤ alpha ≤ 1 ; a smaller
-         * value basically means more smoothing See: http://en.wikipedia.org/wiki
-         * /Low-pass_filter#Discrete-time_realization
-         */
-        float ALPHA;
-        float lastOutput = 0;
-
-        public LowPassFilter(float ALPHA) {
-            this.ALPHA = ALPHA;
-        }
-
-        public float lowPass(float input) {
-            if (Math.abs(input - lastOutput) > 170) {
-                lastOutput = input;
-                return lastOutput;
-            }
-            lastOutput = lastOutput + ALPHA * (input - lastOutput);
-            return lastOutput;
-        }
-    }
 }
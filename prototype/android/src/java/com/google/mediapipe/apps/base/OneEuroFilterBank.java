@@ -0,0 +1,117 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.Arrays;
+
+/**
+ * One-Euro filter over a fixed number of channels that are sampled together.
+ *
+ * <p>Each channel is low-pass filtered with a cutoff that rises with the channel's smoothed speed:
+ * {@code minCutoff + beta * |dx/dt|}. Slow signals are smoothed strongly, fast motion passes with
+ * little lag. See Casiez et al., "1 Euro Filter: A Simple Speed-based Low-pass Filter for Noisy
+ * Input in Interactive Systems", CHI 2012.
+ *
+ * <p>A NaN or infinite sample holds its channel at the previous output and leaves its state
+ * untouched; a channel outputs NaN until its first finite sample, which it passes through.
+ *
+ * <p>State lives in flat {@code float[]} arrays and every frame is one pass over them. Not
+ * thread-safe; filtering does not allocate.
+ */
+public class OneEuroFilterBank {
+    private static final float TWO_PI = (float) (2 * Math.PI);
+    private static final float NANOS_TO_SECONDS = 1e-9f;
+
+    private final int channels;
+    // Cutoff in Hz at zero speed.
+    private final float minCutoff;
+    // Cutoff increase in Hz per unit/s of speed.
+    private final float beta;
+    // Cutoff in Hz used to smooth the speed estimate itself.
+    private final float derivativeCutoff;
+
+    // Previous output per channel, NaN until the channel's first finite sample.
+    private final float[] previous;
+    private final float[] previousDerivative;
+    private long lastTimestampNs;
+    private boolean initialized;
+
+    public OneEuroFilterBank(int channels, float minCutoff, float beta, float derivativeCutoff) {
+        this.channels = channels;
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+        previous = new float[channels];
+        previousDerivative = new float[channels];
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /** Forgets all state; the next frame passes through unfiltered. */
+    public void reset() {
+        initialized = false;
+    }
+
+    /** Filters {@code values[0..channels)} in place. */
+    public void filter(long timestampNs, float[] values) {
+        filter(timestampNs, values, values);
+    }
+
+    /**
+     * Filters one frame of {@code input[0..channels)} into {@code output}, which may be the same
+     * array. A frame whose timestamp does not advance repeats the previous output and leaves the
+     * state untouched.
+     */
+    public void filter(long timestampNs, float[] input, float[] output) {
+        if (!initialized) {
+            for (int i = 0; i < channels; ++i) {
+                float x = input[i];
+                previous[i] = Float.isFinite(x) ? x : Float.NaN;
+                output[i] = previous[i];
+            }
+            Arrays.fill(previousDerivative, 0f);
+            lastTimestampNs = timestampNs;
+            initialized = true;
+            return;
+        }
+        float dt = (timestampNs - lastTimestampNs) * NANOS_TO_SECONDS;
+        if (dt <= 0) {
+            System.arraycopy(previous, 0, output, 0, channels);
+            return;
+        }
+        lastTimestampNs = timestampNs;
+
+        float rate = 1f / dt;
+        float derivativeAlpha = smoothingFactor(dt, derivativeCutoff);
+        float twoPiDt = TWO_PI * dt;
+        float[] prev = previous;
+        float[] prevDerivative = previousDerivative;
+        for (int i = 0; i < channels; ++i) {
+            float x = input[i];
+            if (!Float.isFinite(x)) {
+                output[i] = prev[i];
+                continue;
+            }
+            if (Float.isNaN(prev[i])) {
+                prevDerivative[i] = 0f;
+                prev[i] = x;
+                output[i] = x;
+                continue;
+            }
+            float derivative =
+                    prevDerivative[i]
+                            + derivativeAlpha * ((x - prev[i]) * rate - prevDerivative[i]);
+            // alpha = r / (r + 1) with r = 2 * pi * cutoff * dt.
+            float r = twoPiDt * (minCutoff + beta * Math.abs(derivative));
+            float filtered = prev[i] + r / (r + 1f) * (x - prev[i]);
+            prevDerivative[i] = derivative;
+            prev[i] = filtered;
+            output[i] = filtered;
+        }
+    }
+
+    private static float smoothingFactor(float dt, float cutoff) {
+        float r = TWO_PI * cutoff * dt;
+        return r / (r + 1f);
+    }
+}
@@ -0,0 +1,407 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Incremental device-orientation estimator that keeps its state as a unit quaternion.
+ *
+ * <p>Three inputs are supported, in order of preference:
+ *
+ * <ul>
+ *   <li>rotation-vector samples, which already are fused on the sensor hub and replace the state;
+ *   <li>gyroscope samples, integrated with Madgwick's gradient-descent correction towards the
+ *       latest accelerometer and magnetometer readings;
+ *   <li>accelerometer and magnetometer samples alone, blended into the state with a fixed gain.
+ * </ul>
+ *
+ * <p>Internally the quaternion rotates device coordinates into a north-west-up frame, which is the
+ * frame Madgwick's filter is formulated in. {@link #getQuaternion} reports it in Android's
+ * east-north-up world frame and {@link #getOrientationDegrees} matches the angle conventions of
+ * {@code SensorManager.getOrientation}; both are computed only when called. The class has no
+ * Android dependencies and does not allocate; it is not thread-safe.
+ */
+public class OrientationEngine {
+    private static final float NANOS_TO_SECONDS = 1e-9f;
+    // Gyroscope gaps longer than this (e.g. after the listener was paused) are not integrated.
+    private static final float MAX_STEP_SECONDS = 0.1f;
+    private static final float HALF_SQRT2 = (float) Math.sqrt(0.5);
+
+    private static final float DEFAULT_BETA = 0.1f;
+    private static final float DEFAULT_ACCEL_MAG_GAIN = 0.8f;
+
+    // Madgwick filter gain, in rad/s of correction per unit of gradient.
+    private final float beta;
+    // Weight of a new accelerometer/magnetometer orientation when no gyroscope is available.
+    private final float accelMagGain;
+
+    // Device-to-north-west-up rotation.
+    private float q0 = 1f;
+    private float q1;
+    private float q2;
+    private float q3;
+    private boolean initialized;
+
+    private float ax;
+    private float ay;
+    private float az;
+    private float mx;
+    private float my;
+    private float mz;
+    private boolean haveAccel;
+    private boolean haveMag;
+
+    private long lastGyroTimestampNs;
+    private boolean gyroActive;
+    private boolean rotationVectorActive;
+
+    public OrientationEngine() {
+        this(DEFAULT_BETA, DEFAULT_ACCEL_MAG_GAIN);
+    }
+
+    public OrientationEngine(float beta, float accelMagGain) {
+        this.beta = beta;
+        this.accelMagGain = accelMagGain;
+    }
+
+    /**
+     * Feeds a rotation-vector sample given as the unit quaternion (x, y, z, w) of Android's
+     * {@code TYPE_ROTATION_VECTOR}. Returns {@code true} since the state always changes.
+     */
+    public boolean onRotationVector(long timestampNs, float x, float y, float z, float w) {
+        rotationVectorActive = true;
+        // Rotate the east-north-up result by -90 degrees about up into north-west-up.
+        q0 = HALF_SQRT2 * (w + z);
+        q1 = HALF_SQRT2 * (x + y);
+        q2 = HALF_SQRT2 * (y - x);
+        q3 = HALF_SQRT2 * (z - w);
+        initialized = true;
+        return true;
+    }
+
+    /** Feeds an accelerometer sample in m/s^2. Returns whether the orientation changed. */
+    public boolean onAccelerometer(long timestampNs, float x, float y, float z) {
+        ax = x;
+        ay = y;
+        az = z;
+        haveAccel = true;
+        if (rotationVectorActive || gyroActive) {
+            return false;
+        }
+        return blendAccelMag(initialized ? accelMagGain : 1f);
+    }
+
+    /** Feeds a magnetometer sample in uT. Never changes the orientation by itself. */
+    public boolean onMagneticField(long timestampNs, float x, float y, float z) {
+        mx = x;
+        my = y;
+        mz = z;
+        haveMag = true;
+        return false;
+    }
+
+    /** Feeds a gyroscope sample in rad/s. Returns whether the orientation changed. */
+    public boolean onGyroscope(long timestampNs, float x, float y, float z) {
+        if (rotationVectorActive) {
+            return false;
+        }
+        gyroActive = true;
+        long previousNs = lastGyroTimestampNs;
+        lastGyroTimestampNs = timestampNs;
+        if (!initialized) {
+            // Start from the absolute accelerometer/magnetometer orientation instead of identity.
+            return blendAccelMag(1f);
+        }
+        float dt = (timestampNs - previousNs) * NANOS_TO_SECONDS;
+        if (previousNs == 0 || dt <= 0 || dt > MAX_STEP_SECONDS) {
+            return false;
+        }
+        if (haveAccel && haveMag) {
+            madgwickUpdate(x, y, z, dt);
+        } else if (haveAccel) {
+            madgwickImuUpdate(x, y, z, dt);
+        } else {
+            integrateGyro(x, y, z, dt);
+        }
+        return true;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Writes azimuth, pitch and roll in degrees to {@code out[0..2]}, using the same conventions as
+     * {@code SensorManager.getOrientation}.
+     */
+    public void getOrientationDegrees(float[] out) {
+        toOrientationDegrees(q0, q1, q2, q3, out);
+    }
+
+    /**
+     * Like {@link #getOrientationDegrees}, for a device-to-east-north-up rotation (w, x, y, z) as
+     * written by {@link #getQuaternion}.
+     */
+    public static void getOrientationDegrees(float[] quaternion, float[] out) {
+        // Rotate by -90 degrees about up to go from east-north-up to north-west-up.
+        float w = quaternion[0];
+        float x = quaternion[1];
+        float y = quaternion[2];
+        float z = quaternion[3];
+        toOrientationDegrees(
+                HALF_SQRT2 * (w + z),
+                HALF_SQRT2 * (x + y),
+                HALF_SQRT2 * (y - x),
+                HALF_SQRT2 * (z - w),
+                out);
+    }
+
+    // Azimuth, pitch and roll of a device-to-north-west-up rotation.
+    private static void toOrientationDegrees(float q0, float q1, float q2, float q3, float[] out) {
+        float r01 = 2f * (q1 * q2 - q0 * q3);
+        float r11 = 1f - 2f * (q1 * q1 + q3 * q3);
+        float r20 = 2f * (q1 * q3 - q0 * q2);
+        float r21 = 2f * (q2 * q3 + q0 * q1);
+        float r22 = 1f - 2f * (q1 * q1 + q2 * q2);
+        // The east row of the Android rotation matrix is minus our west row, north is our x row.
+        out[0] = (float) Math.toDegrees(Math.atan2(-r11, r01));
+        out[1] = (float) Math.toDegrees(Math.asin(Math.max(-1f, Math.min(1f, -r21))));
+        out[2] = (float) Math.toDegrees(Math.atan2(-r20, r22));
+    }
+
+    /** Writes the device-to-east-north-up rotation as (w, x, y, z) to {@code out[0..3]}. */
+    public void getQuaternion(float[] out) {
+        // Rotate by +90 degrees about up to go from north-west-up back to east-north-up.
+        out[0] = HALF_SQRT2 * (q0 - q3);
+        out[1] = HALF_SQRT2 * (q1 - q2);
+        out[2] = HALF_SQRT2 * (q2 + q1);
+        out[3] = HALF_SQRT2 * (q3 + q0);
+    }
+
+    // Moves the state towards the orientation given by gravity and the magnetic field, the same
+    // construction SensorManager.getRotationMatrix uses. weight 1 replaces the state.
+    private boolean blendAccelMag(float weight) {
+        if (!haveAccel || !haveMag) {
+            return false;
+        }
+        // East = magnetic field x gravity.
+        float ex = my * az - mz * ay;
+        float ey = mz * ax - mx * az;
+        float ez = mx * ay - my * ax;
+        float normE = (float) Math.sqrt(ex * ex + ey * ey + ez * ez);
+        float normA = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (normE < 0.1f || normA < 0.1f) {
+            // Free fall or device close to magnetic north pole.
+            return false;
+        }
+        ex /= normE;
+        ey /= normE;
+        ez /= normE;
+        float ux = ax / normA;
+        float uy = ay / normA;
+        float uz = az / normA;
+        // North = up x east.
+        float nx = uy * ez - uz * ey;
+        float ny = uz * ex - ux * ez;
+        float nz = ux * ey - uy * ex;
+
+        // Rows of the device-to-north-west-up matrix are north, -east and up.
+        float r00 = nx;
+        float r01 = ny;
+        float r02 = nz;
+        float r10 = -ex;
+        float r11 = -ey;
+        float r12 = -ez;
+        float r20 = ux;
+        float r21 = uy;
+        float r22 = uz;
+
+        float w;
+        float x;
+        float y;
+        float z;
+        float trace = r00 + r11 + r22;
+        if (trace > 0) {
+            float s = 0.5f / (float) Math.sqrt(trace + 1f);
+            w = 0.25f / s;
+            x = (r21 - r12) * s;
+            y = (r02 - r20) * s;
+            z = (r10 - r01) * s;
+        } else if (r00 > r11 && r00 > r22) {
+            float s = 2f * (float) Math.sqrt(1f + r00 - r11 - r22);
+            w = (r21 - r12) / s;
+            x = 0.25f * s;
+            y = (r01 + r10) / s;
+            z = (r02 + r20) / s;
+        } else if (r11 > r22) {
+            float s = 2f * (float) Math.sqrt(1f + r11 - r00 - r22);
+            w = (r02 - r20) / s;
+            x = (r01 + r10) / s;
+            y = 0.25f * s;
+            z = (r12 + r21) / s;
+        } else {
+            float s = 2f * (float) Math.sqrt(1f + r22 - r00 - r11);
+            w = (r10 - r01) / s;
+            x = (r02 + r20) / s;
+            y = (r12 + r21) / s;
+            z = 0.25f * s;
+        }
+
+        if (!initialized || weight >= 1f) {
+            setNormalized(w, x, y, z);
+            initialized = true;
+            return true;
+        }
+        // Normalized linear interpolation along the shorter arc.
+        if (q0 * w + q1 * x + q2 * y + q3 * z < 0) {
+            w = -w;
+            x = -x;
+            y = -y;
+            z = -z;
+        }
+        setNormalized(
+                q0 + weight * (w - q0),
+                q1 + weight * (x - q1),
+                q2 + weight * (y - q2),
+                q3 + weight * (z - q3));
+        return true;
+    }
+
+    private void integrateGyro(float gx, float gy, float gz, float dt) {
+        float halfDt = 0.5f * dt;
+        setNormalized(
+                q0 + (-q1 * gx - q2 * gy - q3 * gz) * halfDt,
+                q1 + (q0 * gx + q2 * gz - q3 * gy) * halfDt,
+                q2 + (q0 * gy - q1 * gz + q3 * gx) * halfDt,
+                q3 + (q0 * gz + q1 * gy - q2 * gx) * halfDt);
+    }
+
+    // Madgwick, "An efficient orientation filter for inertial and inertial/magnetic sensor arrays",
+    // MARG variant with magnetic distortion compensation.
+    private void madgwickUpdate(float gx, float gy, float gz, float dt) {
+        float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        float normA = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        float normM = (float) Math.sqrt(mx * mx + my * my + mz * mz);
+        if (normA > 0 && normM > 0) {
+            float nax = ax / normA;
+            float nay = ay / normA;
+            float naz = az / normA;
+            float nmx = mx / normM;
+            float nmy = my / normM;
+            float nmz = mz / normM;
+
+            float twoQ0mx = 2f * q0 * nmx;
+            float twoQ0my = 2f * q0 * nmy;
+            float twoQ0mz = 2f * q0 * nmz;
+            float twoQ1mx = 2f * q1 * nmx;
+            float twoQ0 = 2f * q0;
+            float twoQ1 = 2f * q1;
+            float twoQ2 = 2f * q2;
+            float twoQ3 = 2f * q3;
+            float twoQ0q2 = 2f * q0 * q2;
+            float twoQ2q3 = 2f * q2 * q3;
+            float q0q0 = q0 * q0;
+            float q0q1 = q0 * q1;
+            float q0q2 = q0 * q2;
+            float q0q3 = q0 * q3;
+            float q1q1 = q1 * q1;
+            float q1q2 = q1 * q2;
+            float q1q3 = q1 * q3;
+            float q2q2 = q2 * q2;
+            float q2q3 = q2 * q3;
+            float q3q3 = q3 * q3;
+
+            // Reference direction of the Earth's magnetic field.
+            float hx = nmx * q0q0 - twoQ0my * q3 + twoQ0mz * q2 + nmx * q1q1 + twoQ1 * nmy * q2
+                    + twoQ1 * nmz * q3 - nmx * q2q2 - nmx * q3q3;
+            float hy = twoQ0mx * q3 + nmy * q0q0 - twoQ0mz * q1 + twoQ1mx * q2 - nmy * q1q1
+                    + nmy * q2q2 + twoQ2 * nmz * q3 - nmy * q3q3;
+            float twoBx = (float) Math.sqrt(hx * hx + hy * hy);
+            float twoBz = -twoQ0mx * q2 + twoQ0my * q1 + nmz * q0q0 + twoQ1mx * q3 - nmz * q1q1
+                    + twoQ2 * nmy * q3 - nmz * q2q2 + nmz * q3q3;
+            float fourBx = 2f * twoBx;
+            float fourBz = 2f * twoBz;
+
+            // Objective function terms shared by the gradient components.
+            float fgx = 2f * q1q3 - twoQ0q2 - nax;
+            float fgy = 2f * q0q1 + twoQ2q3 - nay;
+            float fgz = 1f - 2f * q1q1 - 2f * q2q2 - naz;
+            float fbx = twoBx * (0.5f - q2q2 - q3q3) + twoBz * (q1q3 - q0q2) - nmx;
+            float fby = twoBx * (q1q2 - q0q3) + twoBz * (q0q1 + q2q3) - nmy;
+            float fbz = twoBx * (q0q2 + q1q3) + twoBz * (0.5f - q1q1 - q2q2) - nmz;
+
+            float s0 = -twoQ2 * fgx + twoQ1 * fgy - twoBz * q2 * fbx
+                    + (-twoBx * q3 + twoBz * q1) * fby + twoBx * q2 * fbz;
+            float s1 = twoQ3 * fgx + twoQ0 * fgy - 4f * q1 * fgz + twoBz * q3 * fbx
+                    + (twoBx * q2 + twoBz * q0) * fby + (twoBx * q3 - fourBz * q1) * fbz;
+            float s2 = -twoQ0 * fgx + twoQ3 * fgy - 4f * q2 * fgz
+                    + (-fourBx * q2 - twoBz * q0) * fbx + (twoBx * q1 + twoBz * q3) * fby
+                    + (twoBx * q0 - fourBz * q2) * fbz;
+            float s3 = twoQ1 * fgx + twoQ2 * fgy + (-fourBx * q3 + twoBz * q1) * fbx
+                    + (-twoBx * q0 + twoBz * q2) * fby + twoBx * q1 * fbz;
+            float normS = (float) Math.sqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+            if (normS > 0) {
+                qDot1 -= beta * s0 / normS;
+                qDot2 -= beta * s1 / normS;
+                qDot3 -= beta * s2 / normS;
+                qDot4 -= beta * s3 / normS;
+            }
+        }
+        setNormalized(q0 + qDot1 * dt, q1 + qDot2 * dt, q2 + qDot3 * dt, q3 + qDot4 * dt);
+    }
+
+    // IMU variant of the same filter, used while no magnetometer reading is available.
+    private void madgwickImuUpdate(float gx, float gy, float gz, float dt) {
+        float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        float normA = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (normA > 0) {
+            float nax = ax / normA;
+            float nay = ay / normA;
+            float naz = az / normA;
+            float twoQ0 = 2f * q0;
+            float twoQ1 = 2f * q1;
+            float twoQ2 = 2f * q2;
+            float twoQ3 = 2f * q3;
+            float fourQ0 = 4f * q0;
+            float fourQ1 = 4f * q1;
+            float fourQ2 = 4f * q2;
+            float eightQ1 = 8f * q1;
+            float eightQ2 = 8f * q2;
+            float q0q0 = q0 * q0;
+            float q1q1 = q1 * q1;
+            float q2q2 = q2 * q2;
+            float q3q3 = q3 * q3;
+
+            float s0 = fourQ0 * q2q2 + twoQ2 * nax + fourQ0 * q1q1 - twoQ1 * nay;
+            float s1 = fourQ1 * q3q3 - twoQ3 * nax + 4f * q0q0 * q1 - twoQ0 * nay - fourQ1
+                    + eightQ1 * q1q1 + eightQ1 * q2q2 + fourQ1 * naz;
+            float s2 = 4f * q0q0 * q2 + twoQ0 * nax + fourQ2 * q3q3 - twoQ3 * nay - fourQ2
+                    + eightQ2 * q1q1 + eightQ2 * q2q2 + fourQ2 * naz;
+            float s3 = 4f * q1q1 * q3 - twoQ1 * nax + 4f * q2q2 * q3 - twoQ2 * nay;
+            float normS = (float) Math.sqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+            if (normS > 0) {
+                qDot1 -= beta * s0 / normS;
+                qDot2 -= beta * s1 / normS;
+                qDot3 -= beta * s2 / normS;
+                qDot4 -= beta * s3 / normS;
+            }
+        }
+        setNormalized(q0 + qDot1 * dt, q1 + qDot2 * dt, q2 + qDot3 * dt, q3 + qDot4 * dt);
+    }
+
+    private void setNormalized(float w, float x, float y, float z) {
+        float norm = (float) Math.sqrt(w * w + x * x + y * y + z * z);
+        if (norm == 0 || Float.isNaN(norm)) {
+            return;
+        }
+        q0 = w / norm;
+        q1 = x / norm;
+        q2 = y / norm;
+        q3 = z / norm;
+    }
+}
@@ -0,0 +1,233 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity history of timestamped orientation quaternions, so a camera frame can be paired
+ * with the device orientation at the time it was captured rather than the latest one.
+ *
+ * <p>One thread adds samples with increasing timestamps; any number of threads may look up the
+ * orientation at a timestamp concurrently, without locking or allocating. A lookup binary-searches
+ * the retained samples and interpolates between the two around the timestamp with slerp. Sensor
+ * samples may arrive in batches, so past the newest sample its orientation is held for up to
+ * {@code maxHoldNs}; samples further apart than that are not interpolated either.
+ *
+ * <p>Each slot is guarded by a sequence number, odd while the writer fills it and {@code 2n + 2}
+ * once it holds sample {@code n}. A reader checks that number before and after copying a slot and
+ * starts over if the writer got there in between, which only happens if the reader is slower than
+ * {@code capacity} samples. All fields are atomics, so the checks are ordered without fences.
+ */
+public class OrientationHistory {
+    private static final int MAX_ATTEMPTS = 4;
+    // Above this cosine of half the angle between two samples, slerp becomes a normalized lerp.
+    private static final float LERP_THRESHOLD = 0.9995f;
+    // readTimestamp's result for a slot that does not hold the requested sample.
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final int mask;
+    private final long maxHoldNs;
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray timestamps;
+    // w, x, y, z per slot as float bits.
+    private final AtomicIntegerArray quaternions;
+    // Samples added so far; sample n lives in slot n & mask.
+    private final AtomicLong count = new AtomicLong();
+
+    // Only touched by the writer.
+    private long lastTimestampNs = Long.MIN_VALUE;
+
+    /**
+     * @param capacity samples retained, rounded up to a power of two
+     * @param maxHoldNs how long an orientation stays valid without a newer sample
+     */
+    public OrientationHistory(int capacity, long maxHoldNs) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        this.maxHoldNs = maxHoldNs;
+        sequences = new AtomicLongArray(size);
+        timestamps = new AtomicLongArray(size);
+        quaternions = new AtomicIntegerArray(4 * size);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds the orientation at {@code timestampNs} as a unit quaternion; samples not newer than the
+     * previous one are ignored. Must be called from one thread at a time.
+     */
+    public void add(long timestampNs, float w, float x, float y, float z) {
+        if (timestampNs <= lastTimestampNs) {
+            return;
+        }
+        lastTimestampNs = timestampNs;
+        long n = count.get();
+        int slot = (int) n & mask;
+        sequences.set(slot, 2 * n + 1);
+        timestamps.set(slot, timestampNs);
+        int q = 4 * slot;
+        quaternions.set(q, Float.floatToRawIntBits(w));
+        quaternions.set(q + 1, Float.floatToRawIntBits(x));
+        quaternions.set(q + 2, Float.floatToRawIntBits(y));
+        quaternions.set(q + 3, Float.floatToRawIntBits(z));
+        sequences.set(slot, 2 * n + 2);
+        count.set(n + 1);
+    }
+
+    /**
+     * Writes the orientation at {@code timestampNs} as (w, x, y, z) to {@code out[0..3]} and
+     * returns true, or returns false if no retained sample is close enough. Safe to call from any
+     * thread.
+     */
+    public boolean getOrientationAt(long timestampNs, float[] out) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+            long newest = count.get() - 1;
+            if (newest < 0) {
+                return false;
+            }
+            long oldest = Math.max(0, newest - mask);
+            long newestTimestampNs = readTimestamp(newest);
+            if (newestTimestampNs == MISSING) {
+                continue;
+            }
+            if (timestampNs >= newestTimestampNs) {
+                if (timestampNs - newestTimestampNs > maxHoldNs) {
+                    return false;
+                }
+                if (readQuaternion(newest, out)) {
+                    return true;
+                }
+                continue;
+            }
+
+            // Finds the first sample after timestampNs; the one before it is at or before it.
+            long lo = oldest;
+            long hi = newest;
+            boolean overwritten = false;
+            while (lo < hi) {
+                long mid = lo + (hi - lo) / 2;
+                long midTimestampNs = readTimestamp(mid);
+                if (midTimestampNs == MISSING) {
+                    overwritten = true;
+                    break;
+                }
+                if (midTimestampNs <= timestampNs) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (overwritten) {
+                continue;
+            }
+            if (lo == oldest) {
+                // Older than anything retained.
+                return false;
+            }
+            int result = interpolate(lo - 1, lo, timestampNs, out);
+            if (result >= 0) {
+                return result > 0;
+            }
+        }
+        return false;
+    }
+
+    // Slerps between samples a and b = a + 1 at timestampNs. Returns 1 on success, 0 if they are
+    // too far apart, -1 if one was overwritten meanwhile.
+    private int interpolate(long a, long b, long timestampNs, float[] out) {
+        int slotA = (int) a & mask;
+        int slotB = (int) b & mask;
+        long sequenceA = 2 * a + 2;
+        long sequenceB = 2 * b + 2;
+        if (sequences.get(slotA) != sequenceA || sequences.get(slotB) != sequenceB) {
+            return -1;
+        }
+        long t0 = timestamps.get(slotA);
+        long t1 = timestamps.get(slotB);
+        int qa = 4 * slotA;
+        int qb = 4 * slotB;
+        float aw = Float.intBitsToFloat(quaternions.get(qa));
+        float ax = Float.intBitsToFloat(quaternions.get(qa + 1));
+        float ay = Float.intBitsToFloat(quaternions.get(qa + 2));
+        float az = Float.intBitsToFloat(quaternions.get(qa + 3));
+        float bw = Float.intBitsToFloat(quaternions.get(qb));
+        float bx = Float.intBitsToFloat(quaternions.get(qb + 1));
+        float by = Float.intBitsToFloat(quaternions.get(qb + 2));
+        float bz = Float.intBitsToFloat(quaternions.get(qb + 3));
+        if (sequences.get(slotA) != sequenceA || sequences.get(slotB) != sequenceB) {
+            return -1;
+        }
+
+        if (t1 - t0 > maxHoldNs) {
+            // A gap, e.g. while the sensors were off: hold the earlier sample, never bridge it.
+            if (timestampNs - t0 > maxHoldNs) {
+                return 0;
+            }
+            out[0] = aw;
+            out[1] = ax;
+            out[2] = ay;
+            out[3] = az;
+            return 1;
+        }
+        float t = (float) ((double) (timestampNs - t0) / (t1 - t0));
+
+        // q and -q are the same rotation; take the shorter arc.
+        float cos = aw * bw + ax * bx + ay * by + az * bz;
+        if (cos < 0) {
+            cos = -cos;
+            bw = -bw;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+        }
+        float wa;
+        float wb;
+        if (cos > LERP_THRESHOLD) {
+            wa = 1f - t;
+            wb = t;
+        } else {
+            double angle = Math.acos(cos);
+            double sin = Math.sin(angle);
+            wa = (float) (Math.sin((1 - t) * angle) / sin);
+            wb = (float) (Math.sin(t * angle) / sin);
+        }
+        float w = wa * aw + wb * bw;
+        float x = wa * ax + wb * bx;
+        float y = wa * ay + wb * by;
+        float z = wa * az + wb * bz;
+        float norm = (float) Math.sqrt(w * w + x * x + y * y + z * z);
+        out[0] = w / norm;
+        out[1] = x / norm;
+        out[2] = y / norm;
+        out[3] = z / norm;
+        return 1;
+    }
+
+    // Timestamp of sample n, or MISSING if its slot no longer (or not yet) holds it.
+    private long readTimestamp(long n) {
+        int slot = (int) n & mask;
+        long sequence = 2 * n + 2;
+        if (sequences.get(slot) != sequence) {
+            return MISSING;
+        }
+        long timestampNs = timestamps.get(slot);
+        return sequences.get(slot) == sequence ? timestampNs : MISSING;
+    }
+
+    // Copies sample n to out[0..3]; false if its slot no longer holds it.
+    private boolean readQuaternion(long n, float[] out) {
+        int slot = (int) n & mask;
+        long sequence = 2 * n + 2;
+        if (sequences.get(slot) != sequence) {
+            return false;
+        }
+        int q = 4 * slot;
+        for (int i = 0; i < 4; ++i) {
+            out[i] = Float.intBitsToFloat(quaternions.get(q + i));
+        }
+        return sequences.get(slot) == sequence;
+    }
+}
@@ -0,0 +1,155 @@
+package com.google.mediapipe.apps.base;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pushes numeric readouts to their {@link TextView}s at most once per display frame.
+ *
+ * <p>Values may be published from any thread at any rate. Each readout keeps only its latest
+ * value; a publish that lands before the previous one was displayed is counted as coalesced. The
+ * views are updated from a {@link Choreographer} frame callback on the main thread. Values are
+ * formatted with {@link FloatFormatter} into a {@code char[]} per readout, which the view keeps
+ * referring to, so updating a readout allocates nothing.
+ */
+public class ReadoutPresenter implements Choreographer.FrameCallback {
+    /** Told on the main thread whenever a published value was set on its view. */
+    public interface DisplayListener {
+        /**
+         * @param originNs origin passed to {@link #publish(int, float, long)}, 0 if none
+         * @param publishNs when the displayed value was published
+         * @param displayNs when it was set on the view
+         */
+        void onDisplayed(int readout, long originNs, long publishNs, long displayNs);
+    }
+
+    private final TextView[] views;
+    // Only touched on the main thread; texts[i] is what views[i] currently shows.
+    private final char[][] texts;
+    private final int[] decimals;
+    private int readoutCount;
+
+    private final AtomicIntegerArray valueBits;
+    private final AtomicIntegerArray dirty;
+    private final AtomicLongArray publishTimes;
+    private final AtomicLongArray originTimes;
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+
+    private final AtomicLong displayedUpdates = new AtomicLong();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+
+    private final Choreographer choreographer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable postFrameCallback = this::postFrameCallback;
+
+    private volatile DisplayListener displayListener;
+
+    /** Must be called on the main thread. */
+    public ReadoutPresenter(int capacity) {
+        views = new TextView[capacity];
+        texts = new char[capacity][];
+        decimals = new int[capacity];
+        valueBits = new AtomicIntegerArray(capacity);
+        dirty = new AtomicIntegerArray(capacity);
+        publishTimes = new AtomicLongArray(capacity);
+        originTimes = new AtomicLongArray(capacity);
+        choreographer = Choreographer.getInstance();
+    }
+
+    /** Like {@link #addReadout(TextView, int)} with {@link FloatFormatter#DEFAULT_DECIMALS}. */
+    public int addReadout(TextView view) {
+        return addReadout(view, FloatFormatter.DEFAULT_DECIMALS);
+    }
+
+    /**
+     * Registers a view showing values rounded half up to {@code decimals} places and returns the
+     * readout index to publish to. Must be called on the main thread before values are published
+     * for it.
+     */
+    public int addReadout(TextView view, int decimals) {
+        if (readoutCount == views.length) {
+            throw new IllegalStateException("Readout capacity " + views.length + " exceeded");
+        }
+        if (decimals < 0 || decimals > FloatFormatter.MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals out of range: " + decimals);
+        }
+        views[readoutCount] = view;
+        texts[readoutCount] = new char[FloatFormatter.MAX_LENGTH];
+        this.decimals[readoutCount] = decimals;
+        return readoutCount++;
+    }
+
+    /** Must be called on the main thread. */
+    public void setDisplayListener(DisplayListener listener) {
+        displayListener = listener;
+    }
+
+    /** Records the latest value of {@code readout}; safe to call from any thread. */
+    public void publish(int readout, float value) {
+        publish(readout, value, 0);
+    }
+
+    /**
+     * Like {@link #publish(int, float)}, tagging the value with the {@link System#nanoTime} its
+     * computation started at, which is handed to the {@link DisplayListener}.
+     */
+    public void publish(int readout, float value, long originNs) {
+        if (displayListener != null) {
+            originTimes.set(readout, originNs);
+            publishTimes.set(readout, System.nanoTime());
+        }
+        valueBits.set(readout, Float.floatToRawIntBits(value));
+        if (dirty.getAndSet(readout, 1) == 1) {
+            coalescedUpdates.incrementAndGet();
+            return;
+        }
+        if (frameScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                postFrameCallback();
+            } else {
+                mainHandler.post(postFrameCallback);
+            }
+        }
+    }
+
+    private void postFrameCallback() {
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Re-arm before draining so a publish racing with this frame schedules the next one.
+        frameScheduled.set(false);
+        for (int i = 0; i < readoutCount; ++i) {
+            if (dirty.getAndSet(i, 0) == 1) {
+                // Rewriting the array the view refers to is safe here: the view only reads it on
+                // the main thread, and setText below makes it re-measure.
+                int length =
+                        FloatFormatter.format(
+                                Float.intBitsToFloat(valueBits.get(i)), decimals[i], texts[i], 0);
+                views[i].setText(texts[i], 0, length);
+                displayedUpdates.incrementAndGet();
+                if (displayListener != null) {
+                    displayListener.onDisplayed(
+                            i, originTimes.get(i), publishTimes.get(i), System.nanoTime());
+                }
+            }
+        }
+    }
+
+    public long getDisplayedUpdateCount() {
+        return displayedUpdates.get();
+    }
+
+    /** Updates that were replaced by a newer value before they reached the screen. */
+    public long getCoalescedUpdateCount() {
+        return coalescedUpdates.get();
+    }
+}
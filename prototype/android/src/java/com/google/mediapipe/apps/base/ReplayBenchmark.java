@@ -0,0 +1,321 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays a recorded or synthetic session through {@link TrackingPipeline} on the desktop JVM and
+ * reports throughput and per-sample latency.
+ *
+ * <pre>
+ *   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:replay_benchmark -- \
+ *       --session /path/to/sessions/1600000000000 [--passes 5]
+ *   bazel run ... -- --synthetic 60
+ *   bazel run ... -- --session /path/to/session --passes 1 --csv /path/to/depth.csv
+ * </pre>
+ *
+ * A session is pulled off the device with {@code adb pull
+ * /sdcard/Android/data/<package>/files/sessions}, or written from footage on the desktop by
+ * {@code //mediapipe/prototype/desktop:iris_batch_cpu}. With {@code --csv}, an extra untimed pass
+ * writes the pipeline's per-frame output: filtered depths and head pose. The whole trace is loaded
+ * into memory first, so only the pipeline is timed; every pass runs on a fresh pipeline, and all
+ * but the last one warm up the JIT. A depth sample is one fused left/right pair, a landmark sample
+ * one whole frame.
+ */
+public class ReplayBenchmark {
+    private static final int KIND_DEPTH = 0;
+    private static final int KIND_LANDMARKS = 1;
+    private static final int KIND_SENSOR = 2;
+    private static final String[] KIND_NAMES = {"depth", "landmarks", "sensor"};
+
+    private static final int DEFAULT_PASSES = 5;
+
+    // Synthetic sessions: camera frames, gyroscope and accelerometer, and magnetometer rates.
+    private static final int FRAME_RATE = 30;
+    private static final int INERTIAL_RATE = 100;
+    private static final int MAGNETIC_RATE = 50;
+    private static final int SYNTHETIC_LANDMARKS = 478;
+
+    /** An in-memory trace; {@code values} holds {@code valueCounts[i]} floats per sample. */
+    private static final class Trace {
+        int size;
+        int[] kinds = new int[1024];
+        int[] sensorTypes = new int[1024];
+        long[] timestampsNs = new long[1024];
+        int[] valueOffsets = new int[1024];
+        int[] valueCounts = new int[1024];
+        float[] values = new float[4096];
+        int valueSize;
+        final int[] kindCounts = new int[KIND_NAMES.length];
+        int maxValueCount;
+
+        // Returns the value offset of the new sample.
+        int add(int kind, int sensorType, long timestampNs, int valueCount) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                sensorTypes = Arrays.copyOf(sensorTypes, capacity);
+                timestampsNs = Arrays.copyOf(timestampsNs, capacity);
+                valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+                valueCounts = Arrays.copyOf(valueCounts, capacity);
+            }
+            if (valueSize + valueCount > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, valueSize + valueCount));
+            }
+            kinds[size] = kind;
+            sensorTypes[size] = sensorType;
+            timestampsNs[size] = timestampNs;
+            valueOffsets[size] = valueSize;
+            valueCounts[size] = valueCount;
+            ++size;
+            ++kindCounts[kind];
+            maxValueCount = Math.max(maxValueCount, valueCount);
+            int offset = valueSize;
+            valueSize += valueCount;
+            return offset;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File session = null;
+        int syntheticSeconds = 0;
+        int passes = DEFAULT_PASSES;
+        File csv = null;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--session") && i + 1 < args.length) {
+                session = new File(args[++i]);
+            } else if (args[i].equals("--synthetic") && i + 1 < args.length) {
+                syntheticSeconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--passes") && i + 1 < args.length) {
+                passes = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--csv") && i + 1 < args.length) {
+                csv = new File(args[++i]);
+            } else {
+                usage();
+            }
+        }
+        Trace trace;
+        if (session != null) {
+            trace = load(session);
+        } else if (syntheticSeconds > 0) {
+            trace = synthesize(syntheticSeconds, new Random(42));
+        } else {
+            usage();
+            return;  // Not reached.
+        }
+        System.out.printf(
+                Locale.US,
+                "%d samples: %d depth, %d landmark frames, %d sensor%n",
+                trace.size,
+                trace.kindCounts[KIND_DEPTH],
+                trace.kindCounts[KIND_LANDMARKS],
+                trace.kindCounts[KIND_SENSOR]);
+
+        long[][] latencies = new long[KIND_NAMES.length][];
+        for (int kind = 0; kind < latencies.length; ++kind) {
+            latencies[kind] = new long[trace.kindCounts[kind]];
+        }
+        float[] frame = new float[trace.maxValueCount];
+        long elapsedNs = 0;
+        for (int pass = 0; pass < passes; ++pass) {
+            elapsedNs = replay(trace, new TrackingPipeline(), frame, latencies);
+        }
+
+        System.out.printf(
+                Locale.US,
+                "replayed in %.1f ms, %.0f samples/s%n",
+                elapsedNs / 1e6,
+                trace.size / (elapsedNs / 1e9));
+        for (int kind = 0; kind < latencies.length; ++kind) {
+            long[] sorted = latencies[kind];
+            if (sorted.length == 0) {
+                continue;
+            }
+            Arrays.sort(sorted);
+            System.out.printf(
+                    Locale.US,
+                    "%-10s p50 %8.2f us  p99 %8.2f us  max %8.2f us%n",
+                    KIND_NAMES[kind],
+                    percentile(sorted, 0.50) / 1e3,
+                    percentile(sorted, 0.99) / 1e3,
+                    sorted[sorted.length - 1] / 1e3);
+        }
+
+        if (csv != null) {
+            writeCsv(trace, frame, csv);
+        }
+    }
+
+    private static void writeCsv(Trace trace, float[] frame, File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("timestamp_us,left_depth_cm,right_depth_cm,head_yaw_deg,head_distance_cm");
+            TrackingPipeline pipeline = new TrackingPipeline();
+            pipeline.setDepthListener(
+                    (timestampUs, left, right, yaw, distance) ->
+                            out.printf(
+                                    Locale.US,
+                                    "%d,%.3f,%.3f,%.3f,%.3f%n",
+                                    timestampUs,
+                                    left,
+                                    right,
+                                    yaw,
+                                    distance));
+            long[][] latencies = new long[KIND_NAMES.length][];
+            for (int kind = 0; kind < latencies.length; ++kind) {
+                latencies[kind] = new long[trace.kindCounts[kind]];
+            }
+            replay(trace, pipeline, frame, latencies);
+            if (out.checkError()) {
+                throw new IOException("Cannot write " + file);
+            }
+        }
+    }
+
+    // Prints the usage and exits with status 2.
+    private static void usage() {
+        System.err.println(
+                "usage: replay_benchmark (--session <directory> | --synthetic <seconds>) [--passes <n>]"
+                        + " [--csv <file>]");
+        System.exit(2);
+    }
+
+    // Returns the wall time of the pass; per-sample latencies go into latencies[kind].
+    private static long replay(Trace trace, TrackingPipeline pipeline, float[] frame, long[][] latencies) {
+        int[] next = new int[latencies.length];
+        float[] values = trace.values;
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.size; ++i) {
+            int kind = trace.kinds[i];
+            int offset = trace.valueOffsets[i];
+            long timestampNs = trace.timestampsNs[i];
+            long before = System.nanoTime();
+            switch (kind) {
+                case KIND_DEPTH:
+                    pipeline.onLeftDepth(timestampNs / 1000, values[offset]);
+                    pipeline.onRightDepth(timestampNs / 1000, values[offset + 1]);
+                    break;
+                case KIND_LANDMARKS:
+                    // Passed in one reused array, like the decoder's.
+                    int count = trace.valueCounts[i];
+                    System.arraycopy(values, offset, frame, 0, count);
+                    pipeline.onLandmarks(timestampNs / 1000, frame, count / LandmarkDecoder.STRIDE);
+                    break;
+                default:
+                    pipeline.onSensorSample(
+                            trace.sensorTypes[i],
+                            timestampNs,
+                            values[offset],
+                            values[offset + 1],
+                            values[offset + 2],
+                            values[offset + 3]);
+                    break;
+            }
+            latencies[kind][next[kind]++] = System.nanoTime() - before;
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    // Fused depth and raw sensor records are replayed; recorded orientation is pipeline output.
+    private static Trace load(File directory) throws IOException {
+        Trace trace = new Trace();
+        SessionReader reader = new SessionReader(directory);
+        int frameOffset = -1;
+        int frameCount = 0;
+        while (reader.next()) {
+            switch (reader.getType()) {
+                case SessionRecorder.TYPE_DEPTH: {
+                    int offset = trace.add(KIND_DEPTH, 0, reader.getTimestampNs(), 2);
+                    trace.values[offset] = reader.getValue(0);
+                    trace.values[offset + 1] = reader.getValue(1);
+                    break;
+                }
+                case SessionRecorder.TYPE_LANDMARK: {
+                    // The landmarks of a frame are reserved together, so they are contiguous.
+                    if (reader.getIndex() == 0) {
+                        frameCount = reader.getCount();
+                        frameOffset =
+                                trace.add(
+                                        KIND_LANDMARKS,
+                                        0,
+                                        reader.getTimestampNs(),
+                                        frameCount * LandmarkDecoder.STRIDE);
+                    }
+                    if (frameOffset >= 0 && reader.getIndex() < frameCount) {
+                        int offset = frameOffset + reader.getIndex() * LandmarkDecoder.STRIDE;
+                        for (int j = 0; j < LandmarkDecoder.STRIDE; ++j) {
+                            trace.values[offset + j] = reader.getValue(j);
+                        }
+                    }
+                    break;
+                }
+                case SessionRecorder.TYPE_SENSOR: {
+                    int offset = trace.add(KIND_SENSOR, reader.getIndex(), reader.getTimestampNs(), 4);
+                    for (int j = 0; j < 4; ++j) {
+                        trace.values[offset + j] = reader.getValue(j);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        return trace;
+    }
+
+    // A head swaying in front of a slowly turning phone, with sensor noise.
+    private static Trace synthesize(int seconds, Random random) {
+        Trace trace = new Trace();
+        long end = seconds * 1_000_000_000L;
+        long framePeriod = 1_000_000_000L / FRAME_RATE;
+        long inertialPeriod = 1_000_000_000L / INERTIAL_RATE;
+        long magneticPeriod = 1_000_000_000L / MAGNETIC_RATE;
+        long nextFrame = 0;
+        long nextInertial = 0;
+        long nextMagnetic = 0;
+        while (true) {
+            long t = Math.min(nextFrame, Math.min(nextInertial, nextMagnetic));
+            if (t >= end) {
+                return trace;
+            }
+            double s = t / 1e9;
+            if (t == nextFrame) {
+                double sway = 20 * Math.sin(2 * Math.PI * 0.2 * s);
+                int offset = trace.add(KIND_DEPTH, 0, t, 2);
+                trace.values[offset] = (float) (450 + sway + random.nextGaussian() * 3);
+                trace.values[offset + 1] = (float) (450 - sway + random.nextGaussian() * 3);
+                offset = trace.add(KIND_LANDMARKS, 0, t, SYNTHETIC_LANDMARKS * LandmarkDecoder.STRIDE);
+                for (int j = 0; j < SYNTHETIC_LANDMARKS * LandmarkDecoder.STRIDE; ++j) {
+                    trace.values[offset + j] = 0.5f + (float) (random.nextGaussian() * 0.01);
+                }
+                nextFrame += framePeriod;
+            } else if (t == nextInertial) {
+                double yawRate = 0.3 * Math.cos(2 * Math.PI * 0.05 * s);
+                int offset =
+                        trace.add(KIND_SENSOR, TrackingPipeline.SENSOR_GYROSCOPE, t, 4);
+                trace.values[offset] = (float) (random.nextGaussian() * 0.01);
+                trace.values[offset + 1] = (float) (random.nextGaussian() * 0.01);
+                trace.values[offset + 2] = (float) (yawRate + random.nextGaussian() * 0.01);
+                offset = trace.add(KIND_SENSOR, TrackingPipeline.SENSOR_ACCELEROMETER, t, 4);
+                trace.values[offset] = (float) (random.nextGaussian() * 0.05);
+                trace.values[offset + 1] = (float) (4.9 + random.nextGaussian() * 0.05);
+                trace.values[offset + 2] = (float) (8.5 + random.nextGaussian() * 0.05);
+                nextInertial += inertialPeriod;
+            } else {
+                int offset =
+                        trace.add(KIND_SENSOR, TrackingPipeline.SENSOR_MAGNETIC_FIELD, t, 4);
+                trace.values[offset] = (float) (random.nextGaussian() * 0.5);
+                trace.values[offset + 1] = (float) (20 + random.nextGaussian() * 0.5);
+                trace.values[offset + 2] = (float) (-40 + random.nextGaussian() * 0.5);
+                nextMagnetic += magneticPeriod;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Picks the lowest camera resolution that still shows the iris at {@code minIrisPixels} or more.
+ *
+ * <p>The iris is measured as a fraction of the short image side, which does not change with the
+ * resolution, so one measurement predicts the iris size at every candidate. The fraction is
+ * smoothed, and a new resolution is only chosen once it has been the right one for
+ * {@code holdUs} and {@code cooldownUs} have passed since the last change:
+ *
+ * <ul>
+ *   <li>step up to the lowest candidate that reaches {@code minIrisPixels} as soon as the current
+ *       one falls below it, e.g. when the user moves away;
+ *   <li>step down to the lowest candidate that reaches {@code minIrisPixels * (1 + hysteresis)},
+ *       so a user sitting near a boundary does not make the camera switch back and forth.
+ * </ul>
+ *
+ * Changing the resolution restarts the camera, which is why the hold time and cooldown are in the
+ * order of seconds. {@link #onIrisDiameter} must be called from one thread at a time; the current
+ * resolution may be read from any thread.
+ */
+public class ResolutionController {
+    /** Called on the thread calling {@link #onIrisDiameter} when a new resolution was chosen. */
+    public interface Listener {
+        void onResolutionChanged(long timestampUs, int width, int height);
+    }
+
+    public static final float DEFAULT_MIN_IRIS_PIXELS = 20f;
+    public static final float DEFAULT_HYSTERESIS = 0.25f;
+    public static final long DEFAULT_HOLD_US = 1_000_000L;
+    public static final long DEFAULT_COOLDOWN_US = 3_000_000L;
+
+    private static final float SMOOTHING = 0.1f;
+
+    // Candidates as {width, height}, in ascending order of their short side.
+    private final int[][] resolutions;
+    private final float minIrisPixels;
+    private final float hysteresis;
+    private final long holdUs;
+    private final long cooldownUs;
+
+    private volatile int current;
+    private Listener listener;
+
+    // Only touched by the measuring thread.
+    private float irisFraction = Float.NaN;
+    private int pending = -1;
+    private long pendingSinceUs;
+    private long lastChangeUs = Long.MIN_VALUE;
+    private long changeCount;
+
+    public ResolutionController(int[][] resolutions, float minIrisPixels) {
+        this(resolutions, minIrisPixels, DEFAULT_HYSTERESIS, DEFAULT_HOLD_US, DEFAULT_COOLDOWN_US);
+    }
+
+    /**
+     * @param resolutions candidate {width, height} pairs in ascending order; the controller starts
+     *     at the highest so the iris can be found from any distance
+     * @param hysteresis extra iris size, as a fraction of {@code minIrisPixels}, needed to step down
+     */
+    public ResolutionController(
+            int[][] resolutions, float minIrisPixels, float hysteresis, long holdUs, long cooldownUs) {
+        if (resolutions.length == 0) {
+            throw new IllegalArgumentException("No candidate resolutions");
+        }
+        this.resolutions = new int[resolutions.length][];
+        for (int i = 0; i < resolutions.length; ++i) {
+            this.resolutions[i] = resolutions[i].clone();
+            if (i > 0 && shortSide(i) < shortSide(i - 1)) {
+                throw new IllegalArgumentException("Resolutions must be in ascending order");
+            }
+        }
+        this.minIrisPixels = minIrisPixels;
+        this.hysteresis = hysteresis;
+        this.holdUs = holdUs;
+        this.cooldownUs = cooldownUs;
+        this.current = resolutions.length - 1;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts from the candidate of the given size, e.g. the one used last time, instead of the
+     * highest. Returns false if there is no such candidate. Call before the first measurement.
+     */
+    public boolean select(int width, int height) {
+        for (int i = 0; i < resolutions.length; ++i) {
+            if (resolutions[i][0] == width && resolutions[i][1] == height) {
+                current = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getWidth() {
+        return resolutions[current][0];
+    }
+
+    public int getHeight() {
+        return resolutions[current][1];
+    }
+
+    /** Resolution changes so far; only meaningful on the measuring thread. */
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Reports the iris diameter measured in a frame whose short side is {@code imageShortSide}
+     * pixels. Measurements that are not positive are ignored.
+     */
+    public void onIrisDiameter(long timestampUs, float diameterPixels, int imageShortSide) {
+        if (!(diameterPixels > 0) || imageShortSide <= 0) {
+            return;
+        }
+        float fraction = diameterPixels / imageShortSide;
+        irisFraction =
+                Float.isNaN(irisFraction) ? fraction : irisFraction + SMOOTHING * (fraction - irisFraction);
+
+        int target = target(irisFraction);
+        if (target == current) {
+            pending = -1;
+            return;
+        }
+        // Restart the hold time when the wanted direction changes, not for every new target.
+        if (pending < 0 || (pending > current) != (target > current)) {
+            pendingSinceUs = timestampUs;
+        }
+        pending = target;
+        if (timestampUs - pendingSinceUs < holdUs
+                || (lastChangeUs != Long.MIN_VALUE && timestampUs - lastChangeUs < cooldownUs)) {
+            return;
+        }
+        current = target;
+        pending = -1;
+        lastChangeUs = timestampUs;
+        ++changeCount;
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onResolutionChanged(timestampUs, getWidth(), getHeight());
+        }
+    }
+
+    // Resolution wanted for an iris of the given fraction of the short side.
+    private int target(float fraction) {
+        if (fraction * shortSide(current) < minIrisPixels) {
+            for (int i = current + 1; i < resolutions.length; ++i) {
+                if (fraction * shortSide(i) >= minIrisPixels) {
+                    return i;
+                }
+            }
+            return resolutions.length - 1;
+        }
+        float downThreshold = minIrisPixels * (1 + hysteresis);
+        for (int i = 0; i < current; ++i) {
+            if (fraction * shortSide(i) >= downThreshold) {
+                return i;
+            }
+        }
+        return current;
+    }
+
+    private int shortSide(int i) {
+        return Math.min(resolutions[i][0], resolutions[i][1]);
+    }
+}
@@ -0,0 +1,136 @@
+package com.google.mediapipe.apps.base;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * Feeds the orientation sensors to a {@link TrackingPipeline} on a "sensors" handler thread, so
+ * the orientation is never computed on the main thread.
+ *
+ * <p>The sensors are registered with a maximum report latency. Sensors that have a hardware FIFO
+ * then keep their events in the sensor hub and deliver them in bursts, instead of waking the
+ * application processor for every sample; the samples keep their own timestamps, so the
+ * orientation is the same, only up to {@code reportLatencyMs} late. The sensors are registered
+ * only while {@link #setActive} says the pipeline runs and the {@link LockStateMonitor} says the
+ * device is unlocked; all methods must be called on the main thread.
+ */
+public class SensorFeed implements SensorEventListener, LockStateMonitor.Listener {
+    public static final int DEFAULT_REPORT_LATENCY_MS = 100;
+
+    private final SensorManager sensorManager;
+    private final TrackingPipeline pipeline;
+    private final LockStateMonitor lockStateMonitor;
+    private final int maxReportLatencyUs;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private boolean active = false;
+    private boolean registered = false;
+
+    public SensorFeed(
+            SensorManager sensorManager,
+            TrackingPipeline pipeline,
+            LockStateMonitor lockStateMonitor,
+            int reportLatencyMs) {
+        this.sensorManager = sensorManager;
+        this.pipeline = pipeline;
+        this.lockStateMonitor = lockStateMonitor;
+        this.maxReportLatencyUs = Math.max(0, reportLatencyMs) * 1000;
+        thread = new HandlerThread("sensors");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        lockStateMonitor.addListener(this);
+    }
+
+    /**
+     * Registers the sensors while {@code active} and the device is unlocked, and unregisters them
+     * otherwise.
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+        update();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /** Whether the sensors are registered. */
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    @Override
+    public void onLockStateChanged(boolean locked) {
+        update();
+    }
+
+    /** Unregisters the sensors and stops the thread once it has handled the queued events. */
+    public void close() {
+        lockStateMonitor.removeListener(this);
+        setActive(false);
+        thread.quitSafely();
+    }
+
+    private void update() {
+        boolean register = active && !lockStateMonitor.isLocked();
+        if (register == registered) {
+            return;
+        }
+        registered = register;
+        if (register) {
+            register();
+        } else {
+            // Batched events still in the hub are dropped with the registration.
+            sensorManager.unregisterListener(this);
+        }
+    }
+
+    // Prefers the hub-fused rotation vector, then gyroscope-driven fusion, then accelerometer and
+    // magnetometer alone.
+    private void register() {
+        Sensor rotationVector = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        if (rotationVector != null) {
+            register(rotationVector, SensorManager.SENSOR_DELAY_NORMAL);
+            return;
+        }
+        Sensor gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        if (gyroscope != null) {
+            // The gyroscope drives the integration, so it needs a higher rate than the others.
+            register(gyroscope, SensorManager.SENSOR_DELAY_GAME);
+        }
+        register(
+                sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
+                SensorManager.SENSOR_DELAY_NORMAL);
+        register(
+                sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD),
+                SensorManager.SENSOR_DELAY_NORMAL);
+    }
+
+    private void register(Sensor sensor, int samplingPeriod) {
+        if (sensor != null) {
+            sensorManager.registerListener(
+                    this, sensor, samplingPeriod, maxReportLatencyUs, handler);
+        }
+    }
+
+    // Called on the sensors thread, which is the only one feeding the pipeline's sensor path.
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] v = event.values;
+        // values[3] is optional before API 18; the rotation vector is a unit quaternion.
+        float w = 0f;
+        if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
+            w = v.length > 3
+                    ? v[3]
+                    : (float) Math.sqrt(Math.max(0f, 1f - v[0] * v[0] - v[1] * v[1] - v[2] * v[2]));
+        }
+        pipeline.onSensorSample(event.sensor.getType(), event.timestamp, v[0], v[1], v[2], w);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+}
@@ -0,0 +1,168 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the per-eye depths of a session with those of a reference session of the same footage,
+ * e.g. the iris model skipped on still frames against the model run on every frame.
+ *
+ * <pre>
+ *   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:session_compare -- \
+ *       --reference /tmp/sessions/<input> --session /tmp/gated/<input> [--max-mean-error-mm 1]
+ * </pre>
+ *
+ * Depth records are matched by timestamp. The absolute error of each eye's depth is reported for
+ * all matched frames, and separately for the frames whose iris landmarks were reused and the ones
+ * that ran the model, as iris_batch_cpu marks them. Frames with depth in only one of the sessions
+ * are counted. With {@code --max-mean-error-mm}, the run fails if the mean error of all matched
+ * frames exceeds it.
+ */
+public class SessionCompare {
+    private static final String[] EYE_NAMES = {"left", "right"};
+
+    /** Errors of one group of frames. */
+    private static final class Errors {
+        final String name;
+        int size;
+        float[][] errorsMm = {new float[256], new float[256]};
+        final double[] relativeSums = new double[2];
+
+        Errors(String name) {
+            this.name = name;
+        }
+
+        void add(float[] reference, float[] depths) {
+            if (size == errorsMm[0].length) {
+                for (int eye = 0; eye < 2; ++eye) {
+                    errorsMm[eye] = Arrays.copyOf(errorsMm[eye], size * 2);
+                }
+            }
+            for (int eye = 0; eye < 2; ++eye) {
+                float error = Math.abs(depths[eye] - reference[eye]);
+                errorsMm[eye][size] = error;
+                relativeSums[eye] += error / reference[eye];
+            }
+            ++size;
+        }
+
+        double getMeanMm() {
+            double sum = 0;
+            for (int eye = 0; eye < 2; ++eye) {
+                for (int i = 0; i < size; ++i) {
+                    sum += errorsMm[eye][i];
+                }
+            }
+            return size > 0 ? sum / (2 * size) : 0;
+        }
+
+        void print() {
+            System.out.println(name + ": " + size + " frames");
+            if (size == 0) {
+                return;
+            }
+            for (int eye = 0; eye < 2; ++eye) {
+                float[] sorted = Arrays.copyOf(errorsMm[eye], size);
+                Arrays.sort(sorted);
+                double sum = 0;
+                for (float error : sorted) {
+                    sum += error;
+                }
+                System.out.println(
+                        String.format(
+                                Locale.US,
+                                "  %-5s mean %6.2f mm (%5.2f%%)  p95 %6.2f mm  max %6.2f mm",
+                                EYE_NAMES[eye],
+                                sum / size,
+                                100 * relativeSums[eye] / size,
+                                sorted[(int) Math.ceil(0.95 * size) - 1],
+                                sorted[size - 1]));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File reference = null;
+        File session = null;
+        float maxMeanErrorMm = Float.NaN;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--reference") && i + 1 < args.length) {
+                reference = new File(args[++i]);
+            } else if (args[i].equals("--session") && i + 1 < args.length) {
+                session = new File(args[++i]);
+            } else if (args[i].equals("--max-mean-error-mm") && i + 1 < args.length) {
+                maxMeanErrorMm = Float.parseFloat(args[++i]);
+            } else {
+                reference = null;
+                break;
+            }
+        }
+        if (reference == null || session == null) {
+            System.err.println(
+                    "usage: session_compare --reference <session dir> --session <session dir>"
+                            + " [--max-mean-error-mm <mm>]");
+            System.exit(2);
+        }
+
+        Map<Long, float[]> referenceDepths = readDepths(reference);
+        Map<Long, float[]> depths = readDepths(session);
+        Errors all = new Errors("all");
+        Errors inferred = new Errors("inferred");
+        Errors reused = new Errors("reused");
+        int missing = 0;
+        for (Map.Entry<Long, float[]> entry : depths.entrySet()) {
+            float[] expected = referenceDepths.get(entry.getKey());
+            if (expected == null) {
+                continue;
+            }
+            float[] actual = entry.getValue();
+            all.add(expected, actual);
+            (actual[2] != 0f ? reused : inferred).add(expected, actual);
+        }
+        for (Long timestampNs : referenceDepths.keySet()) {
+            if (!depths.containsKey(timestampNs)) {
+                ++missing;
+            }
+        }
+
+        System.out.println(
+                referenceDepths.size() + " reference frames, " + depths.size() + " frames; "
+                        + missing + " only in the reference, "
+                        + (depths.size() - all.size) + " only in the session");
+        all.print();
+        inferred.print();
+        reused.print();
+        if (!Float.isNaN(maxMeanErrorMm) && all.getMeanMm() > maxMeanErrorMm) {
+            System.err.println(
+                    String.format(
+                            Locale.US,
+                            "Mean error %.2f mm exceeds %.2f mm",
+                            all.getMeanMm(),
+                            maxMeanErrorMm));
+            System.exit(1);
+        }
+    }
+
+    // Left depth, right depth and reused flag of every depth record with both depths, by
+    // timestamp.
+    private static Map<Long, float[]> readDepths(File directory) throws IOException {
+        Map<Long, float[]> depths = new HashMap<>();
+        SessionReader reader = new SessionReader(directory);
+        while (reader.next()) {
+            if (reader.getType() != SessionRecorder.TYPE_DEPTH) {
+                continue;
+            }
+            float left = reader.getValue(0);
+            float right = reader.getValue(1);
+            if (Float.isNaN(left) || Float.isNaN(right) || left <= 0 || right <= 0) {
+                continue;
+            }
+            depths.put(reader.getTimestampNs(), new float[] {left, right, reader.getValue(2)});
+        }
+        return depths;
+    }
+}
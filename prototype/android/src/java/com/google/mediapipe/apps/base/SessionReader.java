@@ -0,0 +1,94 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Iterates the records of a session written by {@link SessionRecorder}.
+ *
+ * <p>Segments are memory-mapped read-only one at a time and the accessors read straight from the
+ * mapping, so iterating a session copies nothing. Records come back in the order they were
+ * reserved, which across recording threads is only roughly timestamp order.
+ *
+ * <pre>
+ *   SessionReader reader = new SessionReader(directory);
+ *   while (reader.next()) {
+ *     if (reader.getType() == SessionRecorder.TYPE_DEPTH) { ... reader.getValue(0) ... }
+ *   }
+ * </pre>
+ */
+public class SessionReader {
+    private final File[] segmentFiles;
+    private int segmentIndex = -1;
+    private MappedByteBuffer segment;
+    // Byte offset of the current record in the current segment.
+    private int offset;
+
+    public SessionReader(File directory) throws IOException {
+        File[] files =
+                directory.listFiles(
+                        (dir, name) ->
+                                name.startsWith(SessionRecorder.SEGMENT_PREFIX)
+                                        && name.endsWith(SessionRecorder.SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("Not a session directory: " + directory);
+        }
+        // Segment numbers are zero-padded, so name order is recording order.
+        Arrays.sort(files);
+        segmentFiles = files;
+    }
+
+    /** Advances to the next written record; returns {@code false} at the end of the session. */
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment != null) {
+                offset += SessionRecorder.RECORD_SIZE;
+                // Skip records that were reserved but never written, e.g. the unused tail.
+                while (offset + SessionRecorder.RECORD_SIZE <= segment.limit()) {
+                    if (segment.getShort(offset + SessionRecorder.OFFSET_TYPE) != 0) {
+                        return true;
+                    }
+                    offset += SessionRecorder.RECORD_SIZE;
+                }
+            }
+            if (segmentIndex + 1 >= segmentFiles.length) {
+                segment = null;
+                return false;
+            }
+            openSegment(++segmentIndex);
+        }
+    }
+
+    private void openSegment(int index) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFiles[index], "r")) {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        offset = -SessionRecorder.RECORD_SIZE;
+    }
+
+    public long getTimestampNs() {
+        return segment.getLong(offset + SessionRecorder.OFFSET_TIMESTAMP);
+    }
+
+    public short getType() {
+        return segment.getShort(offset + SessionRecorder.OFFSET_TYPE);
+    }
+
+    public int getIndex() {
+        return segment.getShort(offset + SessionRecorder.OFFSET_INDEX) & 0xffff;
+    }
+
+    public int getCount() {
+        return segment.getInt(offset + SessionRecorder.OFFSET_COUNT);
+    }
+
+    public float getValue(int i) {
+        return segment.getFloat(offset + SessionRecorder.OFFSET_VALUES + 4 * i);
+    }
+}
@@ -0,0 +1,264 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only recorder of timestamped samples into memory-mapped segment files.
+ *
+ * <p>Every sample is one fixed-width record of {@link #RECORD_SIZE} bytes:
+ *
+ * <pre>
+ *   offset  0  int64    timestamp in nanoseconds
+ *   offset  8  int16    record type (TYPE_*), 0 marks a record that was never written
+ *   offset 10  int16    index, e.g. the landmark index within its frame
+ *   offset 12  int32    count, e.g. the number of landmarks in the frame
+ *   offset 16  float32  value[0..3]
+ * </pre>
+ *
+ * All fields are little-endian. Records are reserved with a single atomic increment, so any
+ * number of threads may record concurrently, and are written with absolute puts into the mapped
+ * segment without allocating. Segments are named {@code segment-NNNNN.bin} and read back with
+ * {@link SessionReader}. The next segment is mapped ahead of time and replaced ones are flushed on
+ * a background thread, so a roll-over only swaps buffers on the recording thread.
+ */
+public class SessionRecorder {
+    public static final int RECORD_SIZE = 32;
+    public static final int VALUE_COUNT = 4;
+
+    /**
+     * Fused depth: value[0] left, value[1] right, in mm. In sessions written by iris_batch_cpu,
+     * value[2] is 1 if the frame reused the previous iris landmarks instead of running the model.
+     */
+    public static final short TYPE_DEPTH = 1;
+    /** One landmark of a frame: value[0..2] normalized x, y, z. */
+    public static final short TYPE_LANDMARK = 2;
+    /** Device orientation: value[0] pitch, value[1] roll, value[2] heading, in degrees. */
+    public static final short TYPE_ORIENTATION = 3;
+    /** Raw orientation sensor sample: index is the sensor type, value[0..3] the sensor values. */
+    public static final short TYPE_SENSOR = 4;
+
+    static final int OFFSET_TIMESTAMP = 0;
+    static final int OFFSET_TYPE = 8;
+    static final int OFFSET_INDEX = 10;
+    static final int OFFSET_COUNT = 12;
+    static final int OFFSET_VALUES = 16;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".bin";
+
+    private static final int DEFAULT_RECORDS_PER_SEGMENT = 128 * 1024;
+
+    /** A mapped segment and its number, published together. */
+    private static final class Segment {
+        final long number;
+        final File file;
+        final MappedByteBuffer buffer;
+
+        Segment(long number, File file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private final File directory;
+    private final int recordsPerSegment;
+
+    private final AtomicLong nextRecord = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    // The two most recent segments, indexed by segment number & 1, so writers that reserved a
+    // record just before a roll-over can still finish it.
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(2);
+    private final Object rollLock = new Object();
+    // Maps the segment after the latest one and flushes replaced ones.
+    private final ExecutorService segmentExecutor =
+            Executors.newSingleThreadExecutor(
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "SessionRecorder");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+    // Guarded by rollLock.
+    private long latestSegment;
+    private Future<Segment> nextSegment;
+    private volatile boolean closed;
+
+    public SessionRecorder(File directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT);
+    }
+
+    public SessionRecorder(File directory, int recordsPerSegment) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create session directory " + directory);
+        }
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        synchronized (rollLock) {
+            segments.set(0, mapSegment(0));
+            nextSegment = segmentExecutor.submit(() -> mapSegment(1));
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void recordDepth(long timestampNs, float leftDepthMm, float rightDepthMm) {
+        write(nextRecord.getAndIncrement(), timestampNs, TYPE_DEPTH, 0, 0, leftDepthMm, rightDepthMm, 0f, 0f);
+    }
+
+    public void recordOrientation(long timestampNs, float pitch, float roll, float heading) {
+        write(nextRecord.getAndIncrement(), timestampNs, TYPE_ORIENTATION, 0, 0, pitch, roll, heading, 0f);
+    }
+
+    public void recordSensor(long timestampNs, int sensorType, float x, float y, float z, float w) {
+        write(nextRecord.getAndIncrement(), timestampNs, TYPE_SENSOR, sensorType, 0, x, y, z, w);
+    }
+
+    /**
+     * Records {@code count} landmarks stored as x/y/z triples in {@code coordinates}, e.g. the
+     * backing array of a {@link LandmarkDecoder}.
+     */
+    public void recordLandmarks(long timestampNs, float[] coordinates, int count) {
+        long first = nextRecord.getAndAdd(count);
+        for (int i = 0; i < count; ++i) {
+            int base = i * LandmarkDecoder.STRIDE;
+            write(first + i, timestampNs, TYPE_LANDMARK, i, count,
+                    coordinates[base], coordinates[base + 1], coordinates[base + 2], 0f);
+        }
+    }
+
+    private void write(
+            long record,
+            long timestampNs,
+            short type,
+            int index,
+            int count,
+            float v0, float v1, float v2, float v3) {
+        if (closed) {
+            return;
+        }
+        MappedByteBuffer buffer = segmentFor(record / recordsPerSegment);
+        if (buffer == null) {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+        int offset = (int) (record % recordsPerSegment) * RECORD_SIZE;
+        buffer.putLong(offset + OFFSET_TIMESTAMP, timestampNs);
+        buffer.putShort(offset + OFFSET_INDEX, (short) index);
+        buffer.putInt(offset + OFFSET_COUNT, count);
+        buffer.putFloat(offset + OFFSET_VALUES, v0);
+        buffer.putFloat(offset + OFFSET_VALUES + 4, v1);
+        buffer.putFloat(offset + OFFSET_VALUES + 8, v2);
+        buffer.putFloat(offset + OFFSET_VALUES + 12, v3);
+        // The type goes last so a reader never sees a half-written record as valid.
+        buffer.putShort(offset + OFFSET_TYPE, type);
+    }
+
+    private MappedByteBuffer segmentFor(long segment) {
+        int slot = (int) (segment & 1);
+        // Fast path: the buffer and its number are read together.
+        Segment current = segments.get(slot);
+        if (current != null && current.number == segment) {
+            return current.buffer;
+        }
+        synchronized (rollLock) {
+            while (latestSegment < segment && !closed) {
+                if (!roll()) {
+                    break;
+                }
+            }
+            current = segments.get(slot);
+            if (current != null && current.number == segment) {
+                return current.buffer;
+            }
+            // Reserved so long ago that its segment has already been released, or the next segment
+            // could not be mapped.
+            return null;
+        }
+    }
+
+    // Publishes the segment mapped ahead of time, and has the executor map the one after it and
+    // flush the segment it replaces. Returns false if there is none. Called with rollLock held.
+    private boolean roll() {
+        Segment next;
+        try {
+            next = nextSegment.get();
+        } catch (ExecutionException e) {
+            closed = true;
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        int slot = (int) (next.number & 1);
+        Segment replaced = segments.get(slot);
+        segments.set(slot, next);
+        latestSegment = next.number;
+        nextSegment = segmentExecutor.submit(() -> mapSegment(next.number + 1));
+        if (replaced != null) {
+            // The buffer is unmapped once the executor and any late writer drop it.
+            segmentExecutor.execute(replaced.buffer::force);
+        }
+        return true;
+    }
+
+    private Segment mapSegment(long segment) throws IOException {
+        File file = new File(directory, segmentName(segment));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            MappedByteBuffer buffer =
+                    raf.getChannel()
+                            .map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(segment, file, buffer);
+        }
+    }
+
+    static String segmentName(long segment) {
+        return String.format(Locale.US, "%s%05d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX);
+    }
+
+    /** Records lost because their segment could not be mapped. */
+    public long getDroppedRecordCount() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * Stops recording and flushes the mapped segments to disk. The segment mapped ahead of time
+     * is deleted once mapping it finishes, since it holds no records.
+     */
+    public void close() {
+        closed = true;
+        synchronized (rollLock) {
+            for (int i = 0; i < segments.length(); ++i) {
+                Segment segment = segments.get(i);
+                if (segment != null) {
+                    segment.buffer.force();
+                }
+            }
+            Future<Segment> unused = nextSegment;
+            segmentExecutor.execute(
+                    () -> {
+                        try {
+                            unused.get().file.delete();
+                        } catch (ExecutionException | InterruptedException e) {
+                            // Nothing was mapped, or the executor is going away.
+                        }
+                    });
+            segmentExecutor.shutdown();
+        }
+    }
+}
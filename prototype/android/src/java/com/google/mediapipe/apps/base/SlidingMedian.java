@@ -0,0 +1,202 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Median of the last {@code window} floats added, updated in O(log window) per value.
+ *
+ * <p>The window is a ring of values. Its lower half sits in a max-heap and its upper half in a
+ * min-heap, both holding ring slots rather than values, and every slot knows its heap position.
+ * That lets the value leaving the window be removed from the middle of its heap directly instead
+ * of lazily. Nothing is boxed or allocated after construction. Not thread-safe.
+ */
+public class SlidingMedian {
+    private final float[] values;
+    // Max-heap of the lower half and min-heap of the upper half, as ring slots. The lower half has
+    // as many values as the upper half or one more.
+    private final int[] lower;
+    private final int[] upper;
+    private int lowerSize;
+    private int upperSize;
+    // Heap position of each ring slot: i for lower[i], ~i for upper[i].
+    private final int[] positions;
+    // Slot the next value goes to; when the window is full, the oldest value's slot.
+    private int next;
+    private int size;
+
+    public SlidingMedian(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must hold a value: " + window);
+        }
+        values = new float[window];
+        lower = new int[window];
+        upper = new int[window];
+        positions = new int[window];
+    }
+
+    public int getWindow() {
+        return values.length;
+    }
+
+    /** Values currently in the window. */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        lowerSize = 0;
+        upperSize = 0;
+        next = 0;
+        size = 0;
+    }
+
+    /** Adds {@code value}, dropping the oldest value once the window is full. Must not be NaN. */
+    public void add(float value) {
+        int slot = next;
+        if (size == values.length) {
+            remove(slot);
+            rebalance();
+        } else {
+            ++size;
+        }
+        next = slot + 1 == values.length ? 0 : slot + 1;
+        values[slot] = value;
+        if (lowerSize == 0 || value <= values[lower[0]]) {
+            lower[lowerSize] = slot;
+            positions[slot] = lowerSize;
+            siftUpLower(lowerSize++);
+        } else {
+            upper[upperSize] = slot;
+            positions[slot] = ~upperSize;
+            siftUpUpper(upperSize++);
+        }
+        rebalance();
+    }
+
+    /** Median of the window, averaging the middle two of an even count; NaN while empty. */
+    public float getMedian() {
+        if (lowerSize == 0) {
+            return Float.NaN;
+        }
+        if (lowerSize > upperSize) {
+            return values[lower[0]];
+        }
+        return 0.5f * (values[lower[0]] + values[upper[0]]);
+    }
+
+    private void remove(int slot) {
+        int position = positions[slot];
+        if (position >= 0) {
+            int last = lower[--lowerSize];
+            if (position < lowerSize) {
+                lower[position] = last;
+                positions[last] = position;
+                siftDownLower(siftUpLower(position));
+            }
+        } else {
+            position = ~position;
+            int last = upper[--upperSize];
+            if (position < upperSize) {
+                upper[position] = last;
+                positions[last] = ~position;
+                siftDownUpper(siftUpUpper(position));
+            }
+        }
+    }
+
+    private void rebalance() {
+        if (lowerSize > upperSize + 1) {
+            int slot = lower[0];
+            remove(slot);
+            upper[upperSize] = slot;
+            positions[slot] = ~upperSize;
+            siftUpUpper(upperSize++);
+        } else if (upperSize > lowerSize) {
+            int slot = upper[0];
+            remove(slot);
+            lower[lowerSize] = slot;
+            positions[slot] = lowerSize;
+            siftUpLower(lowerSize++);
+        }
+    }
+
+    // The sift methods return the position the moved slot ends up at.
+
+    private int siftUpLower(int position) {
+        int slot = lower[position];
+        float value = values[slot];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (values[lower[parent]] >= value) {
+                break;
+            }
+            lower[position] = lower[parent];
+            positions[lower[position]] = position;
+            position = parent;
+        }
+        lower[position] = slot;
+        positions[slot] = position;
+        return position;
+    }
+
+    private int siftDownLower(int position) {
+        int slot = lower[position];
+        float value = values[slot];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= lowerSize) {
+                break;
+            }
+            if (child + 1 < lowerSize && values[lower[child + 1]] > values[lower[child]]) {
+                ++child;
+            }
+            if (values[lower[child]] <= value) {
+                break;
+            }
+            lower[position] = lower[child];
+            positions[lower[position]] = position;
+            position = child;
+        }
+        lower[position] = slot;
+        positions[slot] = position;
+        return position;
+    }
+
+    private int siftUpUpper(int position) {
+        int slot = upper[position];
+        float value = values[slot];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (values[upper[parent]] <= value) {
+                break;
+            }
+            upper[position] = upper[parent];
+            positions[upper[position]] = ~position;
+            position = parent;
+        }
+        upper[position] = slot;
+        positions[slot] = ~position;
+        return position;
+    }
+
+    private int siftDownUpper(int position) {
+        int slot = upper[position];
+        float value = values[slot];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= upperSize) {
+                break;
+            }
+            if (child + 1 < upperSize && values[upper[child + 1]] < values[upper[child]]) {
+                ++child;
+            }
+            if (values[upper[child]] >= value) {
+                break;
+            }
+            upper[position] = upper[child];
+            positions[upper[position]] = ~position;
+            position = child;
+        }
+        upper[position] = slot;
+        positions[slot] = ~position;
+        return position;
+    }
+}
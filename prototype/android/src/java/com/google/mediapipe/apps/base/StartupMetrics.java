@@ -0,0 +1,64 @@
+package com.google.mediapipe.apps.base;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time from activity start to the milestones of a cold start, up to the first depth value.
+ *
+ * <p>Each milestone keeps the first time it was reached; later calls to {@link #mark} only cost a
+ * volatile read, so they can stay on per-frame paths. Milestones may be marked from any thread.
+ */
+public class StartupMetrics {
+    public static final int NATIVE_LOADED = 0;
+    public static final int GRAPH_READY = 1;
+    public static final int CAMERA_STARTED = 2;
+    public static final int FIRST_FRAME = 3;
+    public static final int FIRST_DEPTH = 4;
+    private static final String[] NAMES = {
+        "nativeLoaded", "graphReady", "cameraStarted", "firstFrame", "firstDepth"
+    };
+
+    private final FrameRateGovernor.Clock clock;
+    private final long startNs;
+    // Nanoseconds after startNs plus one, so 0 means not reached.
+    private final AtomicLongArray reached = new AtomicLongArray(NAMES.length);
+
+    public StartupMetrics(FrameRateGovernor.Clock clock) {
+        this.clock = clock;
+        this.startNs = clock.nanoTime();
+    }
+
+    /** Records the milestone; returns whether this was the first time it was reached. */
+    public boolean mark(int milestone) {
+        if (reached.get(milestone) != 0) {
+            return false;
+        }
+        return reached.compareAndSet(milestone, 0, clock.nanoTime() - startNs + 1);
+    }
+
+    /** Milliseconds from start to the milestone, or -1 if it was not reached yet. */
+    public float getMillis(int milestone) {
+        long value = reached.get(milestone);
+        return value != 0 ? (value - 1) / 1e6f : -1;
+    }
+
+    public static String getName(int milestone) {
+        return NAMES[milestone];
+    }
+
+    /** Appends e.g. {@code startup nativeLoaded=85ms graphReady=240ms ... firstDepth=-}. */
+    public StringBuilder appendSummary(StringBuilder out) {
+        out.append("startup");
+        for (int i = 0; i < NAMES.length; ++i) {
+            out.append(' ').append(NAMES[i]).append('=');
+            float millis = getMillis(i);
+            if (millis < 0) {
+                out.append('-');
+            } else {
+                out.append(String.format(Locale.US, "%.0fms", millis));
+            }
+        }
+        return out;
+    }
+}
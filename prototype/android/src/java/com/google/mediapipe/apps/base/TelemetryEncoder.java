@@ -0,0 +1,156 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Packs fused samples (timestamp, left/right depth, pitch/roll/heading) into compact binary
+ * frames for {@link TelemetryExporter}.
+ *
+ * <p>A frame is a fixed header followed by the delta-encoded samples; all fields are
+ * little-endian:
+ *
+ * <pre>
+ *   offset  0  int32    magic "IRTF"
+ *   offset  4  int16    version
+ *   offset  6  int16    sample count
+ *   offset  8  int32    frame sequence number, so a receiver can tell lost frames
+ *   offset 12  int32    samples the exporter dropped since the previous frame
+ *   offset 16  int64    timestamp of the first sample in microseconds
+ *   offset 24  int32    payload length in bytes
+ *   offset 28  payload  per sample, zigzag varints of the difference to the previous sample:
+ *                       timestamp (us), left and right depth (0.01 cm), pitch, roll and heading
+ *                       (0.01 degrees)
+ * </pre>
+ *
+ * The first sample of a frame is encoded against zero, so every frame decodes on its own. Unknown
+ * values ({@code NaN}) are encoded as {@link #UNKNOWN}. At 30 Hz a sample typically takes 7 to 12
+ * bytes instead of the 28 of its raw fields. Frames are built in one reused buffer without
+ * allocating; an encoder is used by one thread at a time.
+ */
+public class TelemetryEncoder {
+    public static final int MAGIC = 0x46545249; // "IRTF" in little-endian order
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 28;
+    public static final int VALUE_COUNT = 5;
+    /** Quantized value standing for {@code NaN}. */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    /** Quantization steps: depth in 0.01 cm, angles in 0.01 degrees. */
+    public static final float DEPTH_SCALE = 100f;
+    public static final float ANGLE_SCALE = 100f;
+
+    static final int OFFSET_COUNT = 6;
+    static final int OFFSET_SEQUENCE = 8;
+    static final int OFFSET_DROPPED = 12;
+    static final int OFFSET_TIMESTAMP = 16;
+    static final int OFFSET_PAYLOAD_LENGTH = 24;
+
+    // A zigzag varint of a 64-bit value takes at most 10 bytes.
+    private static final int MAX_SAMPLE_SIZE = 10 * (1 + VALUE_COUNT);
+
+    private final int maxSamples;
+    private final byte[] buffer;
+    private int length = HEADER_SIZE;
+    private int count;
+    private int sequence;
+
+    private long previousTimestampUs;
+    private final long[] previousValues = new long[VALUE_COUNT];
+
+    public TelemetryEncoder(int maxSamples) {
+        if (maxSamples < 1 || maxSamples > 0xffff) {
+            throw new IllegalArgumentException("Samples per frame out of range: " + maxSamples);
+        }
+        this.maxSamples = maxSamples;
+        buffer = new byte[HEADER_SIZE + maxSamples * MAX_SAMPLE_SIZE];
+    }
+
+    /** Appends a sample to the open frame; returns true once the frame is full. */
+    public boolean add(
+            long timestampUs,
+            float leftDepthCm,
+            float rightDepthCm,
+            float pitch,
+            float roll,
+            float heading) {
+        if (count == maxSamples) {
+            throw new IllegalStateException("Frame is full");
+        }
+        if (count == 0) {
+            putLong(OFFSET_TIMESTAMP, timestampUs);
+            previousTimestampUs = timestampUs;
+            for (int i = 0; i < VALUE_COUNT; ++i) {
+                previousValues[i] = 0;
+            }
+        }
+        putZigzag(timestampUs - previousTimestampUs);
+        previousTimestampUs = timestampUs;
+        putValue(0, quantize(leftDepthCm, DEPTH_SCALE));
+        putValue(1, quantize(rightDepthCm, DEPTH_SCALE));
+        putValue(2, quantize(pitch, ANGLE_SCALE));
+        putValue(3, quantize(roll, ANGLE_SCALE));
+        putValue(4, quantize(heading, ANGLE_SCALE));
+        return ++count == maxSamples;
+    }
+
+    /** Samples in the open frame. */
+    public int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * Closes the open frame and returns its length; the frame is {@link #getBuffer()}{@code [0,
+     * length)} until the next {@link #add}.
+     *
+     * @param droppedSamples samples lost since the previous frame, reported to receivers
+     */
+    public int finish(int droppedSamples) {
+        putInt(0, MAGIC);
+        buffer[4] = (byte) VERSION;
+        buffer[5] = (byte) (VERSION >>> 8);
+        buffer[OFFSET_COUNT] = (byte) count;
+        buffer[OFFSET_COUNT + 1] = (byte) (count >>> 8);
+        putInt(OFFSET_SEQUENCE, sequence++);
+        putInt(OFFSET_DROPPED, droppedSamples);
+        putInt(OFFSET_PAYLOAD_LENGTH, length - HEADER_SIZE);
+        int frameLength = length;
+        length = HEADER_SIZE;
+        count = 0;
+        return frameLength;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    static int quantize(float value, float scale) {
+        if (Float.isNaN(value)) {
+            return UNKNOWN;
+        }
+        // Clamped so no real value collides with UNKNOWN.
+        return (int) Math.max(UNKNOWN + 1L, Math.min(Integer.MAX_VALUE, Math.round(value * scale)));
+    }
+
+    private void putValue(int index, int quantized) {
+        putZigzag(quantized - previousValues[index]);
+        previousValues[index] = quantized;
+    }
+
+    private void putZigzag(long value) {
+        long bits = (value << 1) ^ (value >> 63);
+        while ((bits & ~0x7fL) != 0) {
+            buffer[length++] = (byte) ((bits & 0x7f) | 0x80);
+            bits >>>= 7;
+        }
+        buffer[length++] = (byte) bits;
+    }
+
+    private void putInt(int offset, int value) {
+        for (int i = 0; i < 4; ++i) {
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private void putLong(int offset, long value) {
+        for (int i = 0; i < 8; ++i) {
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams fused samples to other processes on the device over a loopback TCP socket, batched
+ * into {@link TelemetryEncoder} frames.
+ *
+ * <p>{@link #offer} copies a sample into a bounded queue and never blocks. When the queue is full
+ * the sample is dropped, and the next frame's header reports the count. A single "telemetry"
+ * thread drains the queue. It closes a frame once it holds {@code maxSamplesPerFrame} samples or
+ * its first sample is {@code flushIntervalMs} old, then writes it to every connected client
+ * without blocking. Each client has a bounded send buffer. If a client stops reading, frames that
+ * no longer fit are dropped for that client only; its receiver sees a gap in the sequence numbers.
+ * {@link #offer} must be called from one thread at a time; the counters may be read from any
+ * thread.
+ */
+public class TelemetryExporter {
+    public static final int DEFAULT_MAX_SAMPLES_PER_FRAME = 16;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+    // Samples the queue holds; a power of two, covering several flush intervals at 30 Hz.
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int QUEUE_MASK = QUEUE_CAPACITY - 1;
+    // Bytes queued per client before its frames are dropped; about a second of frames.
+    private static final int CLIENT_BUFFER_BYTES = 16 * 1024;
+
+    private final int requestedPort;
+    private final long flushIntervalMs;
+    private final TelemetryEncoder encoder;
+
+    // Single-producer/single-consumer queue of samples; the producer only advances tail, the
+    // telemetry thread only head.
+    private final long[] timestamps = new long[QUEUE_CAPACITY];
+    private final float[] values = new float[QUEUE_CAPACITY * TelemetryEncoder.VALUE_COUNT];
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Only written by the producer.
+    private volatile long droppedSamples;
+    // Only written by the telemetry thread.
+    private volatile long sentFrames;
+    private volatile long droppedFrames;
+    private volatile int clientCount;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+
+    // Only touched by the telemetry thread.
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private long reportedDroppedSamples;
+    private long frameStartNs;
+
+    public TelemetryExporter(int port) {
+        this(port, DEFAULT_MAX_SAMPLES_PER_FRAME, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    /** @param port loopback port to listen on; 0 picks a free one, see {@link #getPort} */
+    public TelemetryExporter(int port, int maxSamplesPerFrame, long flushIntervalMs) {
+        this.requestedPort = port;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.encoder = new TelemetryEncoder(maxSamplesPerFrame);
+    }
+
+    /** Starts listening on the loopback interface. */
+    public void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.socket().bind(new InetSocketAddress(InetAddress.getByName(null), requestedPort));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        running = true;
+        thread = new Thread(this::run, "telemetry");
+        thread.start();
+    }
+
+    /** Stops the telemetry thread and disconnects the clients; unsent samples are lost. */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Port the exporter listens on, or -1 before {@link #start}. */
+    public int getPort() {
+        return server != null ? server.socket().getLocalPort() : -1;
+    }
+
+    /** Queues one fused sample; returns false if it was dropped. */
+    public boolean offer(
+            long timestampUs,
+            float leftDepthCm,
+            float rightDepthCm,
+            float pitch,
+            float roll,
+            float heading) {
+        long t = tail.get();
+        if (t - head.get() >= QUEUE_CAPACITY) {
+            ++droppedSamples;
+            return false;
+        }
+        int i = (int) t & QUEUE_MASK;
+        int v = i * TelemetryEncoder.VALUE_COUNT;
+        timestamps[i] = timestampUs;
+        values[v] = leftDepthCm;
+        values[v + 1] = rightDepthCm;
+        values[v + 2] = pitch;
+        values[v + 3] = roll;
+        values[v + 4] = heading;
+        tail.set(t + 1);
+        return true;
+    }
+
+    public long getDroppedSampleCount() {
+        return droppedSamples;
+    }
+
+    /** Frames dropped for clients whose send buffer was full, summed over the clients. */
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    public StringBuilder appendSummary(StringBuilder out) {
+        return out.append("telemetry port=")
+                .append(getPort())
+                .append(" clients=")
+                .append(clientCount)
+                .append(" frames=")
+                .append(sentFrames)
+                .append(" dropped samples=")
+                .append(droppedSamples)
+                .append(" dropped frames=")
+                .append(droppedFrames);
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(selectTimeoutMs());
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        send(key);
+                    }
+                }
+                drain();
+                if (encoder.getSampleCount() > 0
+                        && System.nanoTime() - frameStartNs >= flushIntervalMs * 1_000_000L) {
+                    flush();
+                }
+            }
+        } catch (IOException e) {
+            // The selector itself failed; nothing left to serve.
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            clientCount = 0;
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway.
+            }
+        }
+    }
+
+    // Wakes up in time for the open frame's deadline, and a few times per interval otherwise so a
+    // new sample does not wait much longer than the interval.
+    private long selectTimeoutMs() {
+        if (encoder.getSampleCount() == 0) {
+            return Math.max(1, flushIntervalMs / 4);
+        }
+        long remainingNs = frameStartNs + flushIntervalMs * 1_000_000L - System.nanoTime();
+        return Math.max(1, remainingNs / 1_000_000L);
+    }
+
+    private void drain() {
+        long h = head.get();
+        long t = tail.get();
+        for (; h < t; ++h) {
+            int i = (int) h & QUEUE_MASK;
+            int v = i * TelemetryEncoder.VALUE_COUNT;
+            if (encoder.getSampleCount() == 0) {
+                frameStartNs = System.nanoTime();
+            }
+            boolean full =
+                    encoder.add(
+                            timestamps[i],
+                            values[v],
+                            values[v + 1],
+                            values[v + 2],
+                            values[v + 3],
+                            values[v + 4]);
+            head.set(h + 1);
+            if (full) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        long dropped = droppedSamples;
+        int length =
+                encoder.finish((int) Math.min(Integer.MAX_VALUE, dropped - reportedDroppedSamples));
+        reportedDroppedSamples = dropped;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof ByteBuffer)) {
+                continue;
+            }
+            ByteBuffer out = (ByteBuffer) key.attachment();
+            if (out.remaining() < length) {
+                ++droppedFrames;
+                continue;
+            }
+            out.put(encoder.getBuffer(), 0, length);
+            send(key);
+        }
+        ++sentFrames;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(CLIENT_BUFFER_BYTES));
+        ++clientCount;
+    }
+
+    // Writes what the client takes without blocking and waits for it to take more if needed.
+    private void send(SelectionKey key) {
+        ByteBuffer out = (ByteBuffer) key.attachment();
+        out.flip();
+        try {
+            ((SocketChannel) key.channel()).write(out);
+        } catch (IOException e) {
+            closeClient(key);
+            return;
+        }
+        out.compact();
+        key.interestOps(
+                out.position() > 0
+                        ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ);
+    }
+
+    // Clients have nothing to say; reading only notices when they hang up.
+    private void read(SelectionKey key) {
+        discard.clear();
+        try {
+            if (((SocketChannel) key.channel()).read(discard) < 0) {
+                closeClient(key);
+            }
+        } catch (IOException e) {
+            closeClient(key);
+        }
+    }
+
+    private void closeClient(SelectionKey key) {
+        closeQuietly(key);
+        --clientCount;
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+}
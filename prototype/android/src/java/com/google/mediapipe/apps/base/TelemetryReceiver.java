@@ -0,0 +1,159 @@
+package com.google.mediapipe.apps.base;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Reference receiver for {@link TelemetryExporter}: connects to the exporter, decodes its frames
+ * and prints one CSV row per sample. Lost frames and samples dropped by the exporter are reported
+ * on stderr.
+ *
+ * <pre>
+ *   adb forward tcp:7007 tcp:7007
+ *   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:telemetry_receiver -- \
+ *       [--host 127.0.0.1] [--port 7007] [--frames <n>]
+ * </pre>
+ *
+ * The port is the one set as "telemetryPort" in the app's manifest metadata.
+ */
+public class TelemetryReceiver {
+    private static final int DEFAULT_PORT = 7007;
+
+    public static void main(String[] args) throws IOException {
+        String host = "127.0.0.1";
+        int port = DEFAULT_PORT;
+        long maxFrames = Long.MAX_VALUE;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--frames") && i + 1 < args.length) {
+                maxFrames = Long.parseLong(args[++i]);
+            } else {
+                System.err.println(
+                        "usage: telemetry_receiver [--host <host>] [--port <port>] [--frames <n>]");
+                System.exit(2);
+            }
+        }
+        try (Socket socket = new Socket(host, port)) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            receive(new DataInputStream(in), maxFrames);
+        }
+    }
+
+    private static void receive(DataInputStream in, long maxFrames) throws IOException {
+        PrintStream out = System.out;
+        out.println("timestamp_us,left_depth_cm,right_depth_cm,pitch_deg,roll_deg,heading_deg");
+        byte[] headerBytes = new byte[TelemetryEncoder.HEADER_SIZE];
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] payload = new byte[0];
+        long[] values = new long[TelemetryEncoder.VALUE_COUNT];
+        long frames = 0;
+        long samples = 0;
+        long lostFrames = 0;
+        long droppedSamples = 0;
+        int expectedSequence = 0;
+        while (frames < maxFrames) {
+            try {
+                in.readFully(headerBytes);
+            } catch (EOFException e) {
+                break;
+            }
+            if (header.getInt(0) != TelemetryEncoder.MAGIC) {
+                throw new IOException("Not a telemetry frame");
+            }
+            if (header.getShort(4) != TelemetryEncoder.VERSION) {
+                throw new IOException("Unsupported telemetry version " + header.getShort(4));
+            }
+            int count = header.getShort(TelemetryEncoder.OFFSET_COUNT) & 0xffff;
+            int sequence = header.getInt(TelemetryEncoder.OFFSET_SEQUENCE);
+            int dropped = header.getInt(TelemetryEncoder.OFFSET_DROPPED);
+            long timestampUs = header.getLong(TelemetryEncoder.OFFSET_TIMESTAMP);
+            int length = header.getInt(TelemetryEncoder.OFFSET_PAYLOAD_LENGTH);
+            if (length > payload.length) {
+                payload = new byte[length];
+            }
+            in.readFully(payload, 0, length);
+
+            if (frames > 0 && sequence != expectedSequence) {
+                int lost = sequence - expectedSequence;
+                lostFrames += lost;
+                System.err.println("lost " + lost + " frame(s) before frame " + sequence);
+            }
+            expectedSequence = sequence + 1;
+            if (dropped > 0) {
+                droppedSamples += dropped;
+                System.err.println(
+                        "exporter dropped " + dropped + " sample(s) before frame " + sequence);
+            }
+
+            // Each sample is encoded against the previous one; the first against zero.
+            int[] position = {0};
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = 0;
+            }
+            for (int s = 0; s < count; ++s) {
+                timestampUs += readZigzag(payload, length, position);
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] += readZigzag(payload, length, position);
+                }
+                out.println(
+                        String.format(
+                                Locale.US,
+                                "%d,%s,%s,%s,%s,%s",
+                                timestampUs,
+                                format(values[0], TelemetryEncoder.DEPTH_SCALE),
+                                format(values[1], TelemetryEncoder.DEPTH_SCALE),
+                                format(values[2], TelemetryEncoder.ANGLE_SCALE),
+                                format(values[3], TelemetryEncoder.ANGLE_SCALE),
+                                format(values[4], TelemetryEncoder.ANGLE_SCALE)));
+            }
+            if (position[0] != length) {
+                throw new IOException("Frame " + sequence + " has a malformed payload");
+            }
+            ++frames;
+            samples += count;
+        }
+        out.flush();
+        System.err.println(
+                frames
+                        + " frames, "
+                        + samples
+                        + " samples, "
+                        + lostFrames
+                        + " frames lost, "
+                        + droppedSamples
+                        + " samples dropped by the exporter");
+    }
+
+    private static long readZigzag(byte[] buffer, int limit, int[] position) throws IOException {
+        long bits = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= limit) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buffer[position[0]++];
+            bits |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return (bits >>> 1) ^ -(bits & 1);
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    private static String format(long quantized, float scale) {
+        if (quantized == TelemetryEncoder.UNKNOWN) {
+            return "nan";
+        }
+        return String.format(Locale.US, "%.2f", quantized / scale);
+    }
+}
@@ -0,0 +1,80 @@
+package com.google.mediapipe.apps.base;
+
+import com.google.mediapipe.framework.GlSyncToken;
+import com.google.mediapipe.framework.TextureFrame;
+
+import java.util.Queue;
+
+/**
+ * Passes a converter frame on to the graph and tells the {@link BufferPoolSizer} when the graph
+ * releases it. Instances are recycled through {@code pool} so tracking does not allocate.
+ */
+final class TrackedTextureFrame implements TextureFrame {
+    private final BufferPoolSizer sizer;
+    private final Queue<TrackedTextureFrame> pool;
+    private volatile TextureFrame frame;
+
+    TrackedTextureFrame(BufferPoolSizer sizer, Queue<TrackedTextureFrame> pool) {
+        this.sizer = sizer;
+        this.pool = pool;
+    }
+
+    /** Takes a tracker from {@code pool} for {@code frame}, or returns the frame itself if empty. */
+    static TextureFrame track(TextureFrame frame, Queue<TrackedTextureFrame> pool) {
+        TrackedTextureFrame tracked = pool.poll();
+        if (tracked == null) {
+            return frame;
+        }
+        tracked.frame = frame;
+        tracked.sizer.onFrameAcquired();
+        return tracked;
+    }
+
+    @Override
+    public int getTextureName() {
+        return frame.getTextureName();
+    }
+
+    @Override
+    public int getWidth() {
+        return frame.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return frame.getHeight();
+    }
+
+    @Override
+    public long getTimestamp() {
+        return frame.getTimestamp();
+    }
+
+    @Override
+    public void release() {
+        TextureFrame released = recycle();
+        if (released != null) {
+            released.release();
+        }
+    }
+
+    @Override
+    public void release(GlSyncToken syncToken) {
+        TextureFrame released = recycle();
+        if (released != null) {
+            released.release(syncToken);
+        }
+    }
+
+    // Returns the wrapped frame the first time it is called per frame, null after that.
+    private TextureFrame recycle() {
+        TextureFrame released = frame;
+        if (released == null) {
+            return null;
+        }
+        frame = null;
+        sizer.onFrameReleased();
+        pool.offer(this);
+        return released;
+    }
+}
@@ -0,0 +1,355 @@
+package com.google.mediapipe.apps.base;
+
+/**
+ * Java-side processing of the iris tracking app, independent of the camera and of Android.
+ *
+ * <p>The pipeline takes raw graph outputs (per-eye depths, landmark frames) and raw orientation
+ * sensor samples, and produces filtered depth, head pose and device orientation:
+ *
+ * <pre>
+ *   left/right depth --> DepthFusion --+--> HampelFilter --> OneEuroFilterBank --> HeadPoseSolver
+ *                                      |      HeadPoseSolver --> DepthListener, TelemetryExporter
+ *   landmarks --> IrisDepthEstimator --+--> ResolutionController (iris size)
+ *   sensor samples --> OrientationEngine -+-> unwrap --> OneEuroFilterBank --> OrientationListener
+ *                                         \-> OrientationHistory (read at each depth's frame time)
+ * </pre>
+ *
+ * The depths come either from the graph or, with {@link #setEstimateDepth}, from the landmarks.
+ * A {@link ResolutionController}, if set, follows the iris size measured in the landmarks.
+ * If set, raw inputs and filtered orientation go to a {@link SessionRecorder}, the outputs
+ * drive a {@link FrameRateGovernor}, and each filtered depth goes to a {@link TelemetryExporter}
+ * along with the device orientation at the time its frame was captured, interpolated from the
+ * {@link OrientationHistory}. The activities feed it from sensor callbacks and, through a
+ * {@link HandoffDispatcher}, from MediaPipe callbacks;
+ * {@code ReplayBenchmark} feeds it from recorded or synthetic sessions. The depth/landmark inputs
+ * and the sensor inputs may be fed from two different threads, each path from one thread at a
+ * time.
+ */
+public class TrackingPipeline {
+    /** Receives fused, filtered depth and the head pose derived from it. */
+    public interface DepthListener {
+        /**
+         * @param timestampUs packet timestamp of the frame
+         * @param headYawDegrees {@code NaN} when the depths do not form a valid triangle
+         * @param headDistanceCm {@code NaN} when the depths do not form a valid triangle
+         */
+        void onDepth(
+                long timestampUs,
+                float leftDepthCm,
+                float rightDepthCm,
+                float headYawDegrees,
+                float headDistanceCm);
+    }
+
+    /** Receives filtered device orientation in degrees. */
+    public interface OrientationListener {
+        void onOrientation(long timestampNs, float pitch, float roll, float heading);
+    }
+
+    // Sensor types accepted by onSensorSample; the values match android.hardware.Sensor.
+    public static final int SENSOR_ACCELEROMETER = 1;
+    public static final int SENSOR_MAGNETIC_FIELD = 2;
+    public static final int SENSOR_GYROSCOPE = 4;
+    public static final int SENSOR_ROTATION_VECTOR = 11;
+
+    // A few seconds of orientation samples at the gyroscope's rate.
+    public static final int ORIENTATION_HISTORY_CAPACITY = 512;
+    // Longer than the sensors' report latency, so a batch in flight does not void the orientation.
+    public static final long ORIENTATION_HOLD_NS = 250_000_000L;
+
+    // Depth changes smaller than this are never taken for outliers.
+    public static final float DEPTH_OUTLIER_MIN_DEVIATION_CM = 1f;
+
+    // Inter-pupillary distance in cm, the unit of the output depths.
+    public static final float DEFAULT_INTER_PUPILLARY_DISTANCE_CM = 6.3f;
+
+    private final DepthFusion depthFusion = new DepthFusion();
+    // Replaces depth spikes, e.g. from blinks, with the recent median before they are smoothed.
+    private final HampelFilter depthOutlierFilter =
+            new HampelFilter(
+                    2,
+                    HampelFilter.DEFAULT_WINDOW,
+                    HampelFilter.DEFAULT_THRESHOLD,
+                    DEPTH_OUTLIER_MIN_DEVIATION_CM);
+    private final OneEuroFilterBank depthFilter = new OneEuroFilterBank(2, 1.0f, 0.1f, 1.0f);
+    private final float[] depths = new float[2];
+    private final HeadPoseSolver headPoseSolver;
+
+    private final IrisDepthEstimator irisDepthEstimator = new IrisDepthEstimator();
+    private volatile boolean estimateDepth;
+    private volatile ResolutionController resolutionController;
+
+    private final OrientationEngine orientationEngine = new OrientationEngine();
+    // Smooths azimuth, pitch and roll (in that order) after unwrapping them to continuous angles.
+    private final OneEuroFilterBank orientationFilter = new OneEuroFilterBank(3, 1.0f, 0.02f, 1.0f);
+    private final float[] orientation = new float[3];
+    private final float[] lastOrientation = new float[3];
+    private final float[] unwrappedOrientation = new float[3];
+    private boolean haveOrientation = false;
+
+    private volatile DepthListener depthListener;
+    private volatile OrientationListener orientationListener;
+    private volatile FrameRateGovernor governor;
+    private volatile SessionRecorder recorder;
+    private volatile TelemetryExporter telemetryExporter;
+
+    // Written on the sensor path, read on the depth path.
+    private final OrientationHistory orientationHistory =
+            new OrientationHistory(ORIENTATION_HISTORY_CAPACITY, ORIENTATION_HOLD_NS);
+    private final float[] sensorQuaternion = new float[4];
+    private final float[] frameQuaternion = new float[4];
+    private final float[] frameOrientation = new float[3];
+    private volatile long frameClockOffsetNs;
+
+    public TrackingPipeline() {
+        this(DEFAULT_INTER_PUPILLARY_DISTANCE_CM);
+    }
+
+    public TrackingPipeline(float interPupillaryDistanceCm) {
+        headPoseSolver = new HeadPoseSolver(interPupillaryDistanceCm);
+        depthFusion.addListener(this::onFusedDepth);
+    }
+
+    public void setDepthListener(DepthListener listener) {
+        depthListener = listener;
+    }
+
+    public DepthListener getDepthListener() {
+        return depthListener;
+    }
+
+    public void setOrientationListener(OrientationListener listener) {
+        orientationListener = listener;
+    }
+
+    public void setGovernor(FrameRateGovernor governor) {
+        this.governor = governor;
+    }
+
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void setTelemetryExporter(TelemetryExporter exporter) {
+        telemetryExporter = exporter;
+    }
+
+    /**
+     * Sets what to add to frame timestamps, in nanoseconds, to put them on the sensors' clock; see
+     * {@link #getFrameClockOffsetNs(long, long, long)}.
+     */
+    public void setFrameClockOffsetNs(long offsetNs) {
+        frameClockOffsetNs = offsetNs;
+    }
+
+    /**
+     * Offset for {@link #setFrameClockOffsetNs} given a frame timestamp taken just now and the
+     * current {@code CLOCK_MONOTONIC} ({@link System#nanoTime}) and {@code CLOCK_BOOTTIME}
+     * ({@code SystemClock.elapsedRealtimeNanos}) times. Sensor events are stamped with the boot
+     * time; depending on the device, camera frames are stamped with either clock, which differ by
+     * the time spent in deep sleep.
+     */
+    public static long getFrameClockOffsetNs(
+            long frameTimestampNs, long monotonicNowNs, long boottimeNowNs) {
+        long toMonotonic = Math.abs(frameTimestampNs - monotonicNowNs);
+        long toBoottime = Math.abs(frameTimestampNs - boottimeNowNs);
+        return toMonotonic < toBoottime ? boottimeNowNs - monotonicNowNs : 0;
+    }
+
+    /**
+     * Writes the device orientation when the frame with packet timestamp {@code timestampUs} was
+     * captured, as a device-to-east-north-up quaternion (w, x, y, z), to {@code out[0..3]}. Returns
+     * false if no orientation sample is close enough. Safe to call from any thread.
+     */
+    public boolean getOrientationAtFrame(long timestampUs, float[] out) {
+        return orientationHistory.getOrientationAt(timestampUs * 1000 + frameClockOffsetNs, out);
+    }
+
+    public OrientationHistory getOrientationHistory() {
+        return orientationHistory;
+    }
+
+    /** Per-eye (left, right) validity and rejection counts of the depth outlier stage. */
+    public HampelFilter getDepthOutlierFilter() {
+        return depthOutlierFilter;
+    }
+
+    public DepthFusion getDepthFusion() {
+        return depthFusion;
+    }
+
+    /**
+     * Computes the depths from the landmarks passed to {@link #onLandmarks} once the estimator is
+     * calibrated. Depths must then no longer be fed with {@link #onLeftDepth}/{@link #onRightDepth}.
+     */
+    public void setEstimateDepth(boolean estimateDepth) {
+        this.estimateDepth = estimateDepth;
+    }
+
+    /** Focal length, image size and iris diameter used when estimating depth from landmarks. */
+    public IrisDepthEstimator getIrisDepthEstimator() {
+        return irisDepthEstimator;
+    }
+
+    /** Reports the iris size of each landmark frame; needs the estimator's image size. */
+    public void setResolutionController(ResolutionController controller) {
+        resolutionController = controller;
+    }
+
+    public ResolutionController getResolutionController() {
+        return resolutionController;
+    }
+
+    public void onLeftDepth(long timestampUs, float depthMm) {
+        depthFusion.onLeftDepth(timestampUs, depthMm);
+    }
+
+    public void onRightDepth(long timestampUs, float depthMm) {
+        depthFusion.onRightDepth(timestampUs, depthMm);
+    }
+
+    /**
+     * Records one landmark frame and estimates depth from it if enabled. {@code coordinates} holds
+     * {@code count} x/y/z triples, e.g. the backing array of a {@link LandmarkDecoder}, and is not
+     * modified.
+     */
+    public void onLandmarks(long timestampUs, float[] coordinates, int count) {
+        SessionRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.recordLandmarks(timestampUs * 1000, coordinates, count);
+        }
+        ResolutionController controller = resolutionController;
+        if (estimateDepth || controller != null) {
+            boolean haveDepth = irisDepthEstimator.estimate(coordinates, count);
+            if (estimateDepth && haveDepth) {
+                onFusedDepth(
+                        timestampUs,
+                        irisDepthEstimator.getLeftDepthMm(),
+                        irisDepthEstimator.getRightDepthMm());
+            }
+            if (controller != null) {
+                // The smaller iris decides, e.g. the one of an eye turned away from the camera.
+                controller.onIrisDiameter(
+                        timestampUs,
+                        Math.min(
+                                irisDepthEstimator.getLeftIrisDiameterPixels(),
+                                irisDepthEstimator.getRightIrisDiameterPixels()),
+                        irisDepthEstimator.getImageShortSide());
+            }
+        }
+    }
+
+    /**
+     * Feeds one orientation sensor sample. {@code w} is only used by rotation-vector samples;
+     * unknown sensor types are ignored.
+     */
+    public void onSensorSample(int sensorType, long timestampNs, float x, float y, float z, float w) {
+        SessionRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.recordSensor(timestampNs, sensorType, x, y, z, w);
+        }
+        boolean changed;
+        switch (sensorType) {
+            case SENSOR_ROTATION_VECTOR:
+                changed = orientationEngine.onRotationVector(timestampNs, x, y, z, w);
+                break;
+            case SENSOR_GYROSCOPE:
+                changed = orientationEngine.onGyroscope(timestampNs, x, y, z);
+                break;
+            case SENSOR_ACCELEROMETER:
+                changed = orientationEngine.onAccelerometer(timestampNs, x, y, z);
+                break;
+            case SENSOR_MAGNETIC_FIELD:
+                changed = orientationEngine.onMagneticField(timestampNs, x, y, z);
+                break;
+            default:
+                return;
+        }
+        if (changed) {
+            computeOrientation(timestampNs);
+        }
+    }
+
+    private void onFusedDepth(long timestampUs, float leftDepthMm, float rightDepthMm) {
+        SessionRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.recordDepth(timestampUs * 1000, leftDepthMm, rightDepthMm);
+        }
+        depths[0] = leftDepthMm / 10;
+        depths[1] = rightDepthMm / 10;
+        // Non-finite depths become the outlier window's median, and the One-Euro filter holds any
+        // left before the window has a sample, so neither reaches its state.
+        depthOutlierFilter.filter(depths);
+        depthFilter.filter(timestampUs * 1000, depths);
+        float left = depths[0];
+        float right = depths[1];
+        FrameRateGovernor governor = this.governor;
+        if (governor != null) {
+            governor.onDepth(left, right);
+        }
+        headPoseSolver.solve(left, right);
+        DepthListener listener = depthListener;
+        if (listener != null) {
+            listener.onDepth(
+                    timestampUs, left, right, headPoseSolver.getYawDegrees(), headPoseSolver.getDistance());
+        }
+        TelemetryExporter exporter = telemetryExporter;
+        if (exporter != null) {
+            float pitch = Float.NaN;
+            float roll = Float.NaN;
+            float heading = Float.NaN;
+            if (getOrientationAtFrame(timestampUs, frameQuaternion)) {
+                OrientationEngine.getOrientationDegrees(frameQuaternion, frameOrientation);
+                heading = frameOrientation[0];
+                pitch = frameOrientation[1];
+                roll = frameOrientation[2];
+            }
+            exporter.offer(timestampUs, left, right, pitch, roll, heading);
+        }
+    }
+
+    private void computeOrientation(long timestampNs) {
+        orientationEngine.getQuaternion(sensorQuaternion);
+        orientationHistory.add(
+                timestampNs,
+                sensorQuaternion[0],
+                sensorQuaternion[1],
+                sensorQuaternion[2],
+                sensorQuaternion[3]);
+        orientationEngine.getOrientationDegrees(orientation);
+
+        // Unwrap so the filter never sees the jump between -180 and 180 degrees.
+        for (int i = 0; i < 3; ++i) {
+            if (haveOrientation) {
+                unwrappedOrientation[i] += wrapDegrees(orientation[i] - lastOrientation[i]);
+            } else {
+                unwrappedOrientation[i] = orientation[i];
+            }
+            lastOrientation[i] = orientation[i];
+        }
+        haveOrientation = true;
+        orientationFilter.filter(timestampNs, unwrappedOrientation, orientation);
+
+        float pitch = orientation[1];
+        float roll = wrapDegrees(orientation[2]);
+        float heading = wrapDegrees(orientation[0]);
+
+        FrameRateGovernor governor = this.governor;
+        if (governor != null) {
+            governor.onOrientation(pitch, roll, heading);
+        }
+        SessionRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.recordOrientation(timestampNs, pitch, roll, heading);
+        }
+        OrientationListener listener = orientationListener;
+        if (listener != null) {
+            listener.onOrientation(timestampNs, pitch, roll, heading);
+        }
+    }
+
+    // Maps an angle in degrees to [-180, 180).
+    private static float wrapDegrees(float degrees) {
+        return degrees - 360f * (float) Math.floor((degrees + 180f) / 360f);
+    }
+}
@@ -0,0 +1,356 @@
+package com.google.mediapipe.apps.base;
+
+import android.app.KeyguardManager;
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.SensorManager;
+import android.os.Bundle;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.mediapipe.components.CameraHelper;
+import com.google.mediapipe.components.CameraXPreviewHelper;
+import com.google.mediapipe.components.ExternalTextureConverter;
+import com.google.mediapipe.components.FrameProcessor;
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.framework.PacketGetter;
+import com.google.mediapipe.glutil.EglManager;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Camera, converter, graph, sensors and {@link TrackingPipeline} without a preview, run by
+ * {@link YourService} when "headlessTracking" is set in the manifest metadata.
+ *
+ * <p>The graph named by "headlessGraphName" only computes depth: it has no output video, so
+ * nothing is annotated, rendered or composited. Frames are converted at the camera's own size and
+ * reach the graph through a {@link FrameFeed}, as in the activity: the frame-rate governor
+ * throttles them once depth and orientation are stable, the converter's buffer pool, sized to the
+ * frames the graph holds, bounds the frames in flight so the graph needs no flow limiter, and the
+ * converter and the sensors are suspended while the device is locked. The native libraries and the
+ * graph are loaded off the main thread by a {@link GraphLoader}; the camera starts once the graph
+ * is in. A viewer, e.g. the activity while it is open, may attach to receive the filtered depth.
+ * All methods must be called on the main thread.
+ *
+ * <p>The graph skips the iris model on frames where the eyes did not move since it last ran and
+ * reuses its previous result; the frames it ran on and the ones it skipped are counted.
+ */
+public class TrackingSession {
+    private static final String TAG = "TrackingSession";
+
+    private static final String INPUT_VIDEO_STREAM_NAME = "input_video";
+    private static final String FOCAL_LENGTH_STREAM_NAME = "focal_length_pixel";
+    private static final String LEFT_IRIS_DEPTH_MM = "left_iris_depth_mm";
+    private static final String RIGHT_IRIS_DEPTH_MM = "right_iris_depth_mm";
+    private static final String IRIS_REUSED = "iris_reused";
+
+    private static final int DEPTH_RING_CAPACITY = 8;
+
+    private final Context context;
+    private final LifecycleOwner lifecycleOwner;
+    private final Bundle metaData;
+    private final CalibrationCache calibrationCache;
+
+    private final TrackingPipeline pipeline = new TrackingPipeline();
+    // Keeps the Java side of the depth callbacks off the graph threads, as in the activity.
+    private final HandoffDispatcher dispatcher = new HandoffDispatcher("session-handoff");
+
+    // Null until started and after closing.
+    private GraphLoader graphLoader;
+    private LockStateMonitor lockStateMonitor;
+    private LockStateReceiver lockStateReceiver;
+    private SensorFeed sensorFeed;
+    private FrameRateGovernor governor;
+    private BufferPoolSizer bufferPoolSizer;
+    // Null until the graph is loaded.
+    private EglManager eglManager;
+    private FrameProcessor processor;
+    private FrameFeed frameFeed;
+    private CameraXPreviewHelper cameraHelper;
+    // Set when "telemetryPort" is in the manifest metadata.
+    private TelemetryExporter telemetryExporter;
+    private boolean haveAddedSidePackets = false;
+    // Frames the iris model ran on and frames that reused its previous result, counted on the
+    // graph thread.
+    private final AtomicLong inferredIrisFrames = new AtomicLong();
+    private final AtomicLong reusedIrisFrames = new AtomicLong();
+
+    /**
+     * @param lifecycleOwner owns the camera; it is released when the owner is destroyed
+     * @param metaData the application's manifest metadata
+     */
+    public TrackingSession(
+            Context context,
+            LifecycleOwner lifecycleOwner,
+            Bundle metaData,
+            CalibrationCache calibrationCache) {
+        this.context = context;
+        this.lifecycleOwner = lifecycleOwner;
+        this.metaData = metaData;
+        this.calibrationCache = calibrationCache;
+    }
+
+    /**
+     * Starts the sensors and loads the native libraries and the graph in the background; the
+     * camera starts once the graph is loaded, and is stopped while the device is locked.
+     */
+    public void start() {
+        if (graphLoader != null) {
+            return;
+        }
+        graphLoader = new GraphLoader();
+
+        KeyguardManager keyguardManager =
+                (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
+        lockStateMonitor = new LockStateMonitor(keyguardManager.isKeyguardLocked());
+        lockStateReceiver = new LockStateReceiver(lockStateMonitor, keyguardManager);
+        lockStateReceiver.register(context);
+
+        // The orientation feeds the governor, and the telemetry if exported.
+        sensorFeed =
+                new SensorFeed(
+                        (SensorManager) context.getSystemService(Context.SENSOR_SERVICE),
+                        pipeline,
+                        lockStateMonitor,
+                        metaData.getInt(
+                                "sensorReportLatencyMs", SensorFeed.DEFAULT_REPORT_LATENCY_MS));
+        sensorFeed.setActive(true);
+        governor = MainActivity.createGovernor(metaData);
+        pipeline.setGovernor(governor);
+        bufferPoolSizer = MainActivity.createBufferPoolSizer(metaData);
+
+        int telemetryPort = metaData.getInt("telemetryPort", 0);
+        if (telemetryPort > 0) {
+            telemetryExporter = MainActivity.startTelemetry(telemetryPort);
+            pipeline.setTelemetryExporter(telemetryExporter);
+        }
+
+        graphLoader.load(
+                context,
+                /*eglManager=*/ null,
+                metaData.getString("headlessGraphName"),
+                INPUT_VIDEO_STREAM_NAME,
+                /*outputStreamName=*/ null,
+                new GraphLoader.Callback() {
+                    @Override
+                    public void onNativeLoaded() {}
+
+                    @Override
+                    public void onGraphLoaded(EglManager eglManager, FrameProcessor processor) {
+                        TrackingSession.this.onGraphLoaded(eglManager, processor);
+                    }
+                });
+    }
+
+    /** Stops feeding the graph and releases it; the camera goes with the lifecycle owner. */
+    public void close() {
+        if (graphLoader == null) {
+            return;
+        }
+        // Drops the graph if it is still loading.
+        graphLoader.close();
+        lockStateReceiver.unregister(context);
+        sensorFeed.close();
+        if (processor != null) {
+            frameFeed.close();
+            processor.close();
+            dispatcher.stop();
+            eglManager.release();
+            Log.i(
+                    TAG,
+                    "Iris model ran on "
+                            + inferredIrisFrames.get()
+                            + " frames, skipped on "
+                            + reusedIrisFrames.get());
+        }
+        if (telemetryExporter != null) {
+            telemetryExporter.close();
+            telemetryExporter = null;
+        }
+        graphLoader = null;
+        frameFeed = null;
+        processor = null;
+        eglManager = null;
+        haveAddedSidePackets = false;
+    }
+
+    /**
+     * Sends the filtered depth to {@code viewer} on the handoff thread, or stops sending it if
+     * {@code viewer} is null.
+     */
+    public void setViewer(TrackingPipeline.DepthListener viewer) {
+        pipeline.setDepthListener(viewer);
+    }
+
+    public TrackingPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /** Frames the graph ran the iris model on. */
+    public long getInferredIrisFrames() {
+        return inferredIrisFrames.get();
+    }
+
+    /** Frames the graph reused the previous iris landmarks on instead of running the model. */
+    public long getReusedIrisFrames() {
+        return reusedIrisFrames.get();
+    }
+
+    // Called on the main thread with the loaded graph; hooks up its outputs and starts the camera
+    // unless the device is locked.
+    private void onGraphLoaded(EglManager eglManager, FrameProcessor processor) {
+        this.eglManager = eglManager;
+        this.processor = processor;
+
+        // Both depth streams only feed the pipeline, which pairs them by timestamp.
+        HandoffRing rightDepthRing =
+                dispatcher.addRing(
+                        RIGHT_IRIS_DEPTH_MM,
+                        DEPTH_RING_CAPACITY,
+                        HandoffRing.OverflowPolicy.DROP_OLDEST,
+                        (timestamp, depthMm, payload, length) ->
+                                pipeline.onRightDepth(timestamp, depthMm));
+        HandoffRing leftDepthRing =
+                dispatcher.addRing(
+                        LEFT_IRIS_DEPTH_MM,
+                        DEPTH_RING_CAPACITY,
+                        HandoffRing.OverflowPolicy.DROP_OLDEST,
+                        (timestamp, depthMm, payload, length) ->
+                                pipeline.onLeftDepth(timestamp, depthMm));
+        processor.addPacketCallback(
+                RIGHT_IRIS_DEPTH_MM,
+                (packet) -> {
+                    rightDepthRing.offer(packet.getTimestamp(), PacketGetter.getFloat32(packet));
+                });
+        processor.addPacketCallback(
+                LEFT_IRIS_DEPTH_MM,
+                (packet) -> {
+                    leftDepthRing.offer(packet.getTimestamp(), PacketGetter.getFloat32(packet));
+                });
+        processor.addPacketCallback(
+                IRIS_REUSED,
+                (packet) -> {
+                    (PacketGetter.getBool(packet) ? reusedIrisFrames : inferredIrisFrames)
+                            .incrementAndGet();
+                });
+        dispatcher.start();
+
+        frameFeed =
+                new FrameFeed(
+                        this::createConverter,
+                        pipeline,
+                        governor,
+                        bufferPoolSizer,
+                        lockStateMonitor,
+                        new FrameFeed.Listener() {
+                            @Override
+                            public void onFrameSubmitted(long timestampUs) {}
+
+                            @Override
+                            public void onConverterResized(int numBuffers) {}
+                        });
+        // The frames only go to the graph once onCameraStarted has its focal length.
+        frameFeed.start();
+        lockStateMonitor.addListener(this::onLockStateChanged);
+        if (!lockStateMonitor.isLocked()) {
+            startCamera();
+        }
+    }
+
+    // The frame feed suspends itself while locked; the camera stops streaming until the device
+    // is unlocked, and onCameraStarted then feeds the new texture to the frame feed.
+    private void onLockStateChanged(boolean locked) {
+        if (processor == null) {
+            return;
+        }
+        if (locked) {
+            MainActivity.unbindCamera(context);
+        } else {
+            startCamera();
+        }
+    }
+
+    private void startCamera() {
+        cameraHelper = new CameraXPreviewHelper();
+        cameraHelper.setOnCameraStartedListener(this::onCameraStarted);
+        CameraHelper.CameraFacing cameraFacing =
+                metaData.getBoolean("cameraFacingFront", false)
+                        ? CameraHelper.CameraFacing.FRONT
+                        : CameraHelper.CameraFacing.BACK;
+        int[] preferred = calibrationCache.getPreferredResolution(MainActivity.cameraKey(metaData));
+        cameraHelper.startCamera(
+                context,
+                lifecycleOwner,
+                cameraFacing,
+                /*unusedSurfaceTexture=*/ null,
+                preferred != null ? new Size(preferred[0], preferred[1]) : null);
+    }
+
+    private ExternalTextureConverter createConverter(int numBuffers) {
+        ExternalTextureConverter converter =
+                new ExternalTextureConverter(eglManager.getContext(), numBuffers);
+        converter.setFlipY(metaData.getBoolean("flipFramesVertically", true));
+        return converter;
+    }
+
+    private void onCameraStarted(SurfaceTexture surfaceTexture) {
+        if (processor == null) {
+            return;
+        }
+        Size frameSize = cameraHelper.getFrameSize();
+        if (frameSize == null) {
+            Log.e(TAG, "Camera started without a frame size.");
+            return;
+        }
+        try {
+            calibrationCache.putPreferredResolution(
+                    MainActivity.cameraKey(metaData), frameSize.getWidth(), frameSize.getHeight());
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot cache camera resolution: " + e);
+        }
+
+        // The graph cannot start without the side packet, so frames are held back until the
+        // focal length is known; a later camera start may still report it.
+        if (!haveAddedSidePackets) {
+            float focalLength = resolveFocalLength(frameSize);
+            if (Float.isNaN(focalLength)) {
+                Log.e(TAG, "Focal length unknown; holding frames back from the graph.");
+            } else {
+                Map<String, Packet> inputSidePackets = new HashMap<>();
+                inputSidePackets.put(
+                        FOCAL_LENGTH_STREAM_NAME,
+                        processor.getPacketCreator().createFloat32(focalLength));
+                processor.setInputSidePackets(inputSidePackets);
+                haveAddedSidePackets = true;
+                frameFeed.setProcessor(processor);
+            }
+        }
+
+        // Without a display to fit, the frames keep the camera's size, upright.
+        boolean isCameraRotated = cameraHelper.isCameraRotated();
+        frameFeed.attach(
+                surfaceTexture,
+                isCameraRotated ? frameSize.getHeight() : frameSize.getWidth(),
+                isCameraRotated ? frameSize.getWidth() : frameSize.getHeight());
+    }
+
+    // Same as the activity: the camera's focal length, cached for when it stops reporting one.
+    private float resolveFocalLength(Size frameSize) {
+        String key = MainActivity.cameraCalibrationKey(metaData, frameSize);
+        float focalLength = cameraHelper.getFocalLengthPixels();
+        if (focalLength != Float.MIN_VALUE && focalLength > 0) {
+            try {
+                calibrationCache.putFocalLengthPixels(key, focalLength);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot cache focal length: " + e);
+            }
+            return focalLength;
+        }
+        return calibrationCache.getFocalLengthPixels(key);
+    }
+}
@@ -1,43 +1,118 @@
 package com.google.mediapipe.apps.base;
 
+import android.Manifest;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
-import android.app.Service;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LifecycleService;
 
+import java.io.File;
 
-public class YourService extends Service {
+/**
+ * Foreground service that keeps the app alive in the background. With "headlessTracking" set in
+ * the manifest metadata it also owns the camera and runs a {@link TrackingSession}; the activity
+ * then binds to it and only shows the results.
+ */
+public class YourService extends LifecycleService {
     private static final String TAG = "YourService";
 
     private static final int NOTIF_ID = 1;
     private static final String NOTIF_CHANNEL_ID = "Channel_Id";
 
+    /** Lets an activity in the same process watch the session. */
+    public class LocalBinder extends Binder {
+        /** Sets the receiver of the filtered depth, now or once the session starts. */
+        public void setViewer(TrackingPipeline.DepthListener listener) {
+            viewer = listener;
+            if (session != null) {
+                session.setViewer(listener);
+            }
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+
+    // Render-free tracking; null unless enabled and the camera permission was granted.
+    private TrackingSession session;
+    private TrackingPipeline.DepthListener viewer;
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        super.onBind(intent);
+        return binder;
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        super.onStartCommand(intent, flags, startId);
 
         Log.v("BACKGROUND", "Service is running background");
 
         startForeground();
 
-        // Start Camera
+        startTracking();
 
-        //return super.onStartCommand(intent, flags, startId);
         return START_STICKY;
     }
 
+    @Override
+    public void onDestroy() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        super.onDestroy();
+    }
+
+    // Starts the session on the first start command after the activity got the camera permission;
+    // the activity starts the service again once it is granted.
+    private void startTracking() {
+        if (session != null) {
+            return;
+        }
+        Bundle metaData;
+        try {
+            metaData =
+                    getPackageManager()
+                            .getApplicationInfo(getPackageName(), PackageManager.GET_META_DATA)
+                            .metaData;
+        } catch (NameNotFoundException e) {
+            Log.e(TAG, "Cannot find application info: " + e);
+            return;
+        }
+        if (!metaData.getBoolean("headlessTracking", false)) {
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "No camera permission yet; not tracking.");
+            return;
+        }
+        session =
+                new TrackingSession(
+                        this,
+                        this,
+                        metaData,
+                        new CalibrationCache(
+                                new File(getFilesDir(), MainActivity.CALIBRATION_FILE_NAME)));
+        session.setViewer(viewer);
+        session.start();
+        Log.i(TAG, "Headless tracking started");
+    }
+
     private void startForeground() {
         Intent notificationIntent = new Intent(this, MainActivity.class);
 
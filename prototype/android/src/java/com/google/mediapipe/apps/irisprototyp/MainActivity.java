@@ -17,15 +17,17 @@ package com.google.mediapipe.apps.irisprototyp;
 import android.graphics.SurfaceTexture;
 import android.os.Bundle;
 import android.util.Log;
-import android.widget.TextView;
+import android.util.Size;
 
+import com.google.mediapipe.apps.base.HandoffRing;
+import com.google.mediapipe.apps.base.IrisDepthEstimator;
+import com.google.mediapipe.apps.base.LandmarkDecoder;
 import com.google.mediapipe.apps.base.R;
-import com.google.mediapipe.formats.proto.LandmarkProto.NormalizedLandmark;
-import com.google.mediapipe.formats.proto.LandmarkProto.NormalizedLandmarkList;
+import com.google.mediapipe.apps.base.StartupMetrics;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
-import com.google.protobuf.InvalidProtocolBufferException;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,59 +43,52 @@ public class MainActivity extends com.google.mediapipe.apps.base.MainActivity {
     private static final String LEFT_IRIS_DEPTH_MM = "left_iris_depth_mm";
     private static final String RIGHT_IRIS_DEPTH_MM = "right_iris_depth_mm";
 
+    // Entries each handoff ring holds; the graph emits one packet per stream and frame, so a few
+    // frames of slack cover a consumer hiccup.
+    private static final int DEPTH_RING_CAPACITY = 8;
+    private static final int LANDMARKS_RING_CAPACITY = 4;
+
     private boolean haveAddedSidePackets = false;
+    // Focal length in pixels for the current frame size; NaN while unknown.
+    private float focalLength = Float.NaN;
+
+    // Computes depth from the landmarks in Java instead of taking the graph's depth streams.
+    // NOTE: use "irisDiameterMm" in manifest metadata to override the assumed iris diameter.
+    private boolean useJavaDepth;
 
-    private TextView textViewR;
-    private TextView textViewL;
+    // Decodes iris_landmarks packets without building proto objects; only used on the handoff
+    // thread.
+    private final LandmarkDecoder landmarkDecoder = new LandmarkDecoder();
+    private final StringBuilder landmarksDebugString = new StringBuilder();
+    private boolean logLandmarks;
 
-    private float right_depth;
-    private float left_depth;
+    // Graph outputs on their way to the handoff thread, one ring per output stream.
+    private HandoffRing rightDepthRing;
+    private HandoffRing leftDepthRing;
+    private HandoffRing landmarksRing;
 
-    private float distance_left_right = 6.3f;
-    float difference = 0.0f;
+    private int readoutR;
+    private int readoutL;
 
-    double alpha;
-    double beta;
-    double gamma;
+    private final int traceDepth = flightRecorder.registerEvent("depth", "ts", "left", "right");
+    private final int traceHeadPose = flightRecorder.registerEvent("headPose", "ts", "yaw", "distance");
+    private final int traceLandmarks = flightRecorder.registerEvent("landmarks", "ts", "count");
 
     @Override
     protected void onCameraStarted(SurfaceTexture surfaceTexture) {
+        // The focal length in pixels follows the frame size, which changes when the camera is
+        // restarted at another resolution.
+        focalLength = resolveFocalLength();
+        if (Float.isNaN(focalLength)) {
+            Log.w(TAG, "Focal length unknown; no depth until the camera reports it.");
+        }
+        pipeline.getIrisDepthEstimator().setFocalLengthPixels(focalLength);
         super.onCameraStarted(surfaceTexture);
 
-        // onCameraStarted gets called each time the activity resumes, but we only want to do this once.
-        if (!haveAddedSidePackets) {
-            float focalLength = cameraHelper.getFocalLengthPixels();
-            if (focalLength != Float.MIN_VALUE) {
-                Log.v(TAG, "inside focalLength != Float.MIN_VALUE : " + focalLength);
-                Packet focalLengthSidePacket = processor.getPacketCreator().createFloat32(focalLength);
-                Map<String, Packet> inputSidePackets = new HashMap<>();
-                inputSidePackets.put(FOCAL_LENGTH_STREAM_NAME, focalLengthSidePacket);
-                processor.setInputSidePackets(inputSidePackets);
-            }
-
-            processor.addPacketCallback(
-                RIGHT_IRIS_DEPTH_MM,
-                (packet) -> {
-                    if (checkPhoneScreenLocked()) {
-                        float right_depth_tmp = PacketGetter.getFloat32(packet);
-                        right_depth = right_depth_tmp / 10;
-                        textViewR.setText(String.valueOf(right_depth));
-                        Log.v("BACKGROUND R", String.valueOf(right_depth));
-                    }
-                });
-
-            processor.addPacketCallback(
-                LEFT_IRIS_DEPTH_MM,
-                (packet) -> {
-                    if (checkPhoneScreenLocked()) {
-                        float left_depth_tmp = PacketGetter.getFloat32(packet);
-                        left_depth = left_depth_tmp / 10;
-                        textViewL.setText(String.valueOf(left_depth));
-                        Log.v("BACKGROUND L", String.valueOf(left_depth));
-                    }
-                });
-
-            haveAddedSidePackets = true;
+        // onCameraStarted gets called each time the activity resumes, but the side packet can
+        // only be set once, before the graph starts.
+        if (processor != null) {
+            addSidePackets();
         }
     }
 
@@ -101,74 +96,170 @@ public class MainActivity extends com.google.mediapipe.apps.base.MainActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        textViewR = findViewById(R.id.right);
-        textViewL = findViewById(R.id.left);
+        readoutR = presenter.addReadout(findViewById(R.id.right));
+        readoutL = presenter.addReadout(findViewById(R.id.left));
+
+        pipeline.setDepthListener(this::onDepth);
+
+        useJavaDepth = applicationInfo.metaData.getBoolean("useJavaDepth", false);
+        pipeline.setEstimateDepth(useJavaDepth);
+        pipeline.getIrisDepthEstimator().setIrisDiameterMm(resolveIrisDiameterMm());
+
+        // Last launch's focal length for the frame size the camera will most likely pick, so the
+        // graph can be configured as soon as it is loaded instead of waiting for the camera.
+        Size frameSize = expectedFrameSize();
+        if (frameSize != null) {
+            focalLength = calibrationCache.getFocalLengthPixels(cameraCalibrationKey(frameSize));
+            pipeline.getIrisDepthEstimator().setFocalLengthPixels(focalLength);
+        }
 
         // To show verbose logging, run:
         // adb shell setprop log.tag.MainActivity VERBOSE
-        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+        logLandmarks = Log.isLoggable(TAG, Log.VERBOSE);
+        if (logLandmarks || recorder != null || useJavaDepth) {
+            landmarksRing =
+                    dispatcher.addRing(
+                            OUTPUT_LANDMARKS_STREAM_NAME,
+                            LANDMARKS_RING_CAPACITY,
+                            handoffPolicy,
+                            this::onLandmarks);
+        }
+    }
+
+    @Override
+    protected void onGraphReady() {
+        if (landmarksRing != null) {
             processor.addPacketCallback(
                     OUTPUT_LANDMARKS_STREAM_NAME,
                     (packet) -> {
+                        latencyTracker.onGraphOutput(packet.getTimestamp());
                         byte[] landmarksRaw = PacketGetter.getProtoBytes(packet);
-                        try {
-                            NormalizedLandmarkList landmarks = NormalizedLandmarkList.parseFrom(landmarksRaw);
-                            if (landmarks == null) {
-                                Log.v(TAG, "[TS:" + packet.getTimestamp() + "] No landmarks.");
-                                return;
-                            }
-                            Log.v(
-                                    TAG,
-                                    "[TS:"
-                                            + packet.getTimestamp()
-                                            + "] #Landmarks for face (including iris): "
-                                            + landmarks.getLandmarkCount());
-                            Log.v(TAG, getLandmarksDebugString(landmarks));
-                        } catch (InvalidProtocolBufferException e) {
-                            Log.e(TAG, "Couldn't Exception received - " + e);
-                            return;
-                        }
+                        landmarksRing.offer(packet.getTimestamp(), landmarksRaw, landmarksRaw.length);
                     });
         }
+
+        if (!useJavaDepth) {
+            // Both depth streams only feed the pipeline, which pairs them by timestamp.
+            rightDepthRing =
+                    dispatcher.addRing(
+                            RIGHT_IRIS_DEPTH_MM,
+                            DEPTH_RING_CAPACITY,
+                            handoffPolicy,
+                            (timestamp, depthMm, payload, length) ->
+                                    pipeline.onRightDepth(timestamp, depthMm));
+            leftDepthRing =
+                    dispatcher.addRing(
+                            LEFT_IRIS_DEPTH_MM,
+                            DEPTH_RING_CAPACITY,
+                            handoffPolicy,
+                            (timestamp, depthMm, payload, length) ->
+                                    pipeline.onLeftDepth(timestamp, depthMm));
+            processor.addPacketCallback(
+                RIGHT_IRIS_DEPTH_MM,
+                (packet) -> {
+                    latencyTracker.onGraphOutput(packet.getTimestamp());
+                    rightDepthRing.offer(packet.getTimestamp(), PacketGetter.getFloat32(packet));
+                });
+
+            processor.addPacketCallback(
+                LEFT_IRIS_DEPTH_MM,
+                (packet) -> {
+                    latencyTracker.onGraphOutput(packet.getTimestamp());
+                    leftDepthRing.offer(packet.getTimestamp(), PacketGetter.getFloat32(packet));
+                });
+        }
+
+        addSidePackets();
     }
 
-    private static String getLandmarksDebugString(NormalizedLandmarkList landmarks) {
-        int landmarkIndex = 0;
-        String landmarksString = "";
-        for (NormalizedLandmark landmark : landmarks.getLandmarkList()) {
-            landmarksString +=
-                    "\t\tLandmark["
-                            + landmarkIndex
-                            + "]: ("
-                            + landmark.getX()
-                            + ", "
-                            + landmark.getY()
-                            + ", "
-                            + landmark.getZ()
-                            + ")\n";
-            ++landmarkIndex;
+    // Hands the focal length to the graph once it is known; whichever of onGraphReady and
+    // onCameraStarted comes last does it.
+    private void addSidePackets() {
+        if (haveAddedSidePackets || Float.isNaN(focalLength)) {
+            return;
         }
-        return landmarksString;
+        Log.v(TAG, "focal length: " + focalLength);
+        Packet focalLengthSidePacket = processor.getPacketCreator().createFloat32(focalLength);
+        Map<String, Packet> inputSidePackets = new HashMap<>();
+        inputSidePackets.put(FOCAL_LENGTH_STREAM_NAME, focalLengthSidePacket);
+        processor.setInputSidePackets(inputSidePackets);
+        haveAddedSidePackets = true;
     }
 
-    private void getGamma(){
-        if (left_depth >= right_depth) {
-            difference = left_depth - right_depth;
-        } else {
-            difference = right_depth - left_depth;
+    // Called on the handoff thread with the serialized landmarks.
+    private void onLandmarks(long timestamp, float unused, byte[] landmarksRaw, int length) {
+        try {
+            landmarkDecoder.decode(landmarksRaw, 0, length);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Couldn't decode landmarks - " + e);
+            return;
+        }
+        flightRecorder.record(traceLandmarks, timestamp, landmarkDecoder.size());
+        if (landmarkDecoder.size() == 0) {
+            return;
+        }
+        pipeline.onLandmarks(timestamp, landmarkDecoder.getCoordinates(), landmarkDecoder.size());
+        if (logLandmarks) {
+            landmarksDebugString.setLength(0);
+            Log.v(TAG, landmarkDecoder.appendDebugString(landmarksDebugString).toString());
         }
+    }
+
+    // The graph gets the focal length once as a side packet, so its depths would be off after a
+    // resolution change; the Java estimator picks up the new focal length on every camera start.
+    // Called from the base onCreate before useJavaDepth is set, so it reads the metadata itself.
+    @Override
+    protected boolean supportsAdaptiveResolution() {
+        return applicationInfo.metaData.getBoolean("useJavaDepth", false);
+    }
 
-        if (difference < distance_left_right) {
-            double cosA = (Math.pow(left_depth, 2) - Math.pow(distance_left_right, 2) - Math.pow(right_depth, 2)) / (-2 * distance_left_right * right_depth);
-            alpha = Math.acos(cosA);
-            Log.v("ALPHA", String.valueOf(alpha));
+    // Prefers the focal length reported by the camera and caches it, so later launches (and
+    // devices that stop reporting it) fall back to the cached value. Returns NaN if neither exists.
+    private float resolveFocalLength() {
+        Size frameSize = cameraHelper.getFrameSize();
+        if (frameSize == null) {
+            return Float.NaN;
+        }
+        String key = cameraCalibrationKey(frameSize);
+        float focalLength = cameraHelper.getFocalLengthPixels();
+        if (focalLength != Float.MIN_VALUE && focalLength > 0) {
+            try {
+                calibrationCache.putFocalLengthPixels(key, focalLength);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot cache focal length: " + e);
+            }
+            return focalLength;
+        }
+        return calibrationCache.getFocalLengthPixels(key);
+    }
 
-            double cosB = (Math.pow(distance_left_right, 2) - Math.pow(left_depth, 2) - Math.pow(right_depth, 2)) / (-2 * left_depth * right_depth);
-            beta = Math.acos(cosB);
-            Log.v("BETA", String.valueOf(beta));
+    // The manifest's "irisDiameterMm" wins and is remembered for launches without it; otherwise the
+    // remembered value, then the population average.
+    private float resolveIrisDiameterMm() {
+        if (applicationInfo.metaData.containsKey("irisDiameterMm")) {
+            float irisDiameterMm = applicationInfo.metaData.getFloat("irisDiameterMm");
+            try {
+                calibrationCache.putIrisDiameterMm(irisDiameterMm);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot cache iris diameter: " + e);
+            }
+            return irisDiameterMm;
+        }
+        float irisDiameterMm = calibrationCache.getIrisDiameterMm();
+        return Float.isNaN(irisDiameterMm) ? IrisDepthEstimator.DEFAULT_IRIS_DIAMETER_MM : irisDiameterMm;
+    }
 
-            gamma = 180 - alpha - beta;
-            Log.v("GAMMA", String.valueOf(gamma));
+    private void onDepth(
+            long timestamp, float leftDepthCm, float rightDepthCm, float yawDegrees, float distanceCm) {
+        long originNs = latencyTracker.onDepthReady(timestamp);
+        markStartup(StartupMetrics.FIRST_DEPTH);
+        if (checkPhoneScreenLocked()) {
+            presenter.publish(readoutL, leftDepthCm, originNs);
+            presenter.publish(readoutR, rightDepthCm, originNs);
+            flightRecorder.record(traceDepth, timestamp, leftDepthCm, rightDepthCm);
+            if (!Float.isNaN(yawDegrees)) {
+                flightRecorder.record(traceHeadPose, timestamp, yawDegrees, distanceCm);
+            }
         }
     }
-}
+}
\ No newline at end of file
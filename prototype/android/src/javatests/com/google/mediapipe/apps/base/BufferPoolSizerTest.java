@@ -0,0 +1,108 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BufferPoolSizerTest {
+    private static final long FRAME_30FPS_US = 33_333;
+    private static final long FRAME_15FPS_US = 66_667;
+
+    private long timestampUs;
+
+    private void frames(BufferPoolSizer sizer, int count, long intervalUs) {
+        for (int i = 0; i < count; ++i) {
+            timestampUs += intervalUs;
+            sizer.onCameraFrame(timestampUs);
+        }
+    }
+
+    private static BufferPoolSizer sizer() {
+        BufferPoolSizer sizer = new BufferPoolSizer(2, 6, 3, 30);
+        sizer.onConverterCreated(sizer.getBufferCount());
+        return sizer;
+    }
+
+    @Test
+    public void onCameraFrame_steadyRate_losesNothing() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 100, FRAME_30FPS_US);
+        assertEquals(0, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onCameraFrame_gap_countsLostFrames() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        frames(sizer, 1, 3 * FRAME_30FPS_US);
+        frames(sizer, 10, FRAME_30FPS_US);
+        assertEquals(2, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onCameraFrame_rateHalved_adaptsAfterEvenGaps() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        frames(sizer, 100, FRAME_15FPS_US);
+        assertEquals(BufferPoolSizer.RESEED_AFTER_GAPS, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onCameraFrame_rateHalvedWhileExhausted_keepsCountingLosses() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        for (int i = 0; i < sizer.getBufferCount(); ++i) {
+            sizer.onFrameAcquired();
+        }
+        frames(sizer, 20, FRAME_15FPS_US);
+        assertEquals(20, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onCameraFrame_unevenGaps_keepCountingLosses() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        for (int i = 0; i < 10; ++i) {
+            frames(sizer, 1, 2 * FRAME_30FPS_US);
+            frames(sizer, 1, 3 * FRAME_30FPS_US);
+        }
+        assertEquals(30, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onCameraStarted_relearnsFrameInterval() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        sizer.onCameraStarted();
+        frames(sizer, 20, FRAME_15FPS_US);
+        assertEquals(0, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onConverterCreated_relearnsFrameInterval() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        sizer.onConverterCreated(4);
+        frames(sizer, 20, FRAME_15FPS_US);
+        assertEquals(0, sizer.getLostFrameCount());
+    }
+
+    @Test
+    public void onCameraFrame_lossesWhileExhausted_growPool() {
+        BufferPoolSizer sizer = sizer();
+        frames(sizer, 10, FRAME_30FPS_US);
+        for (int i = 0; i < sizer.getBufferCount(); ++i) {
+            sizer.onFrameAcquired();
+        }
+        int grown = 0;
+        for (int i = 0; i < 30 && grown == 0; ++i) {
+            timestampUs += i % 2 == 0 ? FRAME_30FPS_US : 2 * FRAME_30FPS_US;
+            grown = sizer.onCameraFrame(timestampUs);
+        }
+        assertEquals(4, grown);
+        assertEquals(4, sizer.getBufferCount());
+    }
+}
@@ -0,0 +1,108 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FloatFormatterTest {
+    private static String format(float value, int decimals) {
+        char[] out = new char[FloatFormatter.MAX_LENGTH];
+        int length = FloatFormatter.format(value, decimals, out, 0);
+        return new String(out, 0, length);
+    }
+
+    private static String bigDecimal(float value, int decimals) {
+        return new BigDecimal(Float.toString(value))
+                .setScale(decimals, RoundingMode.HALF_UP)
+                .toPlainString();
+    }
+
+    private static void assertFormatsLikeBigDecimal(float value, int decimals) {
+        assertEquals(
+                value + " to " + decimals + " decimals",
+                bigDecimal(value, decimals),
+                format(value, decimals));
+    }
+
+    @Test
+    public void format_ties_roundHalfUp() {
+        assertEquals("1.01", format(1.005f, 2));
+        assertEquals("-1.01", format(-1.005f, 2));
+        assertEquals("12.35", format(12.345f, 2));
+        assertEquals("0.13", format(0.125f, 2));
+        assertEquals("3", format(2.5f, 0));
+        assertEquals("1.0", format(0.95f, 1));
+    }
+
+    @Test
+    public void format_ties_matchBigDecimal() {
+        for (int decimals = 0; decimals <= FloatFormatter.MAX_DECIMALS; ++decimals) {
+            double tieScale = Math.pow(10, decimals + 1);
+            for (long digits = 5; digits < 100_000; digits += 10) {
+                float value = (float) (digits / tieScale);
+                assertFormatsLikeBigDecimal(value, decimals);
+                assertFormatsLikeBigDecimal(-value, decimals);
+            }
+        }
+    }
+
+    @Test
+    public void format_randomValues_matchBigDecimal() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; ++i) {
+            float value = (random.nextFloat() - 0.5f) * (float) Math.pow(10, random.nextInt(7));
+            assertFormatsLikeBigDecimal(value, random.nextInt(FloatFormatter.MAX_DECIMALS + 1));
+        }
+    }
+
+    @Test
+    public void format_largeValues_fallBackToBigDecimal() {
+        float[] values = {
+            1023.9995f, 1024.0005f, 8191.995f, 16383.995f, 16384.125f, 123456.78f, 1e7f, 3e38f,
+            Float.MAX_VALUE, Float.MIN_VALUE,
+        };
+        for (float value : values) {
+            for (int decimals = 0; decimals <= FloatFormatter.MAX_DECIMALS; ++decimals) {
+                assertFormatsLikeBigDecimal(value, decimals);
+                assertFormatsLikeBigDecimal(-value, decimals);
+            }
+        }
+        assertEquals(FloatFormatter.MAX_LENGTH, format(-Float.MAX_VALUE, 6).length());
+    }
+
+    @Test
+    public void format_smallNegative_hasNoNegativeZero() {
+        assertEquals("0.00", format(-0.001f, 2));
+        assertEquals("0.00", format(-0f, 2));
+        assertEquals("-0.01", format(-0.005f, 2));
+    }
+
+    @Test
+    public void format_nanAndInfinity_likeFloatToString() {
+        assertEquals("NaN", format(Float.NaN, 2));
+        assertEquals("Infinity", format(Float.POSITIVE_INFINITY, 2));
+        assertEquals("-Infinity", format(Float.NEGATIVE_INFINITY, 2));
+    }
+
+    @Test
+    public void format_writesAtOffset() {
+        char[] out = "xxxx".concat(new String(new char[FloatFormatter.MAX_LENGTH])).toCharArray();
+        int length = FloatFormatter.format(-42.125f, 1, out, 4);
+        assertEquals("xxxx-42.1", new String(out, 0, 4 + length));
+    }
+
+    @Test
+    public void format_decimalsOutOfRange_throws() {
+        assertThrows(IllegalArgumentException.class, () -> format(1f, -1));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> format(1f, FloatFormatter.MAX_DECIMALS + 1));
+    }
+}
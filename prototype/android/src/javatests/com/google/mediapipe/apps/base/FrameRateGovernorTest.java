@@ -0,0 +1,139 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FrameRateGovernorTest {
+    private static final long MILLIS = 1_000_000L;
+    private static final long FRAME_NS = 33 * MILLIS;
+    private static final long IDLE_AFTER_NS = 3000 * MILLIS;
+    private static final float DEPTH_THRESHOLD = 1f;
+    private static final float ANGLE_THRESHOLD = 3f;
+
+    private long nowNs = 1000 * MILLIS;
+    private final FrameRateGovernor governor =
+            new FrameRateGovernor(
+                    () -> nowNs, 30f, 5f, IDLE_AFTER_NS, DEPTH_THRESHOLD, ANGLE_THRESHOLD);
+
+    // Advances one camera frame at 30 fps and returns whether it was let through.
+    private boolean nextFrame() {
+        nowNs += FRAME_NS;
+        return governor.shouldProcessFrame();
+    }
+
+    private int processedOf(int frames) {
+        int processed = 0;
+        for (int i = 0; i < frames; ++i) {
+            if (nextFrame()) {
+                ++processed;
+            }
+        }
+        return processed;
+    }
+
+    @Test
+    public void active_letsEveryFrameThrough() {
+        governor.onDepth(40f, 41f);
+
+        assertEquals(30, processedOf(30));
+        assertFalse(governor.isIdle());
+        assertEquals(0, governor.getSkippedFrameCount());
+    }
+
+    @Test
+    public void stableForIdleAfter_skipsToIdleRate() {
+        governor.onDepth(40f, 41f);
+        processedOf((int) (IDLE_AFTER_NS / FRAME_NS) + 1);
+
+        assertTrue(governor.isIdle());
+        long skipped = governor.getSkippedFrameCount();
+        // 5 fps with the 10% tolerance lets one in six frames through.
+        assertEquals(5, processedOf(30));
+        assertEquals(25, governor.getSkippedFrameCount() - skipped);
+    }
+
+    @Test
+    public void stableJustBelowIdleAfter_staysActive() {
+        governor.onDepth(40f, 41f);
+        nowNs += IDLE_AFTER_NS - MILLIS;
+
+        assertFalse(governor.isIdle());
+        nowNs += MILLIS;
+        assertTrue(governor.isIdle());
+    }
+
+    @Test
+    public void depthChangeBeyondThreshold_resumesOnNextFrame() {
+        governor.onDepth(40f, 41f);
+        nowNs += IDLE_AFTER_NS;
+        assertTrue(nextFrame());
+        assertFalse(nextFrame());
+
+        governor.onDepth(40f, 41f + DEPTH_THRESHOLD * 1.01f);
+
+        assertFalse(governor.isIdle());
+        assertTrue(nextFrame());
+        assertTrue(nextFrame());
+    }
+
+    @Test
+    public void depthChangeWithinThreshold_staysIdle() {
+        governor.onDepth(40f, 41f);
+        nowNs += IDLE_AFTER_NS;
+        nextFrame();
+
+        governor.onDepth(40f + DEPTH_THRESHOLD, 41f - DEPTH_THRESHOLD * 0.99f);
+
+        assertTrue(governor.isIdle());
+        assertFalse(nextFrame());
+    }
+
+    @Test
+    public void slowDepthDrift_resumesOnceItAddsUp() {
+        governor.onDepth(40f, 41f);
+        nowNs += IDLE_AFTER_NS;
+
+        governor.onDepth(40.4f, 41f);
+        governor.onDepth(40.8f, 41f);
+        assertTrue(governor.isIdle());
+        governor.onDepth(41.2f, 41f);
+        assertFalse(governor.isIdle());
+    }
+
+    @Test
+    public void orientationChangeBeyondThreshold_resumes() {
+        governor.onOrientation(10f, 0f, 179f);
+        nowNs += IDLE_AFTER_NS;
+
+        // Across the +/-180 degree seam, the heading only moved by 2 degrees.
+        governor.onOrientation(10f, 0f, -179f);
+        assertTrue(governor.isIdle());
+        governor.onOrientation(10f, -ANGLE_THRESHOLD - 0.1f, 179f);
+        assertFalse(governor.isIdle());
+    }
+
+    @Test
+    public void wake_resumes() {
+        nowNs += IDLE_AFTER_NS;
+        assertTrue(governor.isIdle());
+
+        governor.wake();
+
+        assertFalse(governor.isIdle());
+    }
+
+    @Test
+    public void counts_addUpToFramesSeen() {
+        governor.onDepth(40f, 41f);
+        int processed = processedOf(200);
+
+        assertEquals(processed, governor.getProcessedFrameCount());
+        assertEquals(200 - processed, governor.getSkippedFrameCount());
+    }
+}
@@ -0,0 +1,181 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HampelFilterTest {
+    private static final int WINDOW = 11;
+    private static final float MIN_DEVIATION_MM = 5f;
+
+    private final Random random = new Random(1);
+
+    private static HampelFilter filter() {
+        return new HampelFilter(2, WINDOW, HampelFilter.DEFAULT_THRESHOLD, MIN_DEVIATION_MM);
+    }
+
+    // Feeds noisy depths around the given levels and returns the filtered values of the last.
+    private float[] feed(HampelFilter filter, int count, float left, float right) {
+        float[] values = new float[2];
+        for (int i = 0; i < count; ++i) {
+            values[0] = left + (float) random.nextGaussian();
+            values[1] = right + (float) random.nextGaussian();
+            filter.filter(values);
+        }
+        return values;
+    }
+
+    @Test
+    public void filter_steadyNoise_acceptsEverySample() {
+        HampelFilter filter = filter();
+        feed(filter, 200, 400f, 420f);
+        assertEquals(0, filter.getRejectedCount(0));
+        assertEquals(0, filter.getRejectedCount(1));
+        assertEquals(200, filter.getFilteredCount(0));
+        assertTrue(filter.isValid(0));
+        assertTrue(filter.isValid(1));
+    }
+
+    @Test
+    public void filter_spike_isReplacedByMedian() {
+        HampelFilter filter = filter();
+        feed(filter, 50, 400f, 420f);
+
+        float[] values = {900f, 421f};
+        filter.filter(values);
+
+        assertEquals(400f, values[0], 5f);
+        assertEquals(421f, values[1], 0f);
+        assertFalse(filter.isValid(0));
+        assertTrue(filter.isValid(1));
+        assertEquals(1, filter.getRejectedCount(0));
+        assertEquals(0, filter.getRejectedCount(1));
+
+        feed(filter, 1, 400f, 420f);
+        assertTrue(filter.isValid(0));
+    }
+
+    @Test
+    public void filter_levelChange_isAcceptedOnceItFillsHalfTheWindow() {
+        HampelFilter filter = filter();
+        feed(filter, 50, 400f, 420f);
+        float[] values = new float[2];
+        int rejectedInARow = 0;
+        for (int i = 0; i < WINDOW; ++i) {
+            values[0] = 600f;
+            values[1] = 420f;
+            filter.filter(values);
+            if (!filter.isValid(0)) {
+                ++rejectedInARow;
+            }
+        }
+        assertTrue(rejectedInARow <= WINDOW / 2 + 1);
+        assertEquals(600f, values[0], 0f);
+        assertTrue(filter.isValid(0));
+    }
+
+    @Test
+    public void filter_belowHalfWindow_acceptsAsIs() {
+        HampelFilter filter = filter();
+        float[] values = new float[2];
+        for (int i = 0; i < WINDOW / 2; ++i) {
+            values[0] = i % 2 == 0 ? 400f : 900f;
+            values[1] = 420f;
+            filter.filter(values);
+            assertTrue(filter.isValid(0));
+        }
+        assertEquals(0, filter.getRejectedCount(0));
+    }
+
+    @Test
+    public void filter_nan_isReplacedByMedianAndInvalid() {
+        HampelFilter filter = filter();
+        feed(filter, 50, 400f, 420f);
+
+        float[] values = {Float.NaN, 420f};
+        filter.filter(values);
+
+        assertEquals(400f, values[0], 5f);
+        assertFalse(filter.isValid(0));
+        assertTrue(filter.isValid(1));
+        assertEquals(50, filter.getFilteredCount(0));
+        assertEquals(51, filter.getFilteredCount(1));
+        assertEquals(0, filter.getRejectedCount(0));
+    }
+
+    @Test
+    public void filter_infinityBelowHalfWindow_isReplacedAndKeptOutOfWindow() {
+        HampelFilter filter = filter();
+        float[] values = {400f, 420f};
+        filter.filter(values);
+
+        values[0] = Float.POSITIVE_INFINITY;
+        values[1] = Float.NEGATIVE_INFINITY;
+        filter.filter(values);
+
+        assertEquals(400f, values[0], 0f);
+        assertEquals(420f, values[1], 0f);
+        assertFalse(filter.isValid(0));
+        assertFalse(filter.isValid(1));
+        assertEquals(1, filter.getFilteredCount(0));
+
+        values[0] = 402f;
+        values[1] = 422f;
+        filter.filter(values);
+        assertEquals(402f, values[0], 0f);
+        assertTrue(filter.isValid(0));
+    }
+
+    @Test
+    public void filter_nonFiniteOnEmptyWindow_isPassedThrough() {
+        HampelFilter filter = filter();
+        float[] values = {Float.NaN, Float.POSITIVE_INFINITY};
+
+        filter.filter(values);
+
+        assertTrue(Float.isNaN(values[0]));
+        assertEquals(Float.POSITIVE_INFINITY, values[1], 0f);
+        assertFalse(filter.isValid(0));
+        assertEquals(0, filter.getFilteredCount(1));
+    }
+
+    @Test
+    public void filter_smallDeviation_isKeptByMinDeviation() {
+        HampelFilter filter = filter();
+        float[] values = new float[2];
+        for (int i = 0; i < 50; ++i) {
+            values[0] = 400f;
+            values[1] = 420f;
+            filter.filter(values);
+        }
+
+        values[0] = 404f;
+        filter.filter(values);
+
+        assertEquals(404f, values[0], 0f);
+        assertTrue(filter.isValid(0));
+    }
+
+    @Test
+    public void reset_forgetsWindowButKeepsCounters() {
+        HampelFilter filter = filter();
+        feed(filter, 50, 400f, 420f);
+        float[] values = {900f, 420f};
+        filter.filter(values);
+
+        filter.reset();
+        values[0] = 900f;
+        filter.filter(values);
+
+        assertEquals(900f, values[0], 0f);
+        assertTrue(filter.isValid(0));
+        assertEquals(1, filter.getRejectedCount(0));
+        assertEquals(52, filter.getFilteredCount(0));
+    }
+}
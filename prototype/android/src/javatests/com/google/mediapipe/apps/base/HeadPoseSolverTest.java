@@ -0,0 +1,96 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HeadPoseSolverTest {
+    private static final float IPD_CM = 6.3f;
+
+    private final HeadPoseSolver solver = new HeadPoseSolver(IPD_CM);
+
+    // Camera-to-eye distances of a head whose eye midpoint is distanceCm in front of the camera,
+    // turned by yawDegrees so that the left eye moves away from the camera.
+    private static float[] eyeDepths(float distanceCm, float yawDegrees) {
+        double yaw = Math.toRadians(yawDegrees);
+        double halfIpd = IPD_CM / 2;
+        double x = halfIpd * Math.cos(yaw);
+        double z = halfIpd * Math.sin(yaw);
+        return new float[] {
+            (float) Math.hypot(x, distanceCm + z), (float) Math.hypot(x, distanceCm - z)
+        };
+    }
+
+    @Test
+    public void solve_facingCamera_hasZeroYaw() {
+        float[] depths = eyeDepths(40f, 0f);
+
+        assertTrue(solver.solve(depths[0], depths[1]));
+        assertEquals(0f, solver.getYawDegrees(), 1e-3f);
+        assertEquals(40f, solver.getDistance(), 1e-3f);
+    }
+
+    @Test
+    public void solve_recoversKnownGeometry() {
+        float[][] poses = {{30f, 25f}, {50f, -10f}, {65f, 40f}, {25f, -60f}};
+        for (float[] pose : poses) {
+            float[] depths = eyeDepths(pose[0], pose[1]);
+
+            assertTrue(solver.solve(depths[0], depths[1]));
+            assertEquals("yaw at " + pose[0] + " cm", pose[1], solver.getYawDegrees(), 0.05f);
+            assertEquals(
+                    "distance at " + pose[1] + " degrees", pose[0], solver.getDistance(), 1e-3f);
+        }
+    }
+
+    @Test
+    public void solve_batchMatchesSingleSamples() {
+        float[][] poses = {{30f, 25f}, {50f, -10f}, {45f, 0f}};
+        float[] left = new float[poses.length + 1];
+        float[] right = new float[poses.length + 1];
+        for (int i = 0; i < poses.length; ++i) {
+            float[] depths = eyeDepths(poses[i][0], poses[i][1]);
+            left[i + 1] = depths[0];
+            right[i + 1] = depths[1];
+        }
+        float[] yaws = new float[left.length];
+        float[] distances = new float[left.length];
+
+        assertEquals(poses.length, solver.solve(left, right, 1, poses.length, yaws, distances));
+        for (int i = 1; i < left.length; ++i) {
+            solver.solve(left[i], right[i]);
+            assertEquals(solver.getYawDegrees(), yaws[i], 0f);
+            assertEquals(solver.getDistance(), distances[i], 0f);
+        }
+        assertEquals(0f, yaws[0], 0f);
+    }
+
+    @Test
+    public void solve_degenerateTriangle_isInvalid() {
+        float[][] invalid = {
+            {40f, 40f + IPD_CM + 0.1f}, // Violates the triangle inequality.
+            {2f, 1f}, // Eyes closer together than the inter-pupillary distance.
+            {0f, 40f},
+            {-40f, 40f},
+            {Float.NaN, 40f},
+            {40f, Float.POSITIVE_INFINITY},
+        };
+        for (float[] depths : invalid) {
+            assertFalse(solver.solve(depths[0], depths[1]));
+            assertTrue(Float.isNaN(solver.getYawDegrees()));
+            assertTrue(Float.isNaN(solver.getDistance()));
+        }
+    }
+
+    @Test
+    public void constructor_rejectsNonPositiveDistance() {
+        assertThrows(IllegalArgumentException.class, () -> new HeadPoseSolver(0f));
+        assertThrows(IllegalArgumentException.class, () -> new HeadPoseSolver(Float.NaN));
+    }
+}
@@ -0,0 +1,177 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.app.KeyguardManager;
+import android.content.Intent;
+import android.graphics.SurfaceTexture;
+import android.os.Looper;
+import com.google.mediapipe.components.ExternalTextureConverter;
+import com.google.mediapipe.components.TextureFrameConsumer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class LockStateReceiverTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final List<ExternalTextureConverter> converters = new ArrayList<>();
+    private final List<Boolean> lockStates = new ArrayList<>();
+
+    private Application context;
+    private KeyguardManager keyguardManager;
+    private SurfaceTexture previewFrameTexture;
+    private LockStateMonitor monitor;
+    private LockStateReceiver receiver;
+    private FrameFeed frameFeed;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        keyguardManager = context.getSystemService(KeyguardManager.class);
+        previewFrameTexture = mock(SurfaceTexture.class);
+    }
+
+    @After
+    public void tearDown() {
+        frameFeed.close();
+        receiver.unregister(context);
+    }
+
+    private void start(boolean locked) {
+        monitor = new LockStateMonitor(locked);
+        monitor.addListener(lockStates::add);
+        frameFeed =
+                new FrameFeed(
+                        numBuffers -> {
+                            ExternalTextureConverter converter =
+                                    mock(ExternalTextureConverter.class);
+                            converters.add(converter);
+                            return converter;
+                        },
+                        new TrackingPipeline(),
+                        new FrameRateGovernor(
+                                FrameRateGovernor.SYSTEM_CLOCK, 0, 5, 1_000_000_000L, 2f, 3f),
+                        new BufferPoolSizer(2, 4, 2, 30),
+                        monitor,
+                        new FrameFeed.Listener() {
+                            @Override
+                            public void onFrameSubmitted(long timestampUs) {}
+
+                            @Override
+                            public void onConverterResized(int numBuffers) {}
+                        });
+        frameFeed.start();
+        frameFeed.attach(previewFrameTexture, WIDTH, HEIGHT);
+        receiver = new LockStateReceiver(monitor, keyguardManager);
+        receiver.register(context);
+    }
+
+    private void broadcast(String action) {
+        context.sendBroadcast(new Intent(action));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void screenOff_suspendsConverter() {
+        start(/*locked=*/ false);
+        assertEquals(1, converters.size());
+
+        broadcast(Intent.ACTION_SCREEN_OFF);
+
+        assertTrue(monitor.isLocked());
+        assertEquals(Arrays.asList(true), lockStates);
+        verify(converters.get(0)).close();
+        assertEquals(1, converters.size());
+    }
+
+    @Test
+    public void userPresent_resumesConverterOnRestartedPreview() {
+        start(/*locked=*/ false);
+        broadcast(Intent.ACTION_SCREEN_OFF);
+
+        broadcast(Intent.ACTION_USER_PRESENT);
+
+        assertFalse(monitor.isLocked());
+        assertEquals(Arrays.asList(true, false), lockStates);
+        assertEquals(2, converters.size());
+        ExternalTextureConverter resumed = converters.get(1);
+        verify(resumed).setConsumer(any(TextureFrameConsumer.class));
+        // The camera was stopped while locked, so the converter waits for its new texture.
+        verify(resumed, never())
+                .setSurfaceTextureAndAttachToGLContext(previewFrameTexture, WIDTH, HEIGHT);
+
+        SurfaceTexture restartedTexture = mock(SurfaceTexture.class);
+        frameFeed.attach(restartedTexture, WIDTH, HEIGHT);
+
+        verify(resumed).setSurfaceTextureAndAttachToGLContext(restartedTexture, WIDTH, HEIGHT);
+        verify(resumed, never()).close();
+    }
+
+    @Test
+    public void screenOn_withKeyguard_staysSuspended() {
+        start(/*locked=*/ false);
+        broadcast(Intent.ACTION_SCREEN_OFF);
+        shadowOf(keyguardManager).setKeyguardLocked(true);
+
+        broadcast(Intent.ACTION_SCREEN_ON);
+
+        assertTrue(monitor.isLocked());
+        assertEquals(Arrays.asList(true), lockStates);
+        assertEquals(1, converters.size());
+    }
+
+    @Test
+    public void screenOn_withoutKeyguard_resumes() {
+        start(/*locked=*/ false);
+        broadcast(Intent.ACTION_SCREEN_OFF);
+        shadowOf(keyguardManager).setKeyguardLocked(false);
+
+        broadcast(Intent.ACTION_SCREEN_ON);
+
+        assertFalse(monitor.isLocked());
+        assertEquals(Arrays.asList(true, false), lockStates);
+        assertEquals(2, converters.size());
+    }
+
+    @Test
+    public void lockedAtStart_createsConverterOnUnlock() {
+        start(/*locked=*/ true);
+        assertEquals(0, converters.size());
+
+        broadcast(Intent.ACTION_USER_PRESENT);
+
+        assertEquals(Arrays.asList(false), lockStates);
+        assertEquals(1, converters.size());
+        verify(converters.get(0))
+                .setSurfaceTextureAndAttachToGLContext(previewFrameTexture, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void closedFeed_staysClosedOnUnlock() {
+        start(/*locked=*/ false);
+        broadcast(Intent.ACTION_SCREEN_OFF);
+        frameFeed.close();
+
+        broadcast(Intent.ACTION_USER_PRESENT);
+
+        assertEquals(Arrays.asList(true, false), lockStates);
+        assertEquals(1, converters.size());
+    }
+}
@@ -0,0 +1,120 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class OrientationEngineTest {
+    private static final float GRAVITY = 9.81f;
+    // East-north-up field with a 60 degree dip, in uT.
+    private static final float[] MAGNETIC_FIELD = {0f, 25f, -43.3f};
+    private static final long GYRO_PERIOD_NS = 5_000_000L;
+
+    private final OrientationEngine engine = new OrientationEngine();
+    private long timestampNs = GYRO_PERIOD_NS;
+
+    @Test
+    public void gyroscope_startsFromAccelerometerAndMagnetometer() {
+        float[] pose = axisAngle(1f, -2f, 0.5f, 35f);
+        feedStaticPose(pose);
+
+        assertFalse(engine.isInitialized());
+        assertTrue(engine.onGyroscope(timestampNs, 0f, 0f, 0f));
+        assertTrue(engine.isInitialized());
+        assertEquals(0f, angleToDegrees(pose), 0.01f);
+    }
+
+    @Test
+    public void madgwick_staticPose_convergesFromWrongStart() {
+        feedStaticPose(axisAngle(0f, 0f, 1f, 0f));
+        engine.onGyroscope(timestampNs, 0f, 0f, 0f);
+
+        // The device is put down in another pose while the gyroscope reports no rotation, so only
+        // the gradient-descent correction moves the state.
+        float[] pose = axisAngle(1f, 2f, 3f, 40f);
+        feedStaticPose(pose);
+        float initialError = angleToDegrees(pose);
+        spinGyroscope(2f);
+        float earlyError = angleToDegrees(pose);
+        spinGyroscope(18f);
+
+        assertEquals(40f, initialError, 0.01f);
+        assertTrue("error " + earlyError, earlyError < initialError);
+        assertEquals(0f, angleToDegrees(pose), 0.5f);
+
+        // Converged, it stays put.
+        spinGyroscope(10f);
+        assertEquals(0f, angleToDegrees(pose), 0.5f);
+    }
+
+    @Test
+    public void madgwick_staticPose_reportsGetOrientationAngles() {
+        // Flat on a table with the top of the device pointing east.
+        feedStaticPose(axisAngle(0f, 0f, 1f, -90f));
+        engine.onGyroscope(timestampNs, 0f, 0f, 0f);
+        spinGyroscope(5f);
+        float[] angles = new float[3];
+        engine.getOrientationDegrees(angles);
+
+        assertEquals(90f, angles[0], 0.5f);
+        assertEquals(0f, angles[1], 0.5f);
+        assertEquals(0f, angles[2], 0.5f);
+    }
+
+    // Feeds the accelerometer and magnetometer readings of a device at rest whose device-to-
+    // east-north-up rotation is the quaternion pose (w, x, y, z).
+    private void feedStaticPose(float[] pose) {
+        float[] inverse = {pose[0], -pose[1], -pose[2], -pose[3]};
+        float[] gravity = rotate(inverse, new float[] {0f, 0f, GRAVITY});
+        float[] field = rotate(inverse, MAGNETIC_FIELD);
+        engine.onAccelerometer(timestampNs, gravity[0], gravity[1], gravity[2]);
+        engine.onMagneticField(timestampNs, field[0], field[1], field[2]);
+    }
+
+    private void spinGyroscope(float seconds) {
+        for (long end = timestampNs + (long) (seconds * 1e9f); timestampNs < end; ) {
+            timestampNs += GYRO_PERIOD_NS;
+            engine.onGyroscope(timestampNs, 0f, 0f, 0f);
+        }
+    }
+
+    // Angle between the engine's rotation and pose.
+    private float angleToDegrees(float[] pose) {
+        float[] q = new float[4];
+        engine.getQuaternion(q);
+        double dot = Math.abs(q[0] * pose[0] + q[1] * pose[1] + q[2] * pose[2] + q[3] * pose[3]);
+        return (float) Math.toDegrees(2 * Math.acos(Math.min(1.0, dot)));
+    }
+
+    private static float[] axisAngle(float x, float y, float z, float degrees) {
+        double norm = Math.sqrt(x * x + y * y + z * z);
+        double half = Math.toRadians(degrees) / 2;
+        double s = Math.sin(half) / norm;
+        return new float[] {
+            (float) Math.cos(half), (float) (x * s), (float) (y * s), (float) (z * s)
+        };
+    }
+
+    // v' = q v q*.
+    private static float[] rotate(float[] q, float[] v) {
+        float w = q[0];
+        float x = q[1];
+        float y = q[2];
+        float z = q[3];
+        float[][] m = {
+            {1 - 2 * (y * y + z * z), 2 * (x * y - w * z), 2 * (x * z + w * y)},
+            {2 * (x * y + w * z), 1 - 2 * (x * x + z * z), 2 * (y * z - w * x)},
+            {2 * (x * z - w * y), 2 * (y * z + w * x), 1 - 2 * (x * x + y * y)},
+        };
+        float[] out = new float[3];
+        for (int i = 0; i < 3; ++i) {
+            out[i] = m[i][0] * v[0] + m[i][1] * v[1] + m[i][2] * v[2];
+        }
+        return out;
+    }
+}
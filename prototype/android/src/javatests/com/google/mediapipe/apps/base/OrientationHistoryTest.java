@@ -0,0 +1,175 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class OrientationHistoryTest {
+    private static final long MAX_HOLD_NS = 50;
+    private static final float EPSILON = 1e-5f;
+
+    // Adds the rotation by angle radians about the z axis.
+    private static void addAboutZ(OrientationHistory history, long timestampNs, double angle) {
+        history.add(
+                timestampNs, (float) Math.cos(angle / 2), 0f, 0f, (float) Math.sin(angle / 2));
+    }
+
+    private static void assertAboutZ(double angle, float[] q) {
+        assertEquals(Math.cos(angle / 2), q[0], EPSILON);
+        assertEquals(0f, q[1], EPSILON);
+        assertEquals(0f, q[2], EPSILON);
+        assertEquals(Math.sin(angle / 2), q[3], EPSILON);
+    }
+
+    @Test
+    public void getOrientationAt_betweenSamples_slerpsAboutTheAxis() {
+        OrientationHistory history = new OrientationHistory(8, MAX_HOLD_NS);
+        addAboutZ(history, 0, 0);
+        addAboutZ(history, 40, Math.PI / 2);
+        float[] q = new float[4];
+
+        for (int t = 0; t <= 40; t += 5) {
+            assertTrue(history.getOrientationAt(t, q));
+            assertAboutZ(Math.PI / 2 * t / 40, q);
+        }
+    }
+
+    @Test
+    public void getOrientationAt_oppositeSigns_takesTheShorterArc() {
+        OrientationHistory history = new OrientationHistory(8, MAX_HOLD_NS);
+        addAboutZ(history, 0, 0);
+        // -q for a rotation by 120 degrees, which is the same rotation.
+        double angle = 2 * Math.PI / 3;
+        history.add(40, (float) -Math.cos(angle / 2), 0f, 0f, (float) -Math.sin(angle / 2));
+        float[] q = new float[4];
+
+        assertTrue(history.getOrientationAt(10, q));
+
+        assertAboutZ(angle / 4, q);
+    }
+
+    @Test
+    public void getOrientationAt_pastNewest_holdsItWithinMaxHold() {
+        OrientationHistory history = new OrientationHistory(8, MAX_HOLD_NS);
+        addAboutZ(history, 0, 0);
+        addAboutZ(history, 10, 0.5);
+        float[] q = new float[4];
+
+        assertTrue(history.getOrientationAt(10 + MAX_HOLD_NS, q));
+        assertAboutZ(0.5, q);
+        assertFalse(history.getOrientationAt(10 + MAX_HOLD_NS + 1, q));
+    }
+
+    @Test
+    public void getOrientationAt_acrossGap_holdsEarlierSampleWithoutBridging() {
+        OrientationHistory history = new OrientationHistory(8, MAX_HOLD_NS);
+        addAboutZ(history, 0, 0);
+        addAboutZ(history, 100, 1.0);
+        addAboutZ(history, 100 + MAX_HOLD_NS + 1, 2.0);
+        float[] q = new float[4];
+
+        assertTrue(history.getOrientationAt(100 + MAX_HOLD_NS / 2, q));
+        assertAboutZ(1.0, q);
+        assertTrue(history.getOrientationAt(100 + MAX_HOLD_NS, q));
+        assertAboutZ(1.0, q);
+        // The first gap is longer than maxHoldNs too.
+        assertTrue(history.getOrientationAt(MAX_HOLD_NS, q));
+        assertAboutZ(0, q);
+        assertFalse(history.getOrientationAt(MAX_HOLD_NS + 1, q));
+    }
+
+    @Test
+    public void getOrientationAt_emptyOrBeforeOldest_fails() {
+        OrientationHistory history = new OrientationHistory(8, MAX_HOLD_NS);
+        float[] q = new float[4];
+        assertFalse(history.getOrientationAt(0, q));
+
+        addAboutZ(history, 10, 0);
+        addAboutZ(history, 20, 0);
+        assertFalse(history.getOrientationAt(9, q));
+        assertTrue(history.getOrientationAt(10, q));
+    }
+
+    @Test
+    public void add_notNewer_isIgnored() {
+        OrientationHistory history = new OrientationHistory(8, MAX_HOLD_NS);
+        addAboutZ(history, 10, 0.5);
+        addAboutZ(history, 10, 1.0);
+        addAboutZ(history, 5, 1.0);
+        float[] q = new float[4];
+
+        assertTrue(history.getOrientationAt(10, q));
+        assertAboutZ(0.5, q);
+        assertFalse(history.getOrientationAt(5, q));
+    }
+
+    @Test
+    public void add_pastCapacity_evictsOldestSamples() {
+        OrientationHistory history = new OrientationHistory(3, MAX_HOLD_NS);
+        assertEquals(4, history.getCapacity());
+        for (int i = 0; i < 10; ++i) {
+            addAboutZ(history, 10 * i, 0.1 * i);
+        }
+        float[] q = new float[4];
+
+        // Samples 6 to 9 are retained.
+        assertFalse(history.getOrientationAt(59, q));
+        assertTrue(history.getOrientationAt(60, q));
+        assertAboutZ(0.6, q);
+        assertTrue(history.getOrientationAt(85, q));
+        assertAboutZ(0.85, q);
+    }
+
+    @Test
+    public void getOrientationAt_concurrentWriter_neverTears() throws InterruptedException {
+        // The orientation turns about z at a constant rate, so every consistent read matches the
+        // angle at its timestamp, while a sample torn between slots does not.
+        int samples = 200_000;
+        double radiansPerNs = 3.0 / samples;
+        OrientationHistory history = new OrientationHistory(64, MAX_HOLD_NS);
+        AtomicLong newestNs = new AtomicLong(-1);
+        AtomicInteger torn = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+
+        Thread reader =
+                new Thread(
+                        () -> {
+                            Random random = new Random(1);
+                            float[] q = new float[4];
+                            while (newestNs.get() < samples - 1) {
+                                long newest = newestNs.get();
+                                if (newest < 0) {
+                                    continue;
+                                }
+                                long t = Math.max(0, newest - random.nextInt(64));
+                                if (!history.getOrientationAt(t, q)) {
+                                    continue;
+                                }
+                                reads.incrementAndGet();
+                                double angle = 2 * Math.atan2(q[3], q[0]);
+                                if (Math.abs(angle - radiansPerNs * t) > 1e-4
+                                        || Math.abs(q[1]) > EPSILON
+                                        || Math.abs(q[2]) > EPSILON) {
+                                    torn.incrementAndGet();
+                                }
+                            }
+                        });
+        reader.start();
+        for (int t = 0; t < samples; ++t) {
+            addAboutZ(history, t, radiansPerNs * t);
+            newestNs.set(t);
+        }
+        reader.join();
+
+        assertEquals(0, torn.get());
+        assertTrue(reads.get() > 0);
+    }
+}
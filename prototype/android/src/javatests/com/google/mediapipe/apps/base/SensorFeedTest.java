@@ -0,0 +1,215 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSensor;
+import org.robolectric.shadows.ShadowSensorManager;
+
+@RunWith(RobolectricTestRunner.class)
+public class SensorFeedTest {
+    private static final int REPORT_LATENCY_MS = 50;
+
+    private final Sensor rotationVector = ShadowSensor.newInstance(Sensor.TYPE_ROTATION_VECTOR);
+    private final Sensor gyroscope = ShadowSensor.newInstance(Sensor.TYPE_GYROSCOPE);
+    private final Sensor accelerometer = ShadowSensor.newInstance(Sensor.TYPE_ACCELEROMETER);
+    private final Sensor magnetometer = ShadowSensor.newInstance(Sensor.TYPE_MAGNETIC_FIELD);
+
+    private SensorManager sensorManager;
+    private TrackingPipeline pipeline;
+    private LockStateMonitor lockStateMonitor;
+    private SensorFeed sensorFeed;
+
+    @Before
+    public void setUp() {
+        sensorManager = mock(SensorManager.class);
+        pipeline = mock(TrackingPipeline.class);
+        lockStateMonitor = new LockStateMonitor(/*locked=*/ false);
+    }
+
+    @After
+    public void tearDown() {
+        sensorFeed.close();
+    }
+
+    private void createSensorFeed(Sensor... sensors) {
+        for (Sensor sensor : sensors) {
+            when(sensorManager.getDefaultSensor(sensor.getType())).thenReturn(sensor);
+        }
+        sensorFeed = new SensorFeed(sensorManager, pipeline, lockStateMonitor, REPORT_LATENCY_MS);
+    }
+
+    private Handler verifyRegistered(Sensor sensor, int samplingPeriod) {
+        ArgumentCaptor<Handler> handler = ArgumentCaptor.forClass(Handler.class);
+        verify(sensorManager)
+                .registerListener(
+                        same(sensorFeed),
+                        same(sensor),
+                        eq(samplingPeriod),
+                        eq(REPORT_LATENCY_MS * 1000),
+                        handler.capture());
+        return handler.getValue();
+    }
+
+    private void verifyRegistrations(int times) {
+        verify(sensorManager, times(times))
+                .registerListener(
+                        any(SensorEventListener.class),
+                        any(Sensor.class),
+                        anyInt(),
+                        anyInt(),
+                        any(Handler.class));
+    }
+
+    @Test
+    public void setActive_registersRotationVectorWithReportLatency() {
+        createSensorFeed(rotationVector, gyroscope, accelerometer, magnetometer);
+
+        sensorFeed.setActive(true);
+
+        assertTrue(sensorFeed.isRegistered());
+        verifyRegistered(rotationVector, SensorManager.SENSOR_DELAY_NORMAL);
+        verifyRegistrations(1);
+    }
+
+    @Test
+    public void setActive_withoutRotationVector_registersFusionSensors() {
+        createSensorFeed(gyroscope, accelerometer, magnetometer);
+
+        sensorFeed.setActive(true);
+
+        verifyRegistered(gyroscope, SensorManager.SENSOR_DELAY_GAME);
+        verifyRegistered(accelerometer, SensorManager.SENSOR_DELAY_NORMAL);
+        verifyRegistered(magnetometer, SensorManager.SENSOR_DELAY_NORMAL);
+        verifyRegistrations(3);
+    }
+
+    @Test
+    public void onSensorChanged_deliveredOnSensorsThread() {
+        createSensorFeed(rotationVector);
+        List<Thread> threads = new ArrayList<>();
+        doAnswer(
+                        invocation -> {
+                            threads.add(Thread.currentThread());
+                            return null;
+                        })
+                .when(pipeline)
+                .onSensorSample(
+                        eq(Sensor.TYPE_ROTATION_VECTOR),
+                        eq(1_000L),
+                        eq(0.1f),
+                        eq(0.2f),
+                        eq(0.3f),
+                        eq(0.4f));
+        sensorFeed.setActive(true);
+        Handler handler = verifyRegistered(rotationVector, SensorManager.SENSOR_DELAY_NORMAL);
+        SensorEvent event =
+                ShadowSensorManager.createSensorEvent(4, Sensor.TYPE_ROTATION_VECTOR);
+        event.timestamp = 1_000L;
+        event.values[0] = 0.1f;
+        event.values[1] = 0.2f;
+        event.values[2] = 0.3f;
+        event.values[3] = 0.4f;
+
+        // The sensor manager delivers events through the handler it was given.
+        handler.post(() -> sensorFeed.onSensorChanged(event));
+        shadowOf(handler.getLooper()).idle();
+
+        assertEquals("sensors", handler.getLooper().getThread().getName());
+        assertEquals(1, threads.size());
+        assertEquals(handler.getLooper().getThread(), threads.get(0));
+    }
+
+    @Test
+    public void setInactive_unregisters() {
+        createSensorFeed(rotationVector);
+        sensorFeed.setActive(true);
+
+        sensorFeed.setActive(false);
+
+        assertFalse(sensorFeed.isRegistered());
+        verify(sensorManager).unregisterListener(sensorFeed);
+    }
+
+    @Test
+    public void lock_unregistersUntilUnlocked() {
+        createSensorFeed(rotationVector);
+        sensorFeed.setActive(true);
+
+        lockStateMonitor.onScreenOff();
+
+        assertTrue(sensorFeed.isActive());
+        assertFalse(sensorFeed.isRegistered());
+        verify(sensorManager).unregisterListener(sensorFeed);
+
+        lockStateMonitor.onUserPresent();
+
+        assertTrue(sensorFeed.isRegistered());
+        verifyRegistrations(2);
+    }
+
+    @Test
+    public void setActive_whileLocked_registersOnUnlock() {
+        lockStateMonitor = new LockStateMonitor(/*locked=*/ true);
+        createSensorFeed(rotationVector);
+
+        sensorFeed.setActive(true);
+
+        assertFalse(sensorFeed.isRegistered());
+        verifyRegistrations(0);
+
+        lockStateMonitor.onUserPresent();
+
+        verifyRegistered(rotationVector, SensorManager.SENSOR_DELAY_NORMAL);
+    }
+
+    @Test
+    public void unlock_whileInactive_staysUnregistered() {
+        createSensorFeed(rotationVector);
+        sensorFeed.setActive(true);
+        sensorFeed.setActive(false);
+        lockStateMonitor.onScreenOff();
+
+        lockStateMonitor.onUserPresent();
+
+        assertFalse(sensorFeed.isRegistered());
+        verifyRegistrations(1);
+    }
+
+    @Test
+    public void close_unregistersAndIgnoresLaterUnlocks() {
+        createSensorFeed(rotationVector);
+        sensorFeed.setActive(true);
+        lockStateMonitor.onScreenOff();
+        sensorFeed.close();
+
+        lockStateMonitor.onUserPresent();
+
+        assertFalse(sensorFeed.isRegistered());
+        verifyRegistrations(1);
+    }
+}
@@ -0,0 +1,103 @@
+package com.google.mediapipe.apps.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SlidingMedianTest {
+    // Median of the last min(count, window) values, by sorting them.
+    private static float sortedMedian(float[] history, int count, int window) {
+        int size = Math.min(count, window);
+        float[] sorted = Arrays.copyOfRange(history, count - size, count);
+        Arrays.sort(sorted);
+        return size % 2 == 1
+                ? sorted[size / 2]
+                : 0.5f * (sorted[size / 2 - 1] + sorted[size / 2]);
+    }
+
+    private static void assertMatchesSortedWindow(int window, float[] history) {
+        SlidingMedian median = new SlidingMedian(window);
+        for (int i = 0; i < history.length; ++i) {
+            median.add(history[i]);
+            assertEquals(Math.min(i + 1, window), median.size());
+            assertEquals(
+                    "window " + window + " after " + (i + 1) + " values",
+                    sortedMedian(history, i + 1, window),
+                    median.getMedian(),
+                    0f);
+        }
+    }
+
+    @Test
+    public void getMedian_randomValues_matchesSortedWindow() {
+        Random random = new Random(1);
+        for (int window : new int[] {1, 2, 3, 4, 5, 8, 31, 64}) {
+            float[] history = new float[2000];
+            for (int i = 0; i < history.length; ++i) {
+                history[i] = random.nextFloat() * 100f - 50f;
+            }
+            assertMatchesSortedWindow(window, history);
+        }
+    }
+
+    @Test
+    public void getMedian_duplicateValues_matchesSortedWindow() {
+        Random random = new Random(2);
+        for (int window : new int[] {2, 3, 7, 16, 31}) {
+            float[] history = new float[2000];
+            for (int i = 0; i < history.length; ++i) {
+                history[i] = random.nextInt(4);
+            }
+            assertMatchesSortedWindow(window, history);
+        }
+    }
+
+    @Test
+    public void getMedian_monotonicValues_matchesSortedWindow() {
+        float[] rising = new float[500];
+        float[] falling = new float[500];
+        for (int i = 0; i < rising.length; ++i) {
+            rising[i] = i;
+            falling[i] = -i;
+        }
+        assertMatchesSortedWindow(31, rising);
+        assertMatchesSortedWindow(31, falling);
+    }
+
+    @Test
+    public void getMedian_empty_isNaN() {
+        SlidingMedian median = new SlidingMedian(5);
+        assertTrue(Float.isNaN(median.getMedian()));
+        median.add(1f);
+        median.clear();
+        assertEquals(0, median.size());
+        assertTrue(Float.isNaN(median.getMedian()));
+    }
+
+    @Test
+    public void clear_startsNewWindow() {
+        SlidingMedian median = new SlidingMedian(3);
+        median.add(100f);
+        median.add(200f);
+        median.add(300f);
+        median.clear();
+        median.add(1f);
+        median.add(2f);
+        assertEquals(1.5f, median.getMedian(), 0f);
+        median.add(3f);
+        median.add(4f);
+        assertEquals(3f, median.getMedian(), 0f);
+    }
+
+    @Test
+    public void constructor_emptyWindow_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingMedian(0));
+    }
+}
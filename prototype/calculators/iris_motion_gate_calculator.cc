@@ -0,0 +1,244 @@
+// Copyright 2019 The MediaPipe Authors.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include <cmath>
+#include <cstdint>
+#include <utility>
+
+#include "absl/memory/memory.h"
+#include "mediapipe/framework/calculator_framework.h"
+#include "mediapipe/framework/formats/landmark.pb.h"
+#include "mediapipe/framework/port/logging.h"
+#include "mediapipe/framework/port/ret_check.h"
+#include "mediapipe/framework/port/status.h"
+#include "mediapipe/prototype/calculators/iris_motion_gate_calculator.pb.h"
+
+namespace mediapipe {
+
+namespace {
+
+constexpr char kLeftEyeTag[] = "LEFT_EYE_BOUNDARY_LANDMARKS";
+constexpr char kRightEyeTag[] = "RIGHT_EYE_BOUNDARY_LANDMARKS";
+constexpr char kImageSizeTag[] = "IMAGE_SIZE";
+constexpr char kPrevIrisTag[] = "PREV_IRIS_LANDMARKS";
+constexpr char kMaxReusedFramesTag[] = "MAX_REUSED_FRAMES";
+constexpr char kAllowTag[] = "ALLOW";
+constexpr char kReusedIrisTag[] = "REUSED_IRIS_LANDMARKS";
+constexpr char kReusedTag[] = "REUSED";
+
+// Iris center plus four contour points per eye, left eye first.
+constexpr int kIrisLandmarksPerEye = 5;
+
+// The two corners of an eye, in pixels.
+struct Eye {
+  float x0 = 0, y0 = 0, x1 = 0, y1 = 0;
+
+  float CenterX() const { return 0.5f * (x0 + x1); }
+  float CenterY() const { return 0.5f * (y0 + y1); }
+  float Width() const { return std::hypot(x1 - x0, y1 - y0); }
+};
+
+// Reads the eye boundary landmarks at `tag`, or returns false if the frame has
+// none, e.g. because no face was found.
+bool ReadEye(const CalculatorContext* cc, const char* tag, int width,
+             int height, Eye* eye) {
+  const auto& stream = cc->Inputs().Tag(tag);
+  if (stream.IsEmpty()) return false;
+  const auto& landmarks = stream.Get<NormalizedLandmarkList>();
+  if (landmarks.landmark_size() < 2) return false;
+  eye->x0 = landmarks.landmark(0).x() * width;
+  eye->y0 = landmarks.landmark(0).y() * height;
+  eye->x1 = landmarks.landmark(1).x() * width;
+  eye->y1 = landmarks.landmark(1).y() * height;
+  return eye->Width() > 0;
+}
+
+}  // namespace
+
+// Skips the iris landmark model on frames where the eyes barely moved since it
+// last ran, and reuses its previous result instead.
+//
+// The eye corners of the face landmarks are cheap to get and come with every
+// frame. If neither eye's center moved by more than `max_motion` eye widths
+// and neither eye's width changed by more than `max_scale_change` since the
+// iris model last ran, ALLOW is false and the previous iris landmarks are
+// moved along with the eye corners, from the previous frame's to this frame's,
+// and emitted on REUSED_IRIS_LANDMARKS. Gating against the last inferred frame
+// rather than the previous frame keeps slow drift from being reused forever,
+// and at most `max_reused_frames` frames in a row are reused regardless.
+//
+// ALLOW is meant for a GateCalculator in front of the iris landmark subgraph,
+// whose output is merged with REUSED_IRIS_LANDMARKS into the iris landmarks
+// that PREV_IRIS_LANDMARKS loops back from. REUSED tells which frames were
+// reused; the inferred and reused frame counts are logged on Close().
+//
+// Inputs:
+//   LEFT_EYE_BOUNDARY_LANDMARKS: Left eye corners. (NormalizedLandmarkList)
+//   RIGHT_EYE_BOUNDARY_LANDMARKS: Right eye corners. (NormalizedLandmarkList)
+//   IMAGE_SIZE: Frame size, present on every frame. (std::pair<int, int>)
+//   PREV_IRIS_LANDMARKS: Iris landmarks of the previous frame, from a
+//     PreviousLoopbackCalculator. (NormalizedLandmarkList)
+//
+// Input side packets:
+//   MAX_REUSED_FRAMES (optional): Overrides `max_reused_frames`. (int)
+//
+// Outputs:
+//   ALLOW: Whether the iris model has to run on this frame. (bool)
+//   REUSED_IRIS_LANDMARKS: Iris landmarks of frames that skip the model.
+//     (NormalizedLandmarkList)
+//   REUSED (optional): Whether this frame's iris landmarks are reused. (bool)
+//
+// Example config:
+// node {
+//   calculator: "IrisMotionGateCalculator"
+//   input_stream: "LEFT_EYE_BOUNDARY_LANDMARKS:left_eye_boundary_landmarks"
+//   input_stream: "RIGHT_EYE_BOUNDARY_LANDMARKS:right_eye_boundary_landmarks"
+//   input_stream: "IMAGE_SIZE:image_size"
+//   input_stream: "PREV_IRIS_LANDMARKS:prev_iris_landmarks"
+//   output_stream: "ALLOW:run_iris_model"
+//   output_stream: "REUSED_IRIS_LANDMARKS:reused_iris_landmarks"
+//   output_stream: "REUSED:iris_reused"
+// }
+class IrisMotionGateCalculator : public CalculatorBase {
+ public:
+  static absl::Status GetContract(CalculatorContract* cc) {
+    cc->Inputs().Tag(kLeftEyeTag).Set<NormalizedLandmarkList>();
+    cc->Inputs().Tag(kRightEyeTag).Set<NormalizedLandmarkList>();
+    cc->Inputs().Tag(kImageSizeTag).Set<std::pair<int, int>>();
+    cc->Inputs().Tag(kPrevIrisTag).Set<NormalizedLandmarkList>();
+    if (cc->InputSidePackets().HasTag(kMaxReusedFramesTag)) {
+      cc->InputSidePackets().Tag(kMaxReusedFramesTag).Set<int>();
+    }
+    cc->Outputs().Tag(kAllowTag).Set<bool>();
+    cc->Outputs().Tag(kReusedIrisTag).Set<NormalizedLandmarkList>();
+    if (cc->Outputs().HasTag(kReusedTag)) {
+      cc->Outputs().Tag(kReusedTag).Set<bool>();
+    }
+    return absl::OkStatus();
+  }
+
+  absl::Status Open(CalculatorContext* cc) override {
+    cc->SetOffset(TimestampDiff(0));
+    options_ = cc->Options<IrisMotionGateCalculatorOptions>();
+    max_reused_frames_ = options_.max_reused_frames();
+    if (cc->InputSidePackets().HasTag(kMaxReusedFramesTag)) {
+      max_reused_frames_ =
+          cc->InputSidePackets().Tag(kMaxReusedFramesTag).Get<int>();
+    }
+    RET_CHECK_GE(max_reused_frames_, 0);
+    return absl::OkStatus();
+  }
+
+  absl::Status Process(CalculatorContext* cc) override {
+    if (cc->Inputs().Tag(kImageSizeTag).IsEmpty()) return absl::OkStatus();
+    const auto& size =
+        cc->Inputs().Tag(kImageSizeTag).Get<std::pair<int, int>>();
+    Eye eyes[2];
+    const bool have_eyes =
+        ReadEye(cc, kLeftEyeTag, size.first, size.second, &eyes[0]) &&
+        ReadEye(cc, kRightEyeTag, size.first, size.second, &eyes[1]);
+
+    const auto& prev_iris = cc->Inputs().Tag(kPrevIrisTag);
+    const bool reuse =
+        have_eyes && have_reference_ && have_previous_ &&
+        reused_in_a_row_ < max_reused_frames_ && !prev_iris.IsEmpty() &&
+        prev_iris.Get<NormalizedLandmarkList>().landmark_size() ==
+            2 * kIrisLandmarksPerEye &&
+        IsStill(reference_[0], eyes[0]) && IsStill(reference_[1], eyes[1]);
+
+    if (reuse) {
+      auto iris = absl::make_unique<NormalizedLandmarkList>(
+          prev_iris.Get<NormalizedLandmarkList>());
+      for (int e = 0; e < 2; ++e) {
+        Follow(previous_[e], eyes[e], size.first, size.second,
+               e * kIrisLandmarksPerEye, iris.get());
+      }
+      cc->Outputs().Tag(kReusedIrisTag).Add(iris.release(),
+                                           cc->InputTimestamp());
+      ++reused_in_a_row_;
+      ++reused_frames_;
+    } else {
+      reused_in_a_row_ = 0;
+      have_reference_ = have_eyes;
+      if (have_eyes) {
+        reference_[0] = eyes[0];
+        reference_[1] = eyes[1];
+        ++inferred_frames_;
+      }
+    }
+    have_previous_ = have_eyes;
+    if (have_eyes) {
+      previous_[0] = eyes[0];
+      previous_[1] = eyes[1];
+    }
+
+    cc->Outputs().Tag(kAllowTag).AddPacket(
+        MakePacket<bool>(!reuse).At(cc->InputTimestamp()));
+    if (cc->Outputs().HasTag(kReusedTag) && have_eyes) {
+      cc->Outputs().Tag(kReusedTag).AddPacket(
+          MakePacket<bool>(reuse).At(cc->InputTimestamp()));
+    }
+    return absl::OkStatus();
+  }
+
+  absl::Status Close(CalculatorContext* cc) override {
+    const int64_t total = inferred_frames_ + reused_frames_;
+    LOG(INFO) << "Iris landmarks inferred on " << inferred_frames_
+              << " frames and reused on " << reused_frames_ << " ("
+              << (total > 0 ? 100.0 * reused_frames_ / total : 0.0) << "%).";
+    return absl::OkStatus();
+  }
+
+ private:
+  // Whether `eye` is close enough to `reference` to reuse its iris.
+  bool IsStill(const Eye& reference, const Eye& eye) const {
+    const float width = reference.Width();
+    const float motion = std::hypot(eye.CenterX() - reference.CenterX(),
+                                    eye.CenterY() - reference.CenterY());
+    return motion <= options_.max_motion() * width &&
+           std::abs(eye.Width() - width) <= options_.max_scale_change() * width;
+  }
+
+  // Moves the iris landmarks [first, first + kIrisLandmarksPerEye) of
+  // `landmarks` from the eye at `from` to the eye at `to`: translated with its
+  // center and scaled with its width. The eye does not rotate noticeably
+  // within the motion that is reused.
+  static void Follow(const Eye& from, const Eye& to, int width, int height,
+                     int first, NormalizedLandmarkList* landmarks) {
+    const float scale = to.Width() / from.Width();
+    for (int i = first; i < first + kIrisLandmarksPerEye; ++i) {
+      auto* landmark = landmarks->mutable_landmark(i);
+      const float x = landmark->x() * width - from.CenterX();
+      const float y = landmark->y() * height - from.CenterY();
+      landmark->set_x((to.CenterX() + scale * x) / width);
+      landmark->set_y((to.CenterY() + scale * y) / height);
+      landmark->set_z(scale * landmark->z());
+    }
+  }
+
+  IrisMotionGateCalculatorOptions options_;
+  int max_reused_frames_ = 0;
+  // Eye corners of the frame the iris model last ran on.
+  Eye reference_[2];
+  bool have_reference_ = false;
+  // Eye corners of the previous frame, which the looped back iris belongs to.
+  Eye previous_[2];
+  bool have_previous_ = false;
+  int reused_in_a_row_ = 0;
+  int64_t inferred_frames_ = 0;
+  int64_t reused_frames_ = 0;
+};
+REGISTER_CALCULATOR(IrisMotionGateCalculator);
+
+}  // namespace mediapipe
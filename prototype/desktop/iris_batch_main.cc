@@ -0,0 +1,449 @@
+// Copyright 2019 The MediaPipe Authors.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// Runs the CPU iris graph over every video file and image sequence in a
+// directory, one graph instance per worker thread, and writes the iris
+// landmarks and per-eye depths of each input as a session that the Android
+// app's replay harness reads:
+//
+//   bazel build -c opt --define MEDIAPIPE_DISABLE_GPU=1 \
+//       //mediapipe/prototype/desktop:iris_batch_cpu
+//   bazel-bin/mediapipe/prototype/desktop/iris_batch_cpu \
+//       --input_dir=/path/to/footage --output_dir=/tmp/sessions \
+//       --focal_length_pixels=1000
+//   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:replay_benchmark -- \
+//       --session /tmp/sessions/<input> --csv /tmp/<input>.csv
+//
+// Every regular file in --input_dir is opened as a video; every subdirectory
+// is an image sequence, its images taken in name order. Run it from the
+// MediaPipe root so the graph finds its models.
+//
+// By default the iris model runs on every frame. To measure what skipping it
+// on still frames costs in accuracy, process the same footage a second time
+// with --iris_max_reused_frames and compare the two sessions:
+//
+//   bazel-bin/mediapipe/prototype/desktop/iris_batch_cpu \
+//       --input_dir=/path/to/footage --output_dir=/tmp/gated \
+//       --focal_length_pixels=1000 --iris_max_reused_frames=2
+//   bazel run //mediapipe/prototype/android/src/java/com/google/mediapipe/apps/base:session_compare -- \
+//       --reference /tmp/sessions/<input> --session /tmp/gated/<input>
+
+#include <algorithm>
+#include <atomic>
+#include <cmath>
+#include <cstdint>
+#include <cstring>
+#include <fstream>
+#include <map>
+#include <memory>
+#include <string>
+#include <thread>
+#include <vector>
+
+#include "absl/flags/flag.h"
+#include "absl/flags/parse.h"
+#include "absl/status/statusor.h"
+#include "absl/strings/str_cat.h"
+#include "absl/synchronization/mutex.h"
+#include "absl/time/clock.h"
+#include "absl/time/time.h"
+#include "mediapipe/framework/calculator_framework.h"
+#include "mediapipe/framework/deps/file_path.h"
+#include "mediapipe/framework/formats/image_frame.h"
+#include "mediapipe/framework/formats/image_frame_opencv.h"
+#include "mediapipe/framework/formats/landmark.pb.h"
+#include "mediapipe/framework/port/file_helpers.h"
+#include "mediapipe/framework/port/opencv_imgcodecs_inc.h"
+#include "mediapipe/framework/port/opencv_imgproc_inc.h"
+#include "mediapipe/framework/port/opencv_video_inc.h"
+#include "mediapipe/framework/port/parse_text_proto.h"
+#include "mediapipe/framework/port/status.h"
+
+ABSL_FLAG(std::string, calculator_graph_config_file,
+          "mediapipe/prototype/desktop/iris_batch_cpu.pbtxt",
+          "Name of file containing text format CalculatorGraphConfig proto.");
+ABSL_FLAG(std::string, input_dir, "",
+          "Directory of video files and image sequence directories.");
+ABSL_FLAG(std::string, output_dir, "",
+          "Directory to write one session directory per input to.");
+ABSL_FLAG(int, num_workers, 0,
+          "Graph instances run in parallel; 0 means one per core.");
+ABSL_FLAG(double, focal_length_pixels, 0,
+          "Focal length of the footage in pixels at its own resolution. If 0, "
+          "it is derived from --horizontal_fov_degrees.");
+ABSL_FLAG(double, horizontal_fov_degrees, 63,
+          "Horizontal field of view assumed when no focal length is given; "
+          "typical of front cameras.");
+ABSL_FLAG(double, image_sequence_fps, 30,
+          "Frame rate assigned to image sequences.");
+ABSL_FLAG(int, iris_max_reused_frames, 0,
+          "Frames in a row that may reuse the previous iris landmarks while "
+          "the eyes stay still, instead of running the iris model; 0 runs it "
+          "on every frame.");
+
+namespace {
+
+constexpr char kInputStream[] = "input_video";
+constexpr char kFocalLengthSidePacket[] = "focal_length_pixel";
+constexpr char kMaxReusedFramesSidePacket[] = "max_reused_iris_frames";
+constexpr char kLandmarksStream[] = "iris_landmarks";
+constexpr char kLeftDepthStream[] = "left_iris_depth_mm";
+constexpr char kRightDepthStream[] = "right_iris_depth_mm";
+constexpr char kReusedStream[] = "iris_reused";
+
+// Record layout of SessionRecorder.java: int64 timestamp in ns, int16 type,
+// int16 index, int32 count, four float32 values, all little-endian. The third
+// value of a depth record is 1 if the frame reused the previous iris landmarks.
+constexpr int kRecordSize = 32;
+constexpr int16_t kTypeDepth = 1;
+constexpr int16_t kTypeLandmark = 2;
+constexpr char kSegmentName[] = "segment-00000.bin";
+
+// Writes one session segment. Assumes a little-endian host, like every
+// platform the app and the replay harness run on.
+class SessionWriter {
+ public:
+  absl::Status Open(const std::string& directory) {
+    MP_RETURN_IF_ERROR(mediapipe::file::RecursivelyCreateDir(directory));
+    out_.clear();
+    out_.open(mediapipe::file::JoinPath(directory, kSegmentName),
+              std::ios::binary | std::ios::trunc);
+    if (!out_) {
+      return absl::UnavailableError(
+          absl::StrCat("Cannot write session to ", directory));
+    }
+    return absl::OkStatus();
+  }
+
+  void Write(int64_t timestamp_us, int16_t type, int16_t index, int32_t count,
+             float v0, float v1, float v2) {
+    char record[kRecordSize] = {};
+    const int64_t timestamp_ns = timestamp_us * 1000;
+    const float values[4] = {v0, v1, v2, 0.f};
+    std::memcpy(record, &timestamp_ns, sizeof(timestamp_ns));
+    std::memcpy(record + 8, &type, sizeof(type));
+    std::memcpy(record + 10, &index, sizeof(index));
+    std::memcpy(record + 12, &count, sizeof(count));
+    std::memcpy(record + 16, values, sizeof(values));
+    out_.write(record, kRecordSize);
+  }
+
+  absl::Status Close() {
+    out_.close();
+    return out_ ? absl::OkStatus()
+                : absl::DataLossError("Cannot finish session segment");
+  }
+
+ private:
+  std::ofstream out_;
+};
+
+// Opens a video file, or an image sequence directory, frame by frame.
+class FrameSource {
+ public:
+  absl::Status Open(const std::string& path) {
+    if (mediapipe::file::IsDirectory(path).ok()) {
+      for (const char* suffix : {".png", ".jpg", ".jpeg"}) {
+        MP_RETURN_IF_ERROR(
+            mediapipe::file::MatchFileTypeInDirectory(path, suffix, &images_));
+      }
+      std::sort(images_.begin(), images_.end());
+      if (images_.empty()) {
+        return absl::NotFoundError(absl::StrCat("No images in ", path));
+      }
+      frame_period_us_ = 1e6 / absl::GetFlag(FLAGS_image_sequence_fps);
+      return absl::OkStatus();
+    }
+    capture_.open(path);
+    if (!capture_.isOpened()) {
+      return absl::InvalidArgumentError(absl::StrCat("Cannot open ", path));
+    }
+    const double fps = capture_.get(cv::CAP_PROP_FPS);
+    frame_period_us_ = 1e6 / (fps > 0 ? fps : 30);
+    return absl::OkStatus();
+  }
+
+  // Reads the next frame as RGB; returns false at the end.
+  bool Next(cv::Mat* rgb, int64_t* timestamp_us) {
+    cv::Mat raw;
+    if (images_.empty()) {
+      if (!capture_.read(raw)) return false;
+    } else {
+      if (next_image_ == images_.size()) return false;
+      raw = cv::imread(images_[next_image_]);
+      if (raw.empty()) return false;
+    }
+    cv::cvtColor(raw, *rgb, cv::COLOR_BGR2RGB);
+    // Timestamps follow the frame index at the nominal rate, which keeps them
+    // strictly increasing even for containers with unreliable frame times.
+    *timestamp_us = static_cast<int64_t>(frames_ * frame_period_us_);
+    ++frames_;
+    ++next_image_;
+    return true;
+  }
+
+ private:
+  cv::VideoCapture capture_;
+  std::vector<std::string> images_;
+  size_t next_image_ = 0;
+  double frame_period_us_ = 0;
+  int64_t frames_ = 0;
+};
+
+// Frames of one input, and how many of them reused the previous iris
+// landmarks instead of running the iris model.
+struct InputStats {
+  int64_t frames = 0;
+  int64_t reused_frames = 0;
+};
+
+// One graph instance; processes the inputs it is handed one after another.
+class Worker {
+ public:
+  absl::Status Initialize(const mediapipe::CalculatorGraphConfig& config) {
+    MP_RETURN_IF_ERROR(graph_.Initialize(config));
+    graph_.SetGraphInputStreamAddMode(
+        mediapipe::CalculatorGraph::GraphInputStreamAddMode::
+            WAIT_TILL_NOT_FULL);
+    MP_RETURN_IF_ERROR(graph_.ObserveOutputStream(
+        kLandmarksStream, [this](const mediapipe::Packet& packet) {
+          const auto& landmarks =
+              packet.Get<mediapipe::NormalizedLandmarkList>();
+          absl::MutexLock lock(&mutex_);
+          for (int i = 0; i < landmarks.landmark_size(); ++i) {
+            const auto& landmark = landmarks.landmark(i);
+            session_.Write(packet.Timestamp().Value(), kTypeLandmark, i,
+                           landmarks.landmark_size(), landmark.x(),
+                           landmark.y(), landmark.z());
+          }
+          return absl::OkStatus();
+        }));
+    MP_RETURN_IF_ERROR(graph_.ObserveOutputStream(
+        kLeftDepthStream, [this](const mediapipe::Packet& packet) {
+          OnDepth(packet, /*left=*/true);
+          return absl::OkStatus();
+        }));
+    MP_RETURN_IF_ERROR(graph_.ObserveOutputStream(
+        kRightDepthStream, [this](const mediapipe::Packet& packet) {
+          OnDepth(packet, /*left=*/false);
+          return absl::OkStatus();
+        }));
+    MP_RETURN_IF_ERROR(graph_.ObserveOutputStream(
+        kReusedStream, [this](const mediapipe::Packet& packet) {
+          absl::MutexLock lock(&mutex_);
+          const bool reused = packet.Get<bool>();
+          if (reused) ++reused_frames_;
+          pending_depths_[packet.Timestamp().Value()].reused = reused ? 1 : 0;
+          WriteDepth(packet.Timestamp().Value());
+          return absl::OkStatus();
+        }));
+    return absl::OkStatus();
+  }
+
+  // Runs the graph over one input.
+  absl::StatusOr<InputStats> Process(const std::string& input,
+                                  const std::string& session_dir) {
+    FrameSource source;
+    MP_RETURN_IF_ERROR(source.Open(input));
+    cv::Mat frame;
+    int64_t timestamp_us;
+    if (!source.Next(&frame, &timestamp_us)) {
+      return absl::NotFoundError(absl::StrCat("No frames in ", input));
+    }
+    {
+      absl::MutexLock lock(&mutex_);
+      MP_RETURN_IF_ERROR(session_.Open(session_dir));
+      pending_depths_.clear();
+      reused_frames_ = 0;
+    }
+    std::map<std::string, mediapipe::Packet> side_packets;
+    side_packets[kFocalLengthSidePacket] =
+        mediapipe::MakePacket<float>(FocalLengthPixels(frame.cols));
+    side_packets[kMaxReusedFramesSidePacket] =
+        mediapipe::MakePacket<int>(absl::GetFlag(FLAGS_iris_max_reused_frames));
+    InputStats stats;
+    // The session is closed on every path from here, so a failed input does
+    // not leave it open for the next one.
+    absl::Status status =
+        Run(side_packets, &source, &frame, timestamp_us, &stats);
+    absl::MutexLock lock(&mutex_);
+    status.Update(session_.Close());
+    MP_RETURN_IF_ERROR(status);
+    stats.reused_frames = reused_frames_;
+    return stats;
+  }
+
+ private:
+  // Runs the graph over the frames of `source`, starting with `frame`. Once
+  // the run has started, it is always finished, even when adding a frame
+  // fails, so the graph can start the next one.
+  absl::Status Run(const std::map<std::string, mediapipe::Packet>& side_packets,
+                   FrameSource* source, cv::Mat* frame, int64_t timestamp_us,
+                   InputStats* stats) {
+    MP_RETURN_IF_ERROR(graph_.StartRun(side_packets));
+    absl::Status status = AddFrames(source, frame, timestamp_us, stats);
+    status.Update(graph_.CloseAllInputStreams());
+    status.Update(graph_.WaitUntilDone());
+    return status;
+  }
+
+  absl::Status AddFrames(FrameSource* source, cv::Mat* frame,
+                         int64_t timestamp_us, InputStats* stats) {
+    do {
+      auto input_frame = absl::make_unique<mediapipe::ImageFrame>(
+          mediapipe::ImageFormat::SRGB, frame->cols, frame->rows,
+          mediapipe::ImageFrame::kDefaultAlignmentBoundary);
+      cv::Mat input_frame_mat = mediapipe::formats::MatView(input_frame.get());
+      frame->copyTo(input_frame_mat);
+      MP_RETURN_IF_ERROR(graph_.AddPacketToInputStream(
+          kInputStream, mediapipe::Adopt(input_frame.release())
+                            .At(mediapipe::Timestamp(timestamp_us))));
+      ++stats->frames;
+    } while (source->Next(frame, &timestamp_us));
+    return absl::OkStatus();
+  }
+
+  static float FocalLengthPixels(int image_width) {
+    const double focal_length = absl::GetFlag(FLAGS_focal_length_pixels);
+    if (focal_length > 0) return focal_length;
+    const double fov = absl::GetFlag(FLAGS_horizontal_fov_degrees) * M_PI / 180;
+    return 0.5 * image_width / std::tan(fov / 2);
+  }
+
+  // Pairs the two depths of a frame into one record, like the app's
+  // DepthFusion.
+  void OnDepth(const mediapipe::Packet& packet, bool left) {
+    absl::MutexLock lock(&mutex_);
+    const int64_t timestamp_us = packet.Timestamp().Value();
+    PendingDepth& depth = pending_depths_[timestamp_us];
+    (left ? depth.left_mm : depth.right_mm) = packet.Get<float>();
+    WriteDepth(timestamp_us);
+  }
+
+  // Writes the depth record of a frame once both depths and whether its iris
+  // landmarks were reused are known.
+  void WriteDepth(int64_t timestamp_us) ABSL_EXCLUSIVE_LOCKS_REQUIRED(mutex_) {
+    const PendingDepth& depth = pending_depths_[timestamp_us];
+    if (std::isnan(depth.left_mm) || std::isnan(depth.right_mm) ||
+        depth.reused < 0) {
+      return;
+    }
+    session_.Write(timestamp_us, kTypeDepth, 0, 0, depth.left_mm,
+                   depth.right_mm, depth.reused);
+    pending_depths_.erase(pending_depths_.begin(),
+                          pending_depths_.upper_bound(timestamp_us));
+  }
+
+  struct PendingDepth {
+    float left_mm = NAN;
+    float right_mm = NAN;
+    // 1 if reused, 0 if inferred, -1 until known.
+    int reused = -1;
+  };
+
+  mediapipe::CalculatorGraph graph_;
+  absl::Mutex mutex_;
+  SessionWriter session_ ABSL_GUARDED_BY(mutex_);
+  std::map<int64_t, PendingDepth> pending_depths_ ABSL_GUARDED_BY(mutex_);
+  int64_t reused_frames_ ABSL_GUARDED_BY(mutex_) = 0;
+};
+
+absl::Status RunBatch() {
+  std::string config_contents;
+  MP_RETURN_IF_ERROR(mediapipe::file::GetContents(
+      absl::GetFlag(FLAGS_calculator_graph_config_file), &config_contents));
+  mediapipe::CalculatorGraphConfig config =
+      mediapipe::ParseTextProtoOrDie<mediapipe::CalculatorGraphConfig>(
+          config_contents);
+
+  const std::string input_dir = absl::GetFlag(FLAGS_input_dir);
+  const std::string output_dir = absl::GetFlag(FLAGS_output_dir);
+  RET_CHECK(!input_dir.empty() && !output_dir.empty())
+      << "--input_dir and --output_dir are required.";
+  std::vector<std::string> entries;
+  MP_RETURN_IF_ERROR(
+      mediapipe::file::MatchFileTypeInDirectory(input_dir, "", &entries));
+  std::vector<std::string> inputs;
+  for (const std::string& entry : entries) {
+    const std::string name(mediapipe::file::Basename(entry));
+    if (!name.empty() && name[0] != '.') inputs.push_back(entry);
+  }
+  std::sort(inputs.begin(), inputs.end());
+  RET_CHECK(!inputs.empty()) << "No inputs in " << input_dir;
+
+  int num_workers = absl::GetFlag(FLAGS_num_workers);
+  if (num_workers <= 0) {
+    num_workers = std::max(1u, std::thread::hardware_concurrency());
+  }
+  num_workers = std::min<int>(num_workers, inputs.size());
+  std::vector<std::unique_ptr<Worker>> workers;
+  for (int i = 0; i < num_workers; ++i) {
+    workers.push_back(absl::make_unique<Worker>());
+    MP_RETURN_IF_ERROR(workers.back()->Initialize(config));
+  }
+  LOG(INFO) << "Processing " << inputs.size() << " inputs with " << num_workers
+            << " workers.";
+
+  // Workers take the next input as they become free, so long and short inputs
+  // balance out.
+  std::atomic<size_t> next_input(0);
+  std::atomic<int64_t> total_frames(0);
+  std::atomic<int64_t> total_reused_frames(0);
+  std::atomic<int> failures(0);
+  const absl::Time start = absl::Now();
+  std::vector<std::thread> threads;
+  for (int i = 0; i < num_workers; ++i) {
+    threads.emplace_back([&, worker = workers[i].get()] {
+      for (size_t n = next_input++; n < inputs.size(); n = next_input++) {
+        const std::string& input = inputs[n];
+        const std::string session_dir = mediapipe::file::JoinPath(
+            output_dir, std::string(mediapipe::file::Basename(input)));
+        const absl::Time input_start = absl::Now();
+        absl::StatusOr<InputStats> stats = worker->Process(input, session_dir);
+        if (!stats.ok()) {
+          LOG(ERROR) << input << ": " << stats.status();
+          ++failures;
+          continue;
+        }
+        total_frames += stats->frames;
+        total_reused_frames += stats->reused_frames;
+        LOG(INFO) << input << ": " << stats->frames << " frames at "
+                  << stats->frames /
+                         absl::ToDoubleSeconds(absl::Now() - input_start)
+                  << " fps, iris landmarks reused on " << stats->reused_frames;
+      }
+    });
+  }
+  for (std::thread& thread : threads) thread.join();
+  const double seconds = absl::ToDoubleSeconds(absl::Now() - start);
+  LOG(INFO) << total_frames.load() << " frames from "
+            << inputs.size() - failures.load() << " inputs in " << seconds
+            << " s: " << total_frames.load() / seconds << " fps aggregate, "
+            << total_reused_frames.load() << " frames reused iris landmarks.";
+  RET_CHECK_EQ(failures.load(), 0) << failures.load() << " inputs failed.";
+  return absl::OkStatus();
+}
+
+}  // namespace
+
+int main(int argc, char** argv) {
+  google::InitGoogleLogging(argv[0]);
+  absl::ParseCommandLine(argc, argv);
+  absl::Status run_status = RunBatch();
+  if (!run_status.ok()) {
+    LOG(ERROR) << "Failed to run the batch: " << run_status.message();
+    return EXIT_FAILURE;
+  }
+  return EXIT_SUCCESS;
+}